@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * Stand-in for the framework class so that benchmarks run on a desktop JVM. Bitmaps have a size
+ * and configuration but no pixels, which is enough for the code paths which only do bookkeeping.
+ */
+public final class Bitmap {
+  public enum Config {
+    ALPHA_8(1),
+    RGB_565(2),
+    ARGB_4444(2),
+    ARGB_8888(4);
+
+    final int bytesPerPixel;
+
+    Config(int bytesPerPixel) {
+      this.bytesPerPixel = bytesPerPixel;
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final Config config;
+  private final boolean mutable;
+  private boolean recycled;
+
+  private Bitmap(int width, int height, Config config, boolean mutable) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("width and height must be > 0");
+    }
+    this.width = width;
+    this.height = height;
+    this.config = config;
+    this.mutable = mutable;
+  }
+
+  public static Bitmap createBitmap(int width, int height, Config config) {
+    return new Bitmap(width, height, config, true);
+  }
+
+  /** Creates an immutable bitmap, as returned by the decoder. */
+  public static Bitmap createImmutableBitmap(int width, int height, Config config) {
+    return new Bitmap(width, height, config, false);
+  }
+
+  /** Mirrors the sizing logic of the framework, which is all that callers can observe here. */
+  public static Bitmap createBitmap(Bitmap source, int x, int y, int width, int height, Matrix m,
+      boolean filter) {
+    if (x + width > source.width || y + height > source.height) {
+      throw new IllegalArgumentException("x + width must be <= bitmap.width()");
+    }
+    boolean identity = m == null || m.isIdentity();
+    if (!source.mutable && x == 0 && y == 0 && width == source.width && height == source.height
+        && identity) {
+      return source;
+    }
+    if (identity) {
+      return new Bitmap(width, height, source.config, true);
+    }
+    RectF bounds = new RectF(0, 0, width, height);
+    boolean rectStaysRect = m.mapRect(bounds);
+    Config config = rectStaysRect ? source.config : Config.ARGB_8888;
+    return new Bitmap(Math.round(bounds.width()), Math.round(bounds.height()), config, true);
+  }
+
+  public Bitmap copy(Config config, boolean isMutable) {
+    return new Bitmap(width, height, config, isMutable);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public Config getConfig() {
+    return config;
+  }
+
+  public int getRowBytes() {
+    return width * config.bytesPerPixel;
+  }
+
+  public int getByteCount() {
+    return getRowBytes() * height;
+  }
+
+  public boolean isMutable() {
+    return mutable;
+  }
+
+  public void recycle() {
+    recycled = true;
+  }
+
+  public boolean isRecycled() {
+    return recycled;
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/** Stand-in for the framework class so that benchmarks run on a desktop JVM. */
+public class BitmapFactory {
+  public static class Options {
+    public boolean inJustDecodeBounds;
+    public int inSampleSize;
+    public Bitmap.Config inPreferredConfig = Bitmap.Config.ARGB_8888;
+    public byte[] inTempStorage;
+    public int outWidth;
+    public int outHeight;
+    public String outMimeType;
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/** Stand-in for the framework class so that benchmarks run on a desktop JVM. Draws nothing. */
+public class Canvas {
+  private final Matrix matrix = new Matrix();
+
+  public Canvas(Bitmap bitmap) {
+  }
+
+  public void concat(Matrix matrix) {
+    this.matrix.preConcat(matrix);
+  }
+
+  public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * Stand-in for the framework class so that benchmarks run on a desktop JVM. Implements the same
+ * 3x3 affine math for the operations Picasso uses.
+ */
+public class Matrix {
+  private static final int SCALE_X = 0;
+  private static final int SKEW_X = 1;
+  private static final int TRANS_X = 2;
+  private static final int SKEW_Y = 3;
+  private static final int SCALE_Y = 4;
+  private static final int TRANS_Y = 5;
+
+  private final float[] values = new float[6];
+  private final float[] scratch = new float[6];
+
+  public Matrix() {
+    reset();
+  }
+
+  public Matrix(Matrix src) {
+    set(src);
+  }
+
+  public void reset() {
+    setValues(values, 1, 0, 0, 0, 1, 0);
+  }
+
+  public void set(Matrix src) {
+    if (src == null) {
+      reset();
+    } else {
+      System.arraycopy(src.values, 0, values, 0, values.length);
+    }
+  }
+
+  public boolean isIdentity() {
+    return values[SCALE_X] == 1 && values[SKEW_X] == 0 && values[TRANS_X] == 0
+        && values[SKEW_Y] == 0 && values[SCALE_Y] == 1 && values[TRANS_Y] == 0;
+  }
+
+  public boolean rectStaysRect() {
+    return (values[SKEW_X] == 0 && values[SKEW_Y] == 0)
+        || (values[SCALE_X] == 0 && values[SCALE_Y] == 0);
+  }
+
+  public void setTranslate(float dx, float dy) {
+    setValues(values, 1, 0, dx, 0, 1, dy);
+  }
+
+  public void setScale(float sx, float sy) {
+    setValues(values, sx, 0, 0, 0, sy, 0);
+  }
+
+  public void setRotate(float degrees) {
+    double radians = Math.toRadians(degrees);
+    float sin = (float) Math.sin(radians);
+    float cos = (float) Math.cos(radians);
+    setValues(values, cos, -sin, 0, sin, cos, 0);
+  }
+
+  public void setRotate(float degrees, float px, float py) {
+    setTranslate(-px, -py);
+    postRotate(degrees);
+    postTranslate(px, py);
+  }
+
+  public boolean preTranslate(float dx, float dy) {
+    setValues(scratch, 1, 0, dx, 0, 1, dy);
+    concat(values, scratch);
+    return true;
+  }
+
+  public boolean postTranslate(float dx, float dy) {
+    values[TRANS_X] += dx;
+    values[TRANS_Y] += dy;
+    return true;
+  }
+
+  public boolean preScale(float sx, float sy) {
+    setValues(scratch, sx, 0, 0, 0, sy, 0);
+    concat(values, scratch);
+    return true;
+  }
+
+  public boolean postScale(float sx, float sy) {
+    setValues(scratch, sx, 0, 0, 0, sy, 0);
+    concat(scratch, values);
+    return true;
+  }
+
+  public boolean preRotate(float degrees) {
+    Matrix rotation = new Matrix();
+    rotation.setRotate(degrees);
+    return preConcat(rotation);
+  }
+
+  public boolean postRotate(float degrees) {
+    Matrix rotation = new Matrix();
+    rotation.setRotate(degrees);
+    return postConcat(rotation);
+  }
+
+  public boolean preConcat(Matrix other) {
+    concat(values, other.values);
+    return true;
+  }
+
+  public boolean postConcat(Matrix other) {
+    concat(other.values, values);
+    return true;
+  }
+
+  /** Maps the corners of {@code rect} and replaces it with their bounds. */
+  public boolean mapRect(RectF rect) {
+    float[] m = values;
+    float x0 = m[SCALE_X] * rect.left + m[SKEW_X] * rect.top + m[TRANS_X];
+    float y0 = m[SKEW_Y] * rect.left + m[SCALE_Y] * rect.top + m[TRANS_Y];
+    float x1 = m[SCALE_X] * rect.right + m[SKEW_X] * rect.top + m[TRANS_X];
+    float y1 = m[SKEW_Y] * rect.right + m[SCALE_Y] * rect.top + m[TRANS_Y];
+    float x2 = m[SCALE_X] * rect.left + m[SKEW_X] * rect.bottom + m[TRANS_X];
+    float y2 = m[SKEW_Y] * rect.left + m[SCALE_Y] * rect.bottom + m[TRANS_Y];
+    float x3 = m[SCALE_X] * rect.right + m[SKEW_X] * rect.bottom + m[TRANS_X];
+    float y3 = m[SKEW_Y] * rect.right + m[SCALE_Y] * rect.bottom + m[TRANS_Y];
+    rect.left = Math.min(Math.min(x0, x1), Math.min(x2, x3));
+    rect.top = Math.min(Math.min(y0, y1), Math.min(y2, y3));
+    rect.right = Math.max(Math.max(x0, x1), Math.max(x2, x3));
+    rect.bottom = Math.max(Math.max(y0, y1), Math.max(y2, y3));
+    return rectStaysRect();
+  }
+
+  /** Replaces this matrix with {@code a * b}. Either may be this matrix's own values. */
+  private void concat(float[] a, float[] b) {
+    float scaleX = a[SCALE_X] * b[SCALE_X] + a[SKEW_X] * b[SKEW_Y];
+    float skewX = a[SCALE_X] * b[SKEW_X] + a[SKEW_X] * b[SCALE_Y];
+    float transX = a[SCALE_X] * b[TRANS_X] + a[SKEW_X] * b[TRANS_Y] + a[TRANS_X];
+    float skewY = a[SKEW_Y] * b[SCALE_X] + a[SCALE_Y] * b[SKEW_Y];
+    float scaleY = a[SKEW_Y] * b[SKEW_X] + a[SCALE_Y] * b[SCALE_Y];
+    float transY = a[SKEW_Y] * b[TRANS_X] + a[SCALE_Y] * b[TRANS_Y] + a[TRANS_Y];
+    setValues(values, scaleX, skewX, transX, skewY, scaleY, transY);
+  }
+
+  private static void setValues(float[] m, float scaleX, float skewX, float transX, float skewY,
+      float scaleY, float transY) {
+    m[SCALE_X] = scaleX;
+    m[SKEW_X] = skewX;
+    m[TRANS_X] = transX;
+    m[SKEW_Y] = skewY;
+    m[SCALE_Y] = scaleY;
+    m[TRANS_Y] = transY;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net;
+
+import java.net.URI;
+
+/** Stand-in for the framework class so that benchmarks run on a desktop JVM. */
+public abstract class Uri {
+  public static Uri parse(String uriString) {
+    return new StringUri(uriString);
+  }
+
+  public abstract String getScheme();
+
+  public abstract String getHost();
+
+  public abstract String getPath();
+
+  private static final class StringUri extends Uri {
+    private final String uriString;
+    private final URI uri;
+
+    StringUri(String uriString) {
+      this.uriString = uriString;
+      this.uri = URI.create(uriString);
+    }
+
+    @Override public String getScheme() {
+      return uri.getScheme();
+    }
+
+    @Override public String getHost() {
+      return uri.getHost();
+    }
+
+    @Override public String getPath() {
+      return uri.getPath();
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof StringUri && uriString.equals(((StringUri) o).uriString);
+    }
+
+    @Override public int hashCode() {
+      return uriString.hashCode();
+    }
+
+    @Override public String toString() {
+      return uriString;
+    }
+  }
+}
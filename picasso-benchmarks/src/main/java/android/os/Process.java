@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/** Stand-in for the framework class so that benchmarks run on a desktop JVM. */
+public class Process {
+  public static final int THREAD_PRIORITY_BACKGROUND = 10;
+  public static final int THREAD_PRIORITY_LOWEST = 19;
+
+  public static int myTid() {
+    return (int) Thread.currentThread().getId();
+  }
+
+  public static int getThreadPriority(int tid) {
+    return 0;
+  }
+
+  public static void setThreadPriority(int priority) {
+  }
+
+  public static void setThreadPriority(int tid, int priority) {
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv} and reports the change of every
+ * benchmark. A benchmark has regressed when it got worse by more than the threshold and by more
+ * than the error of both measurements. Exits with status 1 if any benchmark regressed.
+ * <pre>
+ * java -cp benchmarks.jar com.squareup.picasso.BenchmarkReport baseline.csv current.csv [percent]
+ * </pre>
+ */
+public final class BenchmarkReport {
+  private static final double DEFAULT_THRESHOLD_PERCENT = 5;
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: BenchmarkReport <baseline.csv> <current.csv> [threshold percent]");
+      System.exit(2);
+    }
+    double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+    Map<String, Result> baseline = read(args[0]);
+    Map<String, Result> current = read(args[1]);
+
+    int regressions = 0;
+    System.out.println(String.format(Locale.US, "%-70s %14s %14s %-10s %9s", "Benchmark",
+        "Baseline", "Current", "Unit", "Change"));
+    for (Map.Entry<String, Result> entry : current.entrySet()) {
+      Result now = entry.getValue();
+      Result before = baseline.get(entry.getKey());
+      if (before == null) {
+        System.out.println(String.format(Locale.US, "%-70s %14s %14.3f %-10s %9s", entry.getKey(),
+            "-", now.score, now.unit, "new"));
+        continue;
+      }
+      double change = (now.score - before.score) * 100 / before.score;
+      // Throughput is the only mode where a higher score is better.
+      double worse = "thrpt".equals(now.mode) ? -change : change;
+      boolean regressed = worse > threshold
+          && Math.abs(now.score - before.score) > now.error + before.error;
+      if (regressed) {
+        regressions++;
+      }
+      System.out.println(String.format(Locale.US, "%-70s %14.3f %14.3f %-10s %+8.1f%%%s",
+          entry.getKey(), before.score, now.score, now.unit, change,
+          regressed ? " REGRESSED" : ""));
+    }
+    for (String key : baseline.keySet()) {
+      if (!current.containsKey(key)) {
+        System.out.println(String.format(Locale.US, "%-70s %14s %14s %-10s %9s", key, "", "-", "",
+            "removed"));
+      }
+    }
+
+    if (regressions > 0) {
+      System.out.println(regressions + " benchmark(s) regressed by more than " + threshold + "%.");
+      System.exit(1);
+    }
+  }
+
+  /** Returns the results of a CSV file keyed by benchmark name, mode, and parameters. */
+  static Map<String, Result> read(String path) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+    try {
+      String line = reader.readLine();
+      if (line == null) {
+        throw new IOException("Empty result file " + path);
+      }
+      List<String> header = parseLine(line);
+      int benchmark = columnIndex(header, "Benchmark", path);
+      int mode = columnIndex(header, "Mode", path);
+      int score = columnIndex(header, "Score", path);
+      int error = columnIndex(header, "Score Error", path);
+      int unit = columnIndex(header, "Unit", path);
+
+      Map<String, Result> results = new LinkedHashMap<String, Result>();
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().length() == 0) {
+          continue;
+        }
+        List<String> fields = parseLine(line);
+        StringBuilder key = new StringBuilder(fields.get(benchmark));
+        key.append(' ').append(fields.get(mode));
+        for (int i = unit + 1; i < fields.size(); i++) {
+          if (fields.get(i).length() > 0) {
+            key.append(' ').append(header.get(i).replace("Param: ", "")).append('=')
+                .append(fields.get(i));
+          }
+        }
+        results.put(key.toString(), new Result(fields.get(mode), parseNumber(fields.get(score)),
+            parseNumber(fields.get(error)), fields.get(unit)));
+      }
+      return results;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static int columnIndex(List<String> header, String prefix, String path)
+      throws IOException {
+    for (int i = 0; i < header.size(); i++) {
+      if (header.get(i).startsWith(prefix)) {
+        return i;
+      }
+    }
+    throw new IOException("No " + prefix + " column in " + path);
+  }
+
+  private static double parseNumber(String value) {
+    // Locales which use a decimal comma have their numbers quoted.
+    double number = Double.parseDouble(value.replace(',', '.'));
+    return Double.isNaN(number) ? 0 : number;
+  }
+
+  /** Splits a line of CSV into its fields, removing quotes. */
+  static List<String> parseLine(String line) {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  static final class Result {
+    final String mode;
+    final double score;
+    final double error;
+    final String unit;
+
+    Result(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+  }
+
+  private BenchmarkReport() {
+  }
+}
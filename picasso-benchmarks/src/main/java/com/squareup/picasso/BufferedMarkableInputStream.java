@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The {@link MarkableInputStream} implementation which preceded pooled segments, kept as the
+ * baseline for {@link MarkableInputStreamBenchmark}. Streams which cannot mark are wrapped in a
+ * {@link BufferedInputStream} which allocates and grows its own buffer for every instance.
+ */
+final class BufferedMarkableInputStream extends InputStream {
+  private final InputStream in;
+
+  private long offset;
+  private long reset;
+  private long limit;
+
+  private long defaultMark = -1;
+
+  public BufferedMarkableInputStream(InputStream in) {
+    if (!in.markSupported()) {
+      in = new BufferedInputStream(in);
+    }
+    this.in = in;
+  }
+
+  @Override public void mark(int readLimit) {
+    defaultMark = savePosition(readLimit);
+  }
+
+  public long savePosition(int readLimit) {
+    long offsetLimit = offset + readLimit;
+    if (limit < offsetLimit) {
+      setLimit(offsetLimit);
+    }
+    return offset;
+  }
+
+  private void setLimit(long limit) {
+    try {
+      if (reset < offset && offset <= this.limit) {
+        in.reset();
+        in.mark((int) (limit - reset));
+        skip(reset, offset);
+      } else {
+        reset = offset;
+        in.mark((int) (limit - offset));
+      }
+      this.limit = limit;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to mark: " + e);
+    }
+  }
+
+  @Override public void reset() throws IOException {
+    reset(defaultMark);
+  }
+
+  public void reset(long token) throws IOException {
+    if (offset > limit || token < reset) {
+      throw new IOException("Cannot reset");
+    }
+    in.reset();
+    skip(reset, token);
+    offset = token;
+  }
+
+  private void skip(long current, long target) throws IOException {
+    while (current < target) {
+      long skipped = in.skip(target - current);
+      current += skipped;
+    }
+  }
+
+  @Override public int read() throws IOException {
+    int result = in.read();
+    if (result != -1) {
+      offset++;
+    }
+    return result;
+  }
+
+  @Override public int read(byte[] buffer) throws IOException {
+    int count = in.read(buffer);
+    if (count != -1) {
+      offset += count;
+    }
+    return count;
+  }
+
+  @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+    int count = in.read(buffer, offset, length);
+    if (count != -1) {
+      this.offset += count;
+    }
+    return count;
+  }
+
+  @Override public long skip(long byteCount) throws IOException {
+    long skipped = in.skip(byteCount);
+    offset += skipped;
+    return skipped;
+  }
+
+  @Override public int available() throws IOException {
+    return in.available();
+  }
+
+  @Override public void close() throws IOException {
+    in.close();
+  }
+
+  @Override public boolean markSupported() {
+    return in.markSupported();
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.squareup.picasso.CacheTraceWriter.HIT;
+import static com.squareup.picasso.CacheTraceWriter.MAGIC;
+
+/**
+ * Replays a trace recorded by {@link CacheTraceWriter} against memory caches of increasing size
+ * and prints the hit ratio of each as CSV, for plotting hit ratio against cache size.
+ * <pre>
+ * java -cp benchmarks.jar com.squareup.picasso.CacheTraceSimulator trace.bin [cache class...]
+ * </pre>
+ * The trace is replayed against {@link LruCache}, {@link FifoCache} and any {@link Cache} class
+ * named on the command line which has a public constructor taking its maximum size in bytes. Each
+ * access hits if its key is in the cache; otherwise the image is stored. Sizes double from 256KB
+ * until every distinct image fits, or are given in KB with {@code -Dsizes=1024,4096}.
+ */
+public final class CacheTraceSimulator {
+  private static final int MIN_SIZE = 256 * 1024;
+
+  public static void main(String... args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: CacheTraceSimulator <trace> [cache class...]");
+      System.exit(2);
+    }
+    Trace trace = Trace.read(args[0]);
+
+    List<Class<? extends Cache>> caches = new ArrayList<Class<? extends Cache>>();
+    caches.add(LruCache.class);
+    caches.add(FifoCache.class);
+    for (int i = 1; i < args.length; i++) {
+      caches.add(Class.forName(args[i]).asSubclass(Cache.class));
+    }
+
+    System.err.println(String.format(Locale.US,
+        "%d accesses of %d distinct images (%d bytes), recorded hit ratio %.4f", trace.count,
+        trace.distinctCount(), trace.distinctBytes(), trace.recordedHitRatio()));
+    System.out.println("cache,maxSizeBytes,accesses,hits,hitRatio");
+    for (int size : sizes(trace.distinctBytes())) {
+      for (Class<? extends Cache> cacheClass : caches) {
+        Cache cache = cacheClass.getConstructor(int.class).newInstance(size);
+        long hits = replay(trace, cache);
+        System.out.println(String.format(Locale.US, "%s,%d,%d,%d,%.4f",
+            cacheClass.getSimpleName(), size, trace.count, hits, (double) hits / trace.count));
+      }
+    }
+  }
+
+  /** Returns the number of accesses which hit {@code cache}. */
+  static long replay(Trace trace, Cache cache) {
+    long hits = 0;
+    for (int i = 0; i < trace.count; i++) {
+      String key = trace.keys[i];
+      if (cache.get(key) != null) {
+        hits++;
+      } else {
+        // One byte per pixel so that the bitmap is exactly the recorded size.
+        int bytes = Math.max(1, trace.sizes[i]);
+        cache.set(key, Bitmap.createBitmap(bytes, 1, Bitmap.Config.ALPHA_8));
+      }
+    }
+    return hits;
+  }
+
+  private static List<Integer> sizes(long distinctBytes) {
+    List<Integer> sizes = new ArrayList<Integer>();
+    String property = System.getProperty("sizes");
+    if (property != null) {
+      for (String size : property.split(",")) {
+        sizes.add(Integer.parseInt(size.trim()) * 1024);
+      }
+      return sizes;
+    }
+    long size = MIN_SIZE;
+    while (true) {
+      sizes.add((int) Math.min(size, Integer.MAX_VALUE));
+      if (size >= distinctBytes || size >= Integer.MAX_VALUE) {
+        return sizes;
+      }
+      size *= 2;
+    }
+  }
+
+  /** The accesses of a trace, with a key for each distinct key hash. */
+  static final class Trace {
+    final int count;
+    final String[] keys;
+    final int[] sizes;
+    final boolean[] hits;
+
+    Trace(int count, String[] keys, int[] sizes, boolean[] hits) {
+      this.count = count;
+      this.keys = keys;
+      this.sizes = sizes;
+      this.hits = hits;
+    }
+
+    static Trace read(String path) throws IOException {
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(path), 64 * 1024));
+      try {
+        if (in.readInt() != MAGIC) {
+          throw new IOException("Not a cache trace: " + path);
+        }
+        Map<Integer, String> keysByHash = new HashMap<Integer, String>();
+        String[] keys = new String[1024];
+        int[] sizes = new int[1024];
+        boolean[] hits = new boolean[1024];
+        int count = 0;
+        while (true) {
+          int hash;
+          try {
+            hash = in.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          int sizeAndFlag = in.readInt();
+          if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            sizes = Arrays.copyOf(sizes, count * 2);
+            hits = Arrays.copyOf(hits, count * 2);
+          }
+          String key = keysByHash.get(hash);
+          if (key == null) {
+            key = Integer.toHexString(hash);
+            keysByHash.put(hash, key);
+          }
+          keys[count] = key;
+          sizes[count] = sizeAndFlag & ~HIT;
+          hits[count] = (sizeAndFlag & HIT) != 0;
+          count++;
+        }
+        return new Trace(count, keys, sizes, hits);
+      } finally {
+        in.close();
+      }
+    }
+
+    int distinctCount() {
+      return distinctSizes().size();
+    }
+
+    long distinctBytes() {
+      long bytes = 0;
+      for (int size : distinctSizes().values()) {
+        bytes += size;
+      }
+      return bytes;
+    }
+
+    double recordedHitRatio() {
+      int hitCount = 0;
+      for (int i = 0; i < count; i++) {
+        if (hits[i]) {
+          hitCount++;
+        }
+      }
+      return count == 0 ? 0 : (double) hitCount / count;
+    }
+
+    /** The most recent size of each distinct key. */
+    private Map<String, Integer> distinctSizes() {
+      Map<String, Integer> distinct = new HashMap<String, Integer>();
+      for (int i = 0; i < count; i++) {
+        distinct.put(keys[i], sizes[i]);
+      }
+      return distinct;
+    }
+  }
+
+  private CacheTraceSimulator() {
+  }
+}
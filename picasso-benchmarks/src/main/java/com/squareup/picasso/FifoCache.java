@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A memory cache which evicts the images stored first regardless of how often they are used. Hits
+ * cost nothing but a lookup, so it is a baseline for how much {@link LruCache} gains from tracking
+ * recency.
+ */
+public class FifoCache implements Cache {
+  private final LinkedHashMap<String, Bitmap> map = new LinkedHashMap<String, Bitmap>();
+  private final int maxSize;
+  private int size;
+
+  public FifoCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be positive.");
+    }
+    this.maxSize = maxSize;
+  }
+
+  @Override public synchronized Bitmap get(String key) {
+    return map.get(key);
+  }
+
+  @Override public synchronized void set(String key, Bitmap bitmap) {
+    Bitmap previous = map.put(key, bitmap);
+    size += Utils.getBitmapBytes(bitmap);
+    if (previous != null) {
+      size -= Utils.getBitmapBytes(previous);
+    }
+    Iterator<Map.Entry<String, Bitmap>> iterator = map.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      size -= Utils.getBitmapBytes(iterator.next().getValue());
+      iterator.remove();
+    }
+  }
+
+  @Override public synchronized int size() {
+    return size;
+  }
+
+  @Override public int maxSize() {
+    return maxSize;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The memory cache is consulted on the main thread for every request. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LruCacheBenchmark {
+  /** Number of bitmaps which fit in the cache. */
+  @Param({ "64", "1024" })
+  public int entryCount;
+
+  private LruCache cache;
+  private String[] keys;
+  private String[] missingKeys;
+  private Bitmap bitmap;
+  private int index;
+
+  @Setup public void setUp() {
+    bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+    cache = new LruCache(entryCount * bitmap.getByteCount());
+    // Twice as many keys as fit so that every set evicts the least recently used entry.
+    keys = new String[entryCount * 2];
+    missingKeys = new String[entryCount];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = Utils.createKey(Uri.parse("http://example.com/" + i + ".png"), 0, null, null);
+    }
+    for (int i = 0; i < missingKeys.length; i++) {
+      missingKeys[i] = "http://example.com/missing/" + i + ".png\n";
+    }
+    for (int i = 0; i < entryCount; i++) {
+      cache.set(keys[i], bitmap);
+    }
+  }
+
+  @Benchmark public Bitmap getHit() {
+    index = (index + 1) % entryCount;
+    return cache.get(keys[index]);
+  }
+
+  @Benchmark public Bitmap getMiss() {
+    index = (index + 1) % entryCount;
+    return cache.get(missingKeys[index]);
+  }
+
+  @Benchmark public void setWithEviction() {
+    index = (index + 1) % keys.length;
+    cache.set(keys[index], bitmap);
+  }
+}
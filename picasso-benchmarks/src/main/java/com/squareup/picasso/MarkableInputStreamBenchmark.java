@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays the decode of a network response: a bounds pass reads the header, the stream is reset,
+ * and the full decode reads the body to the end. Run with {@code -prof gc} to compare allocation
+ * against the {@link BufferedMarkableInputStream} baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkableInputStreamBenchmark {
+  private static final int HEADER_LIMIT = 64 * 1024; // Mirrors Picasso.
+  private static final int HEADER_BYTES = 1024;
+  private static final int READ_BUFFER_SIZE = 16 * 1024; // Mirrors BitmapFactory.
+
+  /** Size of the response body in bytes. */
+  @Param({ "16384", "262144" })
+  public int size;
+
+  private byte[] body;
+  private byte[] readBuffer;
+
+  @Setup public void setUp() throws IOException {
+    body = new byte[size];
+    new Random(0).nextBytes(body);
+    readBuffer = new byte[READ_BUFFER_SIZE];
+
+    long expected = 0;
+    for (byte b : body) {
+      expected += b;
+    }
+    if (pooledSegments() != expected || bufferedBaseline() != expected) {
+      throw new IllegalStateException("Streams did not replay the body.");
+    }
+  }
+
+  @Benchmark public long pooledSegments() throws IOException {
+    return boundsThenDecode(new MarkableInputStream(new UnmarkableInputStream(body)));
+  }
+
+  @Benchmark public long bufferedBaseline() throws IOException {
+    return boundsThenDecode(new BufferedMarkableInputStream(new UnmarkableInputStream(body)));
+  }
+
+  /** Returns the sum of every byte of the body as read by the full decode. */
+  private long boundsThenDecode(InputStream in) throws IOException {
+    try {
+      in.mark(Math.min(size, HEADER_LIMIT));
+      int headerRead = 0;
+      while (headerRead < HEADER_BYTES) {
+        int count = in.read(readBuffer, 0, HEADER_BYTES - headerRead);
+        if (count == -1) {
+          break;
+        }
+        headerRead += count;
+      }
+      in.reset();
+
+      long sum = 0;
+      int count;
+      while ((count = in.read(readBuffer)) != -1) {
+        for (int i = 0; i < count; i++) {
+          sum += readBuffer[i];
+        }
+      }
+      return sum;
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Network streams do not support marking. */
+  private static final class UnmarkableInputStream extends FilterInputStream {
+    UnmarkableInputStream(byte[] data) {
+      super(new ByteArrayInputStream(data));
+    }
+
+    @Override public boolean markSupported() {
+      return false;
+    }
+  }
+}
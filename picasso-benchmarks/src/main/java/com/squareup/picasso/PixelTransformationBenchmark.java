@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The pixel kernels of the built-in {@link PixelTransformation}s, split into bands across every
+ * core. Limit the cores with {@code -jvmArgs -XX:ActiveProcessorCount=1} to measure a single band.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelTransformationBenchmark {
+  private static final float[] SEPIA = {
+      0.393f, 0.769f, 0.189f, 0, 0, //
+      0.349f, 0.686f, 0.168f, 0, 0, //
+      0.272f, 0.534f, 0.131f, 0, 0, //
+      0, 0, 0, 1, 0
+  };
+
+  /** Width and height of the image in pixels. */
+  @Param({ "256", "1024" })
+  public int size;
+
+  private int[] pixels;
+  private int[] buffer;
+  private PixelTransformation blur;
+  private PixelTransformation grayscale;
+  private PixelTransformation colorMatrix;
+
+  @Setup public void setUp() {
+    pixels = new int[size * size];
+    buffer = new int[size * size];
+    Random random = new Random(0);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+    blur = new BlurTransformation(8);
+    grayscale = new GrayscaleTransformation();
+    colorMatrix = new ColorMatrixTransformation(SEPIA);
+  }
+
+  @Benchmark public int[] blur() {
+    return PixelTransformation.filter(blur, pixels, buffer, size, size);
+  }
+
+  @Benchmark public int[] grayscale() {
+    return PixelTransformation.filter(grayscale, pixels, buffer, size, size);
+  }
+
+  @Benchmark public int[] colorMatrix() {
+    return PixelTransformation.filter(colorMatrix, pixels, buffer, size, size);
+  }
+}
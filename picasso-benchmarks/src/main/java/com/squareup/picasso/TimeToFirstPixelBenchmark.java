@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from issuing a request to knowing the dimensions of the image, which is when a decoder can
+ * start producing pixels. The streaming path reads the PNG header through a
+ * {@link MarkableInputStream} as soon as it arrives while the buffered path waits for the whole
+ * body first. There is no codec on the JVM so decoding itself is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeToFirstPixelBenchmark {
+  private static final byte[] PNG_SIGNATURE = {
+      (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+  };
+  private static final int HEADER_LENGTH = 24;
+
+  /** Size of the response body in bytes. */
+  @Param({ "65536", "1048576" })
+  public int size;
+
+  private MockWebServer server;
+  private URL url;
+  private byte[] body;
+  private byte[] readBuffer;
+
+  @Setup public void setUp() throws IOException {
+    // Abandoning a body part way through is expected; don't log it.
+    Logger.getLogger(MockWebServer.class.getName()).setLevel(java.util.logging.Level.SEVERE);
+    server = new MockWebServer();
+    server.play();
+    url = server.getUrl("/image.png");
+    body = pngBody(size, 640, 480);
+    readBuffer = new byte[16 * 1024];
+  }
+
+  @Setup(Level.Invocation) public void enqueue() {
+    server.enqueue(new MockResponse().addHeader("Content-Type", "image/png").setBody(body));
+  }
+
+  @TearDown public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Benchmark public long streaming() throws IOException {
+    HttpURLConnection connection = openConnection();
+    try {
+      MarkableInputStream in = new MarkableInputStream(connection.getInputStream());
+      long mark = in.savePosition(HEADER_LENGTH);
+      long dimensions = readDimensions(in);
+      in.reset(mark);
+      return dimensions;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  @Benchmark public long buffered() throws IOException {
+    HttpURLConnection connection = openConnection();
+    try {
+      InputStream in = connection.getInputStream();
+      byte[] bytes = new byte[size];
+      int read = 0;
+      int count;
+      while ((count = in.read(bytes, read, Math.min(readBuffer.length, size - read))) > 0) {
+        read += count;
+      }
+      in.close();
+      return readDimensions(new ByteArrayInputStream(bytes, 0, read));
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Abandoning a body part way through closes its connection, so neither path reuses connections
+   * in order that both pay for connecting.
+   */
+  private HttpURLConnection openConnection() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestProperty("Connection", "close");
+    return connection;
+  }
+
+  /** Returns the width and height of the PNG packed into a long. */
+  private long readDimensions(InputStream in) throws IOException {
+    int read = 0;
+    while (read < HEADER_LENGTH) {
+      int count = in.read(readBuffer, read, HEADER_LENGTH - read);
+      if (count == -1) {
+        throw new IOException("Truncated PNG header.");
+      }
+      read += count;
+    }
+    for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+      if (readBuffer[i] != PNG_SIGNATURE[i]) {
+        throw new IOException("Not a PNG.");
+      }
+    }
+    return ((long) readInt(readBuffer, 16) << 32) | readInt(readBuffer, 20);
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+        | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+  }
+
+  /** A PNG signature and IHDR chunk followed by random bytes standing in for image data. */
+  private static byte[] pngBody(int size, int width, int height) {
+    byte[] data = new byte[size];
+    new Random(0).nextBytes(data);
+    System.arraycopy(PNG_SIGNATURE, 0, data, 0, PNG_SIGNATURE.length);
+    writeInt(data, 8, 13);
+    data[12] = 'I';
+    data[13] = 'H';
+    data[14] = 'D';
+    data[15] = 'R';
+    writeInt(data, 16, width);
+    writeInt(data, 20, height);
+    return data;
+  }
+
+  private static void writeInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
+  }
+}
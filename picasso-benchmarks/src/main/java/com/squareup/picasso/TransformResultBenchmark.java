@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The matrix math of resizing, rotating, and folding geometric transformations. The stand-in
+ * {@link Bitmap} has no pixels so this excludes the cost of drawing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformResultBenchmark {
+  private Bitmap source;
+  private PicassoBitmapOptions centerCrop;
+  private PicassoBitmapOptions centerInside;
+  private PicassoBitmapOptions resize;
+  private PicassoBitmapOptions rotate;
+  private List<Transformation> geometry;
+
+  @Setup public void setUp() {
+    source = Bitmap.createImmutableBitmap(1024, 768, Bitmap.Config.ARGB_8888);
+
+    centerCrop = new PicassoBitmapOptions();
+    centerCrop.targetWidth = 200;
+    centerCrop.targetHeight = 200;
+    centerCrop.centerCrop = true;
+
+    centerInside = new PicassoBitmapOptions();
+    centerInside.targetWidth = 200;
+    centerInside.targetHeight = 200;
+    centerInside.centerInside = true;
+
+    resize = new PicassoBitmapOptions();
+    resize.targetWidth = 300;
+    resize.targetHeight = 200;
+
+    rotate = new PicassoBitmapOptions();
+    rotate.targetRotation = 45;
+    rotate.targetPivotX = 512;
+    rotate.targetPivotY = 384;
+    rotate.hasRotationPivot = true;
+
+    geometry = Collections.<Transformation>singletonList(new SquareCropTransformation());
+  }
+
+  @Benchmark public Bitmap centerCrop() {
+    return Picasso.transformResult(centerCrop, source, 0);
+  }
+
+  @Benchmark public Bitmap centerInside() {
+    return Picasso.transformResult(centerInside, source, 0);
+  }
+
+  @Benchmark public Bitmap resizeWithExifRotation() {
+    return Picasso.transformResult(resize, source, 90);
+  }
+
+  @Benchmark public Bitmap rotateAboutPivot() {
+    return Picasso.transformResult(rotate, source, 0);
+  }
+
+  @Benchmark public Bitmap resizeWithFoldedGeometry() {
+    return Picasso.transformResult(resize, source, 0, geometry);
+  }
+
+  /** Crops the middle square of the image and turns it on its side. */
+  static final class SquareCropTransformation extends GeometricTransformation {
+    @Override public void apply(Geometry geometry) {
+      int size = Math.min(geometry.width(), geometry.height());
+      geometry.crop((geometry.width() - size) / 2, (geometry.height() - size) / 2, size, size);
+      geometry.rotate(90);
+    }
+
+    @Override public String key() {
+      return "squareCrop()";
+    }
+  }
+}
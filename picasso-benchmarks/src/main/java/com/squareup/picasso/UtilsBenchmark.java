@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Request keys are built for every load and sample sizes for every resized decode. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+  private Uri uri;
+  private PicassoBitmapOptions options;
+  private List<Transformation> transformations;
+  private PicassoBitmapOptions bounds;
+
+  @Setup public void setUp() {
+    uri = Uri.parse("http://i.imgur.com/CqmBjo5.jpg");
+    options = new PicassoBitmapOptions();
+    options.targetWidth = 200;
+    options.targetHeight = 150;
+    options.centerCrop = true;
+    options.targetRotation = 90;
+    transformations = Arrays.<Transformation>asList(new KeyTransformation("rounded(8)"),
+        new KeyTransformation("grayscale()"));
+    bounds = new PicassoBitmapOptions();
+    bounds.targetWidth = 200;
+    bounds.targetHeight = 150;
+  }
+
+  @Benchmark public String createKey() {
+    return Utils.createKey(uri, 0, null, null);
+  }
+
+  @Benchmark public String createKeyWithOptions() {
+    return Utils.createKey(uri, 0, options, null);
+  }
+
+  @Benchmark public String createKeyWithTransformations() {
+    return Utils.createKey(uri, 0, options, transformations);
+  }
+
+  @Benchmark public int calculateInSampleSize() {
+    bounds.outWidth = 1024;
+    bounds.outHeight = 768;
+    bounds.inJustDecodeBounds = true;
+    Utils.calculateInSampleSize(bounds);
+    return bounds.inSampleSize;
+  }
+
+  /** A transformation which only has a key. */
+  static final class KeyTransformation implements Transformation {
+    private final String key;
+
+    KeyTransformation(String key) {
+      this.key = key;
+    }
+
+    @Override public Bitmap transform(Bitmap source) {
+      return source;
+    }
+
+    @Override public String key() {
+      return key;
+    }
+  }
+}
@@ -1,21 +1,19 @@
 package com.example.picasso;
 
-import android.graphics.Bitmap;
-import com.squareup.picasso.Transformation;
+import com.squareup.picasso.GeometricTransformation;
 
-/** Custom transformation class that crops an image to make it square. */
-final class CropSquareTransformation implements Transformation {
-  @Override public Bitmap transform(Bitmap source) {
-    int size = Math.min(source.getWidth(), source.getHeight());
+/**
+ * Custom transformation class that crops an image to make it square. As a geometric
+ * transformation it is folded into the same pass as any resize or rotation.
+ */
+final class CropSquareTransformation extends GeometricTransformation {
+  @Override public void apply(Geometry geometry) {
+    int size = Math.min(geometry.width(), geometry.height());
 
-    int x = (source.getWidth() - size) / 2;
-    int y = (source.getHeight() - size) / 2;
+    int x = (geometry.width() - size) / 2;
+    int y = (geometry.height() - size) / 2;
 
-    Bitmap squaredBitmap = Bitmap.createBitmap(source, x, y, size, size);
-    if (squaredBitmap != source) {
-      source.recycle();
-    }
-    return squaredBitmap;
+    geometry.crop(x, y, size, size);
   }
 
   @Override public String key() {
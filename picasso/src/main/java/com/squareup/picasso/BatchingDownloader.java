@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static com.squareup.picasso.Utils.parseResponseSourceHeader;
+
+/**
+ * A {@link Downloader} for servers which can return many images in a single multipart response.
+ * Network requests which arrive while others are loading are gathered for a short window and
+ * fetched with one request to the URI returned by {@link #createBatchUri(List)}. Each part of the
+ * response is handed to the request for the URI named by its {@code Content-Location} header.
+ * Parts without that header are matched to requests in order.
+ * <p>
+ * A request which arrives while nothing else is loading is fetched right away, as are requests
+ * which cannot be batched and requests for the local cache only. Requests whose part is missing
+ * or whose batch failed are also loaded individually. All of these go through the delegate
+ * downloader.
+ * <p>
+ * Since {@link Downloader#load(Uri, boolean)} blocks a download thread per request, a batch can
+ * hold at most as many requests as the {@link Picasso.Builder#executor executor} runs at once.
+ */
+public abstract class BatchingDownloader implements Downloader {
+  static final long DEFAULT_WINDOW_MILLIS = 50;
+  static final int DEFAULT_MAX_BATCH_SIZE = 20;
+  static final String RESPONSE_SOURCE = "X-Android-Response-Source";
+
+  private static final byte[] CRLF = { '\r', '\n' };
+  private static final byte[] BLANK_LINE = { '\r', '\n', '\r', '\n' };
+
+  private final Downloader delegate;
+  private final long windowMillis;
+  private final int maxBatchSize;
+
+  /** The batch which new requests join, or {@code null} if there is none. Guarded by this. */
+  private Batch open;
+  /** The number of network loads whose response has not been read yet. Guarded by this. */
+  private int loading;
+
+  /**
+   * Create a downloader which batches requests arriving within 50ms of each other while other
+   * requests are loading.
+   *
+   * @param delegate Loads the requests which are not batched.
+   */
+  protected BatchingDownloader(Downloader delegate) {
+    this(delegate, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * @param delegate Loads the requests which are not batched.
+   * @param windowMillis How long the first request of a batch waits for others to join it.
+   * Requests which arrive while nothing else is loading do not wait.
+   * @param maxBatchSize The number of requests at which a batch is fetched without waiting for the
+   * rest of its window.
+   */
+  protected BatchingDownloader(Downloader delegate, long windowMillis, int maxBatchSize) {
+    if (delegate == null) {
+      throw new IllegalArgumentException("Delegate downloader must not be null.");
+    }
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("Batch window must be positive.");
+    }
+    if (maxBatchSize < 2) {
+      throw new IllegalArgumentException("Maximum batch size must be at least 2.");
+    }
+    this.delegate = delegate;
+    this.windowMillis = windowMillis;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Returns the URI which fetches all of {@code uris} in one multipart response, or {@code null}
+   * if they cannot be fetched together.
+   */
+  protected abstract Uri createBatchUri(List<Uri> uris);
+
+  /** Returns whether {@code uri} may be fetched as part of a batch. */
+  protected boolean isBatchable(Uri uri) {
+    return true;
+  }
+
+  protected HttpURLConnection openConnection(Uri uri) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+    connection.setConnectTimeout(Utils.DEFAULT_CONNECT_TIMEOUT);
+    connection.setReadTimeout(Utils.DEFAULT_READ_TIMEOUT);
+    return connection;
+  }
+
+  @Override public Response load(Uri uri, boolean localCacheOnly) throws IOException {
+    if (localCacheOnly) {
+      return delegate.load(uri, true);
+    }
+
+    boolean batchable = isBatchable(uri);
+    Batch batch = null;
+    int index = 0;
+    boolean leader = false;
+    synchronized (this) {
+      // With nothing else loading there is nobody to batch with, so don't wait for them.
+      if (batchable && loading > 0) {
+        leader = open == null;
+        if (leader) {
+          open = new Batch();
+        }
+        batch = open;
+        index = batch.uris.size();
+        batch.uris.add(uri);
+        if (batch.uris.size() >= maxBatchSize) {
+          open = null;
+          notifyAll();
+        }
+      }
+      loading++;
+    }
+
+    boolean loaded = false;
+    try {
+      Response response = batch == null ? null : loadPart(batch, index, leader);
+      if (response == null) {
+        response = delegate.load(uri, false);
+        if (response != null && response.stream != null) {
+          response = new LoadingResponse(response);
+          loaded = true;
+        }
+      }
+      return response;
+    } finally {
+      if (!loaded) {
+        finishedLoading();
+      }
+    }
+  }
+
+  /** Returns the part of {@code batch} at {@code index} or {@code null} if it is missing. */
+  private Response loadPart(Batch batch, int index, boolean leader) throws IOException {
+    if (leader) {
+      boolean interrupted = awaitWindow(batch);
+      fetch(batch);
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    byte[] part;
+    try {
+      batch.done.await();
+      part = batch.parts != null ? batch.parts[index] : null;
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+    if (part == null) {
+      return null;
+    }
+    return new Response(new ByteArrayInputStream(part), batch.cached, part.length);
+  }
+
+  private synchronized void finishedLoading() {
+    loading--;
+  }
+
+  /**
+   * Waits until {@code batch} is full or its window has passed and closes it to new requests.
+   * Returns whether the thread was interrupted while waiting.
+   */
+  private synchronized boolean awaitWindow(Batch batch) {
+    boolean interrupted = false;
+    long deadline = System.nanoTime() + windowMillis * 1000000L;
+    while (open == batch) {
+      long remainingMillis = (deadline - System.nanoTime()) / 1000000L;
+      if (remainingMillis <= 0) {
+        break;
+      }
+      try {
+        wait(remainingMillis);
+      } catch (InterruptedException e) {
+        // Other requests are waiting on this batch so it must be fetched regardless.
+        interrupted = true;
+        break;
+      }
+    }
+    if (open == batch) {
+      open = null;
+    }
+    return interrupted;
+  }
+
+  private void fetch(Batch batch) {
+    List<Uri> uris = Collections.unmodifiableList(batch.uris);
+    try {
+      Uri batchUri = uris.size() > 1 ? createBatchUri(uris) : null;
+      if (batchUri != null) {
+        HttpURLConnection connection = openConnection(batchUri);
+        connection.setUseCaches(true);
+        batch.cached = parseResponseSourceHeader(connection.getHeaderField(RESPONSE_SOURCE));
+        String boundary = parseBoundary(connection.getContentType());
+        if (boundary == null) {
+          throw new IOException("Batch response is not multipart: " + connection.getContentType());
+        }
+        InputStream stream = connection.getInputStream();
+        byte[] body;
+        try {
+          body = readFully(stream);
+        } finally {
+          Utils.closeQuietly(stream);
+        }
+        batch.parts = matchParts(uris, parseMultipart(body, boundary));
+      }
+    } catch (IOException ignored) {
+      // Every request of the batch falls back to loading on its own.
+    } finally {
+      batch.done.countDown();
+    }
+  }
+
+  private static byte[][] matchParts(List<Uri> uris, List<Part> parts) {
+    byte[][] matched = new byte[uris.size()][];
+    for (int i = 0, count = parts.size(); i < count; i++) {
+      Part part = parts.get(i);
+      int index = part.location == null ? i : indexOf(uris, part.location);
+      if (index >= 0 && index < matched.length && matched[index] == null) {
+        matched[index] = part.body;
+      }
+    }
+    return matched;
+  }
+
+  private static int indexOf(List<Uri> uris, String location) {
+    for (int i = 0, count = uris.size(); i < count; i++) {
+      Uri uri = uris.get(i);
+      if (location.equals(uri.toString()) || location.equals(uri.getPath())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the boundary of a multipart {@code Content-Type} or {@code null} if it has none. */
+  static String parseBoundary(String contentType) {
+    if (contentType == null || !contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+      return null;
+    }
+    for (String parameter : contentType.split(";")) {
+      parameter = parameter.trim();
+      if (parameter.regionMatches(true, 0, "boundary=", 0, 9)) {
+        String boundary = parameter.substring(9);
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+          boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary.length() > 0 ? boundary : null;
+      }
+    }
+    return null;
+  }
+
+  /** Splits a multipart {@code body} into its parts. */
+  static List<Part> parseMultipart(byte[] body, String boundary) throws IOException {
+    byte[] delimiter = ("--" + boundary).getBytes("US-ASCII");
+    byte[] partDelimiter = ("\r\n--" + boundary).getBytes("US-ASCII");
+
+    int position = indexOf(body, delimiter, 0);
+    if (position == -1) {
+      throw new IOException("Multipart body has no boundary.");
+    }
+    position += delimiter.length;
+
+    List<Part> parts = new ArrayList<Part>();
+    while (position + 1 < body.length && !(body[position] == '-' && body[position + 1] == '-')) {
+      int lineEnd = indexOf(body, CRLF, position);
+      if (lineEnd == -1) {
+        throw new IOException("Truncated multipart body.");
+      }
+      // The line break ending the delimiter doubles as the first half of a blank line.
+      int headersEnd = indexOf(body, BLANK_LINE, lineEnd);
+      int bodyEnd = headersEnd == -1 ? -1 : indexOf(body, partDelimiter, headersEnd + 4);
+      if (bodyEnd == -1) {
+        throw new IOException("Truncated multipart body.");
+      }
+      String location = null;
+      int headersStart = lineEnd + 2;
+      if (headersEnd > headersStart) {
+        String headers = new String(body, headersStart, headersEnd - headersStart, "US-ASCII");
+        for (String header : headers.split("\r\n")) {
+          int colon = header.indexOf(':');
+          if (colon != -1
+              && "Content-Location".equalsIgnoreCase(header.substring(0, colon).trim())) {
+            location = header.substring(colon + 1).trim();
+          }
+        }
+      }
+      byte[] partBody = new byte[bodyEnd - headersEnd - 4];
+      System.arraycopy(body, headersEnd + 4, partBody, 0, partBody.length);
+      parts.add(new Part(location, partBody));
+      position = bodyEnd + partDelimiter.length;
+    }
+    return parts;
+  }
+
+  private static int indexOf(byte[] data, byte[] pattern, int fromIndex) {
+    outer:
+    for (int i = fromIndex, last = data.length - pattern.length; i <= last; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (data[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static byte[] readFully(InputStream stream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = stream.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  /** One part of a multipart response. */
+  static final class Part {
+    final String location;
+    final byte[] body;
+
+    Part(String location, byte[] body) {
+      this.location = location;
+      this.body = body;
+    }
+  }
+
+  /** Counts a delegate's response as loading until its stream is closed. */
+  private final class LoadingResponse extends Response {
+    private final Response response;
+
+    LoadingResponse(Response response) {
+      super(new FilterInputStream(response.stream) {
+        private boolean closed;
+
+        @Override public synchronized void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            if (!closed) {
+              closed = true;
+              finishedLoading();
+            }
+          }
+        }
+      }, response.cached, response.contentLength, response.stale);
+      this.response = response;
+    }
+
+    @Override public void disconnect() {
+      response.disconnect();
+    }
+  }
+
+  private static final class Batch {
+    final List<Uri> uris = new ArrayList<Uri>();
+    final CountDownLatch done = new CountDownLatch(1);
+    /** The bodies for each URI, or {@code null} if the batch could not be fetched. */
+    volatile byte[][] parts;
+    volatile boolean cached;
+  }
+}
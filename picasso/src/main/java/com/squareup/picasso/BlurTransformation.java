@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/**
+ * Blurs an image by averaging every pixel with its neighbors inside a square of the specified
+ * radius. The horizontal and vertical halves of the blur are run as separate passes, averaging
+ * premultiplied colors so that transparent pixels do not tint the result.
+ */
+public class BlurTransformation extends PixelTransformation {
+  private final int radius;
+
+  public BlurTransformation(int radius) {
+    if (radius <= 0) {
+      throw new IllegalArgumentException("Radius must be positive number.");
+    }
+    this.radius = radius;
+  }
+
+  @Override protected int passCount() {
+    return 2;
+  }
+
+  @Override protected void filter(int pass, int[] source, int[] destination, int width,
+      int height, int startRow, int endRow) {
+    if (pass == 0) {
+      blurRows(source, destination, width, startRow, endRow);
+    } else {
+      blurColumns(source, destination, width, height, startRow, endRow);
+    }
+  }
+
+  /** Blurs the rows of {@code source} into premultiplied rows of {@code destination}. */
+  private void blurRows(int[] source, int[] destination, int width, int startRow, int endRow) {
+    int radius = this.radius;
+    int window = radius * 2 + 1;
+    int last = width - 1;
+    for (int y = startRow; y < endRow; y++) {
+      int row = y * width;
+      int a = 0;
+      int r = 0;
+      int g = 0;
+      int b = 0;
+      for (int i = -radius; i <= radius; i++) {
+        int pixel = premultiply(source[row + clamp(i, 0, last)]);
+        a += pixel >>> 24;
+        r += (pixel >> 16) & 0xff;
+        g += (pixel >> 8) & 0xff;
+        b += pixel & 0xff;
+      }
+      for (int x = 0; x < width; x++) {
+        destination[row + x] = (a / window) << 24 | (r / window) << 16 | (g / window) << 8
+            | (b / window);
+
+        int added = premultiply(source[row + clamp(x + radius + 1, 0, last)]);
+        int removed = premultiply(source[row + clamp(x - radius, 0, last)]);
+        a += (added >>> 24) - (removed >>> 24);
+        r += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+        g += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+        b += (added & 0xff) - (removed & 0xff);
+      }
+    }
+  }
+
+  /**
+   * Blurs the premultiplied columns of {@code source} into {@code destination}. Rows are walked in
+   * order with a running sum for every column so that memory is read sequentially.
+   */
+  private void blurColumns(int[] source, int[] destination, int width, int height, int startRow,
+      int endRow) {
+    int radius = this.radius;
+    int window = radius * 2 + 1;
+    int last = height - 1;
+    // The alpha, red, green and blue sums of each column.
+    int[] sums = new int[width * 4];
+    for (int i = startRow - radius; i <= startRow + radius; i++) {
+      int row = clamp(i, 0, last) * width;
+      for (int x = 0, sum = 0; x < width; x++, sum += 4) {
+        int pixel = source[row + x];
+        sums[sum] += pixel >>> 24;
+        sums[sum + 1] += (pixel >> 16) & 0xff;
+        sums[sum + 2] += (pixel >> 8) & 0xff;
+        sums[sum + 3] += pixel & 0xff;
+      }
+    }
+    for (int y = startRow; y < endRow; y++) {
+      int row = y * width;
+      int addedRow = clamp(y + radius + 1, 0, last) * width;
+      int removedRow = clamp(y - radius, 0, last) * width;
+      for (int x = 0, sum = 0; x < width; x++, sum += 4) {
+        destination[row + x] = unpremultiply(sums[sum] / window, sums[sum + 1] / window,
+            sums[sum + 2] / window, sums[sum + 3] / window);
+
+        int added = source[addedRow + x];
+        int removed = source[removedRow + x];
+        sums[sum] += (added >>> 24) - (removed >>> 24);
+        sums[sum + 1] += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+        sums[sum + 2] += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+        sums[sum + 3] += (added & 0xff) - (removed & 0xff);
+      }
+    }
+  }
+
+  /** Scales the color channels of {@code pixel} by its alpha. */
+  private static int premultiply(int pixel) {
+    int a = pixel >>> 24;
+    if (a == 0xff) {
+      return pixel;
+    }
+    int r = (((pixel >> 16) & 0xff) * a + 127) / 255;
+    int g = (((pixel >> 8) & 0xff) * a + 127) / 255;
+    int b = ((pixel & 0xff) * a + 127) / 255;
+    return a << 24 | r << 16 | g << 8 | b;
+  }
+
+  private static int unpremultiply(int a, int r, int g, int b) {
+    if (a == 0xff) {
+      return a << 24 | r << 16 | g << 8 | b;
+    }
+    if (a == 0) {
+      return 0;
+    }
+    int half = a / 2;
+    return a << 24
+        | Math.min(0xff, (r * 255 + half) / a) << 16
+        | Math.min(0xff, (g * 255 + half) / a) << 8
+        | Math.min(0xff, (b * 255 + half) / a);
+  }
+
+  @Override public String key() {
+    return "blur(" + radius + ")";
+  }
+}
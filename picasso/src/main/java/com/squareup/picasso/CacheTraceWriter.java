@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records every lookup of a requested image in the memory cache so that cache sizes and policies
+ * can be compared offline against real traffic. Install it with {@link Picasso.Builder#cacheTrace}.
+ * Picasso's own use of the cache, such as storing revalidated images, is not recorded.
+ * <p>
+ * A trace starts with the four bytes {@code PCT1} followed by one eight byte record per access:
+ * the {@link String#hashCode() hash} of the cache key and then the size of the image in bytes,
+ * whose highest bit is set if the image was found in the cache. Misses are recorded when the
+ * loaded image is stored in the cache, so requests which fail or skip the cache are left out.
+ * <p>
+ * Records are buffered, so {@link #close()} must be called to write the end of the trace. Errors
+ * writing the trace are silently ignored.
+ */
+public class CacheTraceWriter implements Closeable {
+  static final int MAGIC = ('P' << 24) | ('C' << 16) | ('T' << 8) | '1';
+  static final int HIT = 0x80000000;
+
+  private final DataOutputStream out;
+  private boolean failed;
+
+  /** Write a trace to {@code file}, replacing any existing contents. */
+  public CacheTraceWriter(File file) throws IOException {
+    this(new FileOutputStream(file));
+  }
+
+  public CacheTraceWriter(OutputStream out) {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    try {
+      this.out.writeInt(MAGIC);
+    } catch (IOException e) {
+      failed = true;
+    }
+  }
+
+  synchronized void record(String key, int bytes, boolean hit) {
+    if (failed) {
+      return;
+    }
+    try {
+      out.writeInt(key.hashCode());
+      out.writeInt(hit ? bytes | HIT : bytes);
+    } catch (IOException e) {
+      failed = true;
+    }
+  }
+
+  /** Writes the buffered records. */
+  public synchronized void flush() {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      failed = true;
+    }
+  }
+
+  /** Writes the buffered records and closes the underlying stream. */
+  @Override public synchronized void close() {
+    failed = true;
+    try {
+      out.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+}
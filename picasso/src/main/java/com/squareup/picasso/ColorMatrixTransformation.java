@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.Arrays;
+
+/**
+ * Transforms the color of every pixel with a 4x5 matrix laid out like
+ * {@link android.graphics.ColorMatrix}. For each pixel:
+ * <pre>
+ *   R' = a*R + b*G + c*B + d*A + e;
+ *   G' = f*R + g*G + h*B + i*A + j;
+ *   B' = k*R + l*G + m*B + n*A + o;
+ *   A' = p*R + q*G + r*B + s*A + t;
+ * </pre>
+ */
+public class ColorMatrixTransformation extends PixelTransformation {
+  private final float[] matrix;
+
+  public ColorMatrixTransformation(float[] matrix) {
+    if (matrix == null || matrix.length != 20) {
+      throw new IllegalArgumentException("Color matrix must have 20 entries.");
+    }
+    this.matrix = matrix.clone();
+  }
+
+  @Override protected void filter(int pass, int[] source, int[] destination, int width,
+      int height, int startRow, int endRow) {
+    float[] m = matrix;
+    for (int i = startRow * width, end = endRow * width; i < end; i++) {
+      int pixel = source[i];
+      int a = pixel >>> 24;
+      int r = (pixel >> 16) & 0xff;
+      int g = (pixel >> 8) & 0xff;
+      int b = pixel & 0xff;
+
+      int r2 = clamp((int) (m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4] + 0.5f), 0, 255);
+      int g2 = clamp((int) (m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9] + 0.5f), 0, 255);
+      int b2 = clamp((int) (m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14] + 0.5f), 0, 255);
+      int a2 = clamp((int) (m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19] + 0.5f), 0, 255);
+      destination[i] = a2 << 24 | r2 << 16 | g2 << 8 | b2;
+    }
+  }
+
+  @Override public String key() {
+    return "colorMatrix(" + Arrays.toString(matrix) + ")";
+  }
+}
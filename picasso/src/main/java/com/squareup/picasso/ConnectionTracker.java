@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.os.SystemClock;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Estimates connection pool hits and misses by mirroring the keep-alive policy of the pool: a
+ * request is a hit when an earlier response from the same host released its connection less than
+ * the keep-alive duration ago and the pool had room to hold it. A response only counts as released
+ * when its body was read to the end. The pool itself does not expose whether a connection was
+ * reused so these counts are an estimate.
+ */
+final class ConnectionTracker {
+  private final int maxIdleConnections;
+  private final long keepAliveDurationMs;
+
+  /** Idle connections ordered from least to most recently released. */
+  private final LinkedList<IdleConnection> idleConnections = new LinkedList<IdleConnection>();
+
+  private long hitCount;
+  private long missCount;
+
+  ConnectionTracker(int maxIdleConnections, long keepAliveDurationMs) {
+    this.maxIdleConnections = maxIdleConnections;
+    this.keepAliveDurationMs = keepAliveDurationMs;
+  }
+
+  /** Records a request to {@code host} and returns whether it could reuse an idle connection. */
+  synchronized boolean acquire(String host) {
+    evictExpired(SystemClock.uptimeMillis());
+    for (Iterator<IdleConnection> i = idleConnections.descendingIterator(); i.hasNext(); ) {
+      if (i.next().host.equals(host)) {
+        i.remove();
+        hitCount++;
+        return true;
+      }
+    }
+    missCount++;
+    return false;
+  }
+
+  /** Records that a connection to {@code host} was returned to the pool. */
+  synchronized void release(String host) {
+    long now = SystemClock.uptimeMillis();
+    evictExpired(now);
+    idleConnections.addLast(new IdleConnection(host, now));
+    if (idleConnections.size() > maxIdleConnections) {
+      idleConnections.removeFirst();
+    }
+  }
+
+  synchronized long hitCount() {
+    return hitCount;
+  }
+
+  synchronized long missCount() {
+    return missCount;
+  }
+
+  private void evictExpired(long now) {
+    while (!idleConnections.isEmpty()
+        && now - idleConnections.getFirst().releasedAt >= keepAliveDurationMs) {
+      idleConnections.removeFirst();
+    }
+  }
+
+  private static final class IdleConnection {
+    final String host;
+    final long releasedAt;
+
+    IdleConnection(String host, long releasedAt) {
+      this.host = host;
+      this.releasedAt = releasedAt;
+    }
+  }
+}
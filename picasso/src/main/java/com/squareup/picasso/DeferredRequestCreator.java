@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+import java.lang.ref.WeakReference;
+
+/**
+ * Holds back a {@link RequestBuilder#fit() fit} request until its target has been laid out and
+ * then submits it resized to the target's actual bounds.
+ */
+class DeferredRequestCreator implements ViewTreeObserver.OnPreDrawListener {
+  final RequestBuilder creator;
+  final WeakReference<ImageView> target;
+
+  DeferredRequestCreator(RequestBuilder creator, ImageView target) {
+    this.creator = creator;
+    this.target = new WeakReference<ImageView>(target);
+    target.getViewTreeObserver().addOnPreDrawListener(this);
+  }
+
+  @Override public boolean onPreDraw() {
+    ImageView target = this.target.get();
+    if (target == null) {
+      return true;
+    }
+    ViewTreeObserver vto = target.getViewTreeObserver();
+    if (!vto.isAlive()) {
+      return true;
+    }
+
+    int width = target.getWidth();
+    int height = target.getHeight();
+    if (width <= 0 || height <= 0) {
+      return true;
+    }
+
+    vto.removeOnPreDrawListener(this);
+    creator.unfit().resize(width, height).into(target);
+    return true;
+  }
+
+  void cancel() {
+    ImageView target = this.target.get();
+    if (target == null) {
+      return;
+    }
+    ViewTreeObserver vto = target.getViewTreeObserver();
+    if (!vto.isAlive()) {
+      return;
+    }
+    vto.removeOnPreDrawListener(this);
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static android.content.ContentResolver.SCHEME_ANDROID_RESOURCE;
+import static android.content.ContentResolver.SCHEME_CONTENT;
+import static android.content.ContentResolver.SCHEME_FILE;
+import static com.squareup.picasso.Downloader.Response;
+
+/**
+ * Hands requests to the executor while enforcing a limit on how many network requests may run for
+ * each host. Requests over the limit wait here rather than on a worker thread so that a slow host
+ * cannot occupy every thread. Response bodies are metered per host and optionally throttled to a
+ * global number of bytes per second.
+ */
+final class DownloadScheduler {
+  private final ExecutorService service;
+  private final int maxRequestsPerHost;
+  private final long maxBytesPerSecond;
+  private final Map<String, Host> hosts = new LinkedHashMap<String, Host>();
+
+  /** Uptime in nanoseconds until which already read bytes exhaust the bandwidth limit. */
+  private long throttledUntil;
+
+  /**
+   * @param maxRequestsPerHost The maximum number of concurrent requests per host or {@code 0} for
+   * no limit.
+   * @param maxBytesPerSecond The maximum combined download rate or {@code 0} for no limit.
+   */
+  DownloadScheduler(ExecutorService service, int maxRequestsPerHost, long maxBytesPerSecond) {
+    this.service = service;
+    this.maxRequestsPerHost = maxRequestsPerHost;
+    this.maxBytesPerSecond = maxBytesPerSecond;
+  }
+
+  Future<?> submit(Request request) {
+    String host = hostOf(request);
+    HostTask task = new HostTask(request, host);
+    if (host != null) {
+      synchronized (this) {
+        Host state = host(host);
+        if (maxRequestsPerHost > 0 && state.running >= maxRequestsPerHost) {
+          state.waiting.add(task);
+          return task;
+        }
+        state.running++;
+        task.holdsSlot = true;
+      }
+    }
+    execute(task);
+    return task;
+  }
+
+  /**
+   * Wraps the body of {@code response} so that the bytes read from it are counted for the host of
+   * {@code request} and are subject to the bandwidth limit.
+   */
+  Response meter(Request request, final Response response) {
+    String host = hostOf(request);
+    if (host == null || response.stream == null) {
+      return response;
+    }
+    return new MeteredResponse(response, host);
+  }
+
+  /** Returns the number of body bytes read from a metered response or {@code -1} if unknown. */
+  static long bytesRead(Response response) {
+    return response instanceof MeteredResponse ? ((MeteredResponse) response).bytesRead() : -1;
+  }
+
+  synchronized Map<String, HostStats> createSnapshot() {
+    Map<String, HostStats> snapshot = new LinkedHashMap<String, HostStats>(hosts.size());
+    for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+      String host = entry.getKey();
+      Host state = entry.getValue();
+      long averageQueueWait = state.started == 0 ? 0 : state.totalQueueWait / state.started;
+      long throughput = state.readNanos == 0 ? 0 : state.bytesRead * 1000000000L / state.readNanos;
+      snapshot.put(host, new HostStats(host, state.started, state.waiting.size(), averageQueueWait,
+          state.maxQueueWait, state.bytesRead, throughput));
+    }
+    return snapshot;
+  }
+
+  private synchronized void started(String host, long queueWait) {
+    Host state = host(host);
+    state.started++;
+    state.totalQueueWait += queueWait;
+    state.maxQueueWait = Math.max(state.maxQueueWait, queueWait);
+  }
+
+  private void finished(HostTask finished) {
+    HostTask next = null;
+    synchronized (this) {
+      Host state = host(finished.host);
+      if (!finished.holdsSlot) {
+        // Cancelled while waiting for a slot, or its slot has already been released.
+        state.waiting.remove(finished);
+        return;
+      }
+      finished.holdsSlot = false;
+      state.running--;
+      while (!state.waiting.isEmpty()) {
+        HostTask task = state.waiting.removeFirst();
+        if (!task.isCancelled()) {
+          state.running++;
+          task.holdsSlot = true;
+          next = task;
+          break;
+        }
+      }
+    }
+    if (next != null) {
+      execute(next);
+    }
+  }
+
+  private void execute(HostTask task) {
+    // Reported first since a free worker may start the task before execute() returns.
+    Picasso picasso = task.request.picasso;
+    if (picasso.reportsEvents(task.request)) {
+      picasso.eventListener.requestQueued(task.request.id, System.nanoTime());
+    }
+    service.execute(task);
+  }
+
+  private synchronized void recordRead(String host, int byteCount, long nanos) {
+    Host state = host(host);
+    state.bytesRead += byteCount;
+    state.readNanos += nanos;
+  }
+
+  /** Blocks until reading {@code byteCount} more bytes keeps within the bandwidth limit. */
+  private void throttle(int byteCount) throws InterruptedIOException {
+    long delayNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (throttledUntil < now) {
+        throttledUntil = now;
+      }
+      throttledUntil += byteCount * 1000000000L / maxBytesPerSecond;
+      delayNanos = throttledUntil - now;
+    }
+    if (delayNanos >= 1000000L) {
+      try {
+        Thread.sleep(delayNanos / 1000000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  private Host host(String host) {
+    Host state = hosts.get(host);
+    if (state == null) {
+      state = new Host();
+      hosts.put(host, state);
+    }
+    return state;
+  }
+
+  /** Returns the host of a network request or {@code null} for local requests. */
+  static String hostOf(Request request) {
+    Uri uri = request.uri;
+    if (request.resourceId != 0 || uri == null) {
+      return null;
+    }
+    String scheme = uri.getScheme();
+    if (SCHEME_CONTENT.equals(scheme)
+        || SCHEME_FILE.equals(scheme)
+        || SCHEME_ANDROID_RESOURCE.equals(scheme)) {
+      return null;
+    }
+    return uri.getHost();
+  }
+
+  private static final class Host {
+    final LinkedList<HostTask> waiting = new LinkedList<HostTask>();
+    int running;
+    long started;
+    long totalQueueWait;
+    long maxQueueWait;
+    long bytesRead;
+    long readNanos;
+  }
+
+  private final class HostTask extends FutureTask<Object> {
+    final Request request;
+    final String host;
+    final long submittedAt = SystemClock.uptimeMillis();
+    /** Whether this task counts towards its host's running requests. Guarded by the scheduler. */
+    boolean holdsSlot;
+    /** Whether a worker thread has begun running this task. */
+    volatile boolean ran;
+
+    HostTask(Request request, String host) {
+      super(request, null);
+      this.request = request;
+      this.host = host;
+    }
+
+    @Override public void run() {
+      if (host == null) {
+        super.run();
+        return;
+      }
+      ran = true;
+      if (!isCancelled()) {
+        started(host, SystemClock.uptimeMillis() - submittedAt);
+      }
+      try {
+        super.run();
+      } finally {
+        // Cancelling interrupts the download but does not wait for it, so the slot is only
+        // released once the worker is done with it.
+        finished(this);
+      }
+    }
+
+    @Override protected void done() {
+      // Invoked as soon as the task is cancelled. A task which never ran has no worker to release
+      // its slot, or is still waiting for one.
+      if (host != null && !ran) {
+        finished(this);
+      }
+    }
+  }
+
+  private final class MeteredResponse extends Response {
+    private final Response response;
+
+    MeteredResponse(Response response, String host) {
+      super(new MeteredInputStream(response.stream, host), response.cached,
+          response.contentLength);
+      this.response = response;
+    }
+
+    long bytesRead() {
+      return ((MeteredInputStream) stream).bytesRead;
+    }
+
+    @Override public void disconnect() {
+      response.disconnect();
+    }
+  }
+
+  private final class MeteredInputStream extends FilterInputStream {
+    private final String host;
+    /** Bytes read from this stream. Only accessed by the thread reading it. */
+    long bytesRead;
+
+    MeteredInputStream(InputStream in, String host) {
+      super(in);
+      this.host = host;
+    }
+
+    @Override public int read() throws IOException {
+      long start = System.nanoTime();
+      int result = super.read();
+      if (result != -1) {
+        counted(1, start);
+      }
+      return result;
+    }
+
+    @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+      long start = System.nanoTime();
+      int read = super.read(buffer, offset, count);
+      if (read > 0) {
+        counted(read, start);
+      }
+      return read;
+    }
+
+    @Override public long skip(long byteCount) throws IOException {
+      long start = System.nanoTime();
+      long skipped = super.skip(byteCount);
+      if (skipped > 0) {
+        counted((int) skipped, start);
+      }
+      return skipped;
+    }
+
+    private void counted(int byteCount, long start) throws InterruptedIOException {
+      bytesRead += byteCount;
+      recordRead(host, byteCount, System.nanoTime() - start);
+      if (maxBytesPerSecond > 0) {
+        throttle(byteCount);
+      }
+    }
+  }
+}
@@ -37,6 +37,9 @@ public interface Downloader {
   class Response {
     final InputStream stream;
     final boolean cached;
+    final long contentLength;
+    /** Whether this is a disk cache response which was served after it had expired. */
+    final boolean stale;
 
     /**
      * Response stream and info.
@@ -45,8 +48,35 @@ public interface Downloader {
      * @param loadedFromCache {@code true} if the source of the stream is from a local disk cache.
      */
     public Response(InputStream stream, boolean loadedFromCache) {
+      this(stream, loadedFromCache, -1);
+    }
+
+    /**
+     * Response stream and info.
+     *
+     * @param stream Image data stream.
+     * @param loadedFromCache {@code true} if the source of the stream is from a local disk cache.
+     * @param contentLength The length of the image data in bytes or {@code -1} if unknown. This is
+     * only used as a hint for sizing buffers.
+     */
+    public Response(InputStream stream, boolean loadedFromCache, long contentLength) {
+      this(stream, loadedFromCache, contentLength, false);
+    }
+
+    Response(InputStream stream, boolean loadedFromCache, long contentLength, boolean stale) {
       this.stream = stream;
       this.cached = loadedFromCache;
+      this.contentLength = contentLength;
+      this.stale = stale;
+    }
+
+    /**
+     * Abort this response while its stream is being read on another thread, releasing the
+     * underlying connection. This is invoked on a background thread shortly after the request
+     * which owns the response is cancelled. The default implementation closes the stream.
+     */
+    public void disconnect() {
+      Utils.closeQuietly(stream);
     }
   }
 }
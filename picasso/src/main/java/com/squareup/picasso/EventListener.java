@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+
+/**
+ * Receives the events of every request made through a {@link Picasso} instance, for tracing and
+ * profiling. Override the methods of interest; the defaults do nothing.
+ * <p>
+ * Requests are identified by an ID which is unique within the instance and kept across retries.
+ * Every timestamp is taken from {@link System#nanoTime()}. Events are delivered on the thread
+ * where they happen, which is either the main thread or a download thread, so implementations must
+ * be thread safe and should return quickly.
+ * <p>
+ * No events are created when no listener is installed.
+ */
+public abstract class EventListener {
+  /**
+   * A request has been made for {@code uri}, which is {@code null} when loading a resource.
+   * Invoked on the main thread.
+   */
+  public void requestSubmitted(int requestId, Uri uri, long timestampNanos) {
+  }
+
+  /** The request has been handed to the executor service and is waiting for a thread. */
+  public void requestQueued(int requestId, long timestampNanos) {
+  }
+
+  /** A download thread has started working on the request. */
+  public void requestStarted(int requestId, long timestampNanos) {
+  }
+
+  /**
+   * The image was found in the memory cache. When it is found on the main thread before the
+   * request is handed to a download thread, the request is submitted, hits the cache, and is
+   * delivered at once.
+   */
+  public void cacheHit(int requestId, long timestampNanos) {
+  }
+
+  /** The image was not found in the memory cache. */
+  public void cacheMiss(int requestId, long timestampNanos) {
+  }
+
+  /** The downloader has been asked for the image. */
+  public void downloadStarted(int requestId, long timestampNanos) {
+  }
+
+  /**
+   * The body of the response has been consumed. {@code byteCount} is {@code -1} when it is not
+   * known.
+   */
+  public void downloadFinished(int requestId, long byteCount, long timestampNanos) {
+  }
+
+  /** The image has been decoded into a bitmap of the given size. */
+  public void decodeFinished(int requestId, int width, int height, int inSampleSize,
+      long timestampNanos) {
+  }
+
+  /** Resizing, rotation and custom transformations have produced a bitmap of the given size. */
+  public void transformFinished(int requestId, int width, int height, long timestampNanos) {
+  }
+
+  /** The image has been set on its target. Invoked on the main thread. */
+  public void requestDelivered(int requestId, long timestampNanos) {
+  }
+
+  /** The request has failed for good and its error image, if any, was set. */
+  public void requestFailed(int requestId, long timestampNanos) {
+  }
+
+  /** The request was cancelled before being delivered. Invoked on the main thread. */
+  public void requestCancelled(int requestId, long timestampNanos) {
+  }
+}
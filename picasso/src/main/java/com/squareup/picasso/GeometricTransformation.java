@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+
+/**
+ * A {@link Transformation} which only crops, scales, or rotates an image. Rather than producing
+ * pixels itself it describes its operation on a {@link Geometry}.
+ * <p/>
+ * Geometric transformations added directly after the built-in transformations (or at the start
+ * of the list when there are none) are folded into the same matrix as the built-in resize,
+ * rotation, and EXIF correction so that the whole chain costs a single bitmap allocation.
+ */
+public abstract class GeometricTransformation implements Transformation {
+  /** Describe this transformation by cropping, scaling, or rotating {@code geometry}. */
+  public abstract void apply(Geometry geometry);
+
+  /** Applies this transformation on its own when it cannot be folded into a previous pass. */
+  @Override public final Bitmap transform(Bitmap source) {
+    Geometry geometry = new Geometry(source.getWidth(), source.getHeight());
+    apply(geometry);
+    Bitmap result = geometry.draw(source);
+    if (result != source) {
+      source.recycle();
+    }
+    return result;
+  }
+
+  /**
+   * The size of an image and the matrix which maps the original source bitmap onto it. Each
+   * operation is expressed in the coordinates of the image produced by the previous one.
+   */
+  public static final class Geometry {
+    /**
+     * Matches the paint {@link Bitmap#createBitmap(Bitmap, int, int, int, int, Matrix, boolean)}
+     * uses without filtering, so a chain draws the same pixels whether or not it was folded.
+     */
+    private static final Paint ROTATED_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    final Matrix matrix;
+    final Rect region;
+    int width;
+    int height;
+
+    Geometry(int width, int height) {
+      this.matrix = new Matrix();
+      this.region = new Rect(0, 0, width, height);
+      this.width = width;
+      this.height = height;
+    }
+
+    /**
+     * Create the geometry which {@link Bitmap#createBitmap(Bitmap, int, int, int, int, Matrix,
+     * boolean)} would produce for the given source region and matrix.
+     */
+    Geometry(int x, int y, int width, int height, Matrix matrix) {
+      this.matrix = new Matrix();
+      this.matrix.setTranslate(-x, -y);
+      this.region = new Rect(x, y, x + width, y + height);
+      this.width = width;
+      this.height = height;
+      concat(new Matrix(matrix));
+    }
+
+    /** The current width of the image. */
+    public int width() {
+      return width;
+    }
+
+    /** The current height of the image. */
+    public int height() {
+      return height;
+    }
+
+    /** Keep only the specified rectangle of the current image. */
+    public Geometry crop(int x, int y, int width, int height) {
+      if (x < 0 || y < 0 || width <= 0 || height <= 0) {
+        throw new IllegalArgumentException("Crop must be a positive area inside the image.");
+      }
+      if (x + width > this.width || y + height > this.height) {
+        throw new IllegalArgumentException("Crop must not extend outside of the image.");
+      }
+      matrix.postTranslate(-x, -y);
+      this.width = width;
+      this.height = height;
+      return this;
+    }
+
+    /** Scale the current image by the specified factors. */
+    public Geometry scale(float factorX, float factorY) {
+      if (factorX == 0 || factorY == 0) {
+        throw new IllegalArgumentException("Scale factor must not be zero.");
+      }
+      Matrix operation = new Matrix();
+      operation.setScale(factorX, factorY);
+      concat(operation);
+      return this;
+    }
+
+    /** Rotate the current image by the specified degrees. */
+    public Geometry rotate(float degrees) {
+      Matrix operation = new Matrix();
+      operation.setRotate(degrees);
+      concat(operation);
+      return this;
+    }
+
+    /** Appends {@code operation} and moves the result back to the origin. */
+    private void concat(Matrix operation) {
+      RectF bounds = new RectF(0, 0, width, height);
+      operation.mapRect(bounds);
+      operation.postTranslate(-bounds.left, -bounds.top);
+      matrix.postConcat(operation);
+      width = Math.round(bounds.width());
+      height = Math.round(bounds.height());
+    }
+
+    /** Draw {@code source} with this geometry in a single pass. */
+    Bitmap draw(Bitmap source) {
+      if (matrix.isIdentity() && width == source.getWidth() && height == source.getHeight()) {
+        return source;
+      }
+
+      Bitmap.Config config = source.getConfig();
+      if (config == null || !matrix.rectStaysRect()) {
+        config = ARGB_8888;
+      }
+      Bitmap result = Bitmap.createBitmap(width, height, config);
+      Canvas canvas = new Canvas(result);
+      canvas.concat(matrix);
+      canvas.drawBitmap(source, region, region, matrix.rectStaysRect() ? null : ROTATED_PAINT);
+      return result;
+    }
+  }
+}
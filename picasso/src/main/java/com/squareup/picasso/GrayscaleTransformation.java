@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/** Removes all color from an image using the same luminance weights as the framework. */
+public class GrayscaleTransformation extends ColorMatrixTransformation {
+  private static final float R = 0.213f;
+  private static final float G = 0.715f;
+  private static final float B = 0.072f;
+
+  public GrayscaleTransformation() {
+    super(new float[] {
+        R, G, B, 0, 0, //
+        R, G, B, 0, 0, //
+        R, G, B, 0, 0, //
+        0, 0, 0, 1, 0
+    });
+  }
+
+  @Override public String key() {
+    return "grayscale()";
+  }
+}
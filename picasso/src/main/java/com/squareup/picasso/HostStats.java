@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/** Download stats for a single host at a single point in time. */
+public class HostStats {
+  public final String host;
+  /** Number of requests which have started downloading. */
+  public final long requestCount;
+  /** Number of requests waiting for a free slot for this host. */
+  public final int waitingCount;
+  /** Average time in milliseconds between a request being submitted and it starting. */
+  public final long averageQueueWaitTime;
+  /** Longest time in milliseconds between a request being submitted and it starting. */
+  public final long maxQueueWaitTime;
+  /** Total bytes read from response bodies. */
+  public final long bytesRead;
+  /** Bytes read per second of time spent reading response bodies. */
+  public final long throughput;
+
+  public HostStats(String host, long requestCount, int waitingCount, long averageQueueWaitTime,
+      long maxQueueWaitTime, long bytesRead, long throughput) {
+    this.host = host;
+    this.requestCount = requestCount;
+    this.waitingCount = waitingCount;
+    this.averageQueueWaitTime = averageQueueWaitTime;
+    this.maxQueueWaitTime = maxQueueWaitTime;
+    this.bytesRead = bytesRead;
+    this.throughput = throughput;
+  }
+
+  @Override public String toString() {
+    return "HostStats{"
+        + "host="
+        + host
+        + ", requestCount="
+        + requestCount
+        + ", waitingCount="
+        + waitingCount
+        + ", averageQueueWaitTime="
+        + averageQueueWaitTime
+        + ", maxQueueWaitTime="
+        + maxQueueWaitTime
+        + ", bytesRead="
+        + bytesRead
+        + ", throughput="
+        + throughput
+        + '}';
+  }
+}
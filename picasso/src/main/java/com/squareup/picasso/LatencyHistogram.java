@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets of a fixed relative width, in the manner of HdrHistogram. Each power
+ * of two microseconds is split into 16 linear sub-buckets so that any recorded value is reported
+ * within 1/16th of its true value while the histogram keeps a constant size.
+ * <p>
+ * Recording never blocks and snapshots may be taken while other threads are recording.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  /** Values of 2^30 microseconds (about 18 minutes) or more share the last bucket. */
+  private static final int MAX_VALUE_BITS = 30;
+  private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong max = new AtomicLong();
+
+  void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(bucketIndex(micros));
+    while (true) {
+      long currentMax = max.get();
+      if (micros <= currentMax || max.compareAndSet(currentMax, micros)) {
+        break;
+      }
+    }
+  }
+
+  LatencyStats createSnapshot(LatencyStats.Stage stage) {
+    // Work from a copy so that the count and the percentiles agree with each other.
+    long[] snapshot = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    long max = this.max.get();
+    return new LatencyStats(stage, count, valueAtPercentile(snapshot, count, max, 50),
+        valueAtPercentile(snapshot, count, max, 90), valueAtPercentile(snapshot, count, max, 99),
+        max);
+  }
+
+  /** Returns the upper bound in microseconds of the bucket holding the given percentile. */
+  private static long valueAtPercentile(long[] counts, long count, long max, double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(highestValueInBucket(i), max);
+      }
+    }
+    return max;
+  }
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int index = (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    return Math.min(index, BUCKET_COUNT - 1);
+  }
+
+  static long highestValueInBucket(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/** Latency percentiles of one stage of loading images at a single point in time. */
+public class LatencyStats {
+  /** The stages a request passes through, in order. */
+  public enum Stage {
+    /** From being submitted until a download thread starts working on it. */
+    QUEUE,
+    /** From asking the downloader for the image until its response headers have arrived. */
+    NETWORK,
+    /**
+     * Decoding the bitmap. For network images this includes reading the body, which is decoded
+     * as it arrives.
+     */
+    DECODE,
+    /** Resizing, rotating and applying custom transformations. */
+    TRANSFORM,
+    /** From the result being posted to the main thread until it is set on its target. */
+    DELIVERY
+  }
+
+  public final Stage stage;
+  /** Number of recorded requests. */
+  public final long count;
+  /** Median latency in microseconds. */
+  public final long p50;
+  /** 90th percentile latency in microseconds. */
+  public final long p90;
+  /** 99th percentile latency in microseconds. */
+  public final long p99;
+  /** Longest latency in microseconds. */
+  public final long max;
+
+  public LatencyStats(Stage stage, long count, long p50, long p90, long p99, long max) {
+    this.stage = stage;
+    this.count = count;
+    this.p50 = p50;
+    this.p90 = p90;
+    this.p99 = p99;
+    this.max = max;
+  }
+
+  @Override public String toString() {
+    return "LatencyStats{"
+        + "stage="
+        + stage
+        + ", count="
+        + count
+        + ", p50="
+        + p50
+        + ", p90="
+        + p90
+        + ", p99="
+        + p99
+        + ", max="
+        + max
+        + '}';
+  }
+}
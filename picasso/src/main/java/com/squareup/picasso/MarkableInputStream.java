@@ -15,28 +15,39 @@
  */
 package com.squareup.picasso;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.squareup.picasso.SegmentPool.SEGMENT_SIZE;
 
 /**
  * An input stream wrapper that supports unlimited independent cursors for
  * marking and resetting. Each cursor is a token, and it's the caller's
  * responsibility to keep track of these.
+ * <p>
+ * Bytes which may need to be re-read are held in segments borrowed from
+ * {@link SegmentPool} and returned to it when this stream is closed. Once
+ * the stream moves past the furthest limit no bytes are buffered at all.
  */
 final class MarkableInputStream extends InputStream {
   private final InputStream in;
+  private final List<byte[]> segments = new ArrayList<byte[]>();
 
   private long offset;
   private long reset;
   private long limit;
 
+  /** Bytes buffered starting at {@code reset}. The source is at {@code reset + count}. */
+  private int count;
+
   private long defaultMark = -1;
 
+  /** Bytes of segments which had to be allocated because the pool was empty. */
+  private long allocatedBytes;
+
   public MarkableInputStream(InputStream in) {
-    if (!in.markSupported()) {
-      in = new BufferedInputStream(in);
-    }
     this.in = in;
   }
 
@@ -60,27 +71,17 @@ final class MarkableInputStream extends InputStream {
   }
 
   /**
-   * Makes sure that the underlying stream can backtrack the full range from
-   * {@code reset} thru {@code limit}. Since we can't call {@code mark()}
-   * without also adjusting the reset-to-position on the underlying stream this
-   * method resets first and then marks the union of the two byte ranges. On
-   * buffered streams this additional cursor motion shouldn't result in any
-   * additional I/O.
+   * Makes sure that the buffer can backtrack the full range from {@code reset}
+   * thru {@code limit}. If we are still inside the previous limit the union of
+   * the two byte ranges is kept, otherwise buffering restarts at the current
+   * position.
    */
   private void setLimit(long limit) {
-    try {
-      if (reset < offset && offset <= this.limit) {
-        in.reset();
-        in.mark((int) (limit - reset));
-        skip(reset, offset);
-      } else {
-        reset = offset;
-        in.mark((int) (limit - offset));
-      }
-      this.limit = limit;
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to mark: " + e);
+    if (offset > this.limit) {
+      releaseSegments();
+      reset = offset;
     }
+    this.limit = limit;
   }
 
   /** Resets the stream to the most recent {@link #mark mark}. */
@@ -93,58 +94,158 @@ final class MarkableInputStream extends InputStream {
     if (offset > limit || token < reset) {
       throw new IOException("Cannot reset");
     }
-    in.reset();
-    skip(reset, token);
     offset = token;
   }
 
-  /** Skips {@code target - current} bytes and returns. */
-  private void skip(long current, long target) throws IOException {
-    while (current < target) {
-      long skipped = in.skip(target - current);
-      current += skipped;
+  @Override public int read() throws IOException {
+    if (offset < reset + count) {
+      int position = (int) (offset - reset);
+      offset++;
+      return segments.get(position / SEGMENT_SIZE)[position % SEGMENT_SIZE] & 0xff;
     }
-  }
 
-  @Override public int read() throws IOException {
     int result = in.read();
     if (result != -1) {
+      if (offset < limit) {
+        segmentForWrite()[count % SEGMENT_SIZE] = (byte) result;
+        count++;
+      } else {
+        releaseSegments();
+        reset = offset + 1;
+      }
       offset++;
     }
     return result;
   }
 
   @Override public int read(byte[] buffer) throws IOException {
-    int count = in.read(buffer);
-    if (count != -1) {
-      offset += count;
-    }
-    return count;
+    return read(buffer, 0, buffer.length);
   }
 
   @Override public int read(byte[] buffer, int offset, int length) throws IOException {
-    int count = in.read(buffer, offset, length);
-    if (count != -1) {
-      this.offset += count;
+    int replayed = replay(buffer, offset, length);
+    if (replayed == length) {
+      return replayed;
+    }
+
+    int read = in.read(buffer, offset + replayed, length - replayed);
+    if (read == -1) {
+      return replayed == 0 ? -1 : replayed;
     }
-    return count;
+    consumed(buffer, offset + replayed, read);
+    return replayed + read;
   }
 
   @Override public long skip(long byteCount) throws IOException {
+    long buffered = reset + count - offset;
+    if (buffered > 0) {
+      long skipped = Math.min(byteCount, buffered);
+      offset += skipped;
+      return skipped;
+    }
+
+    if (offset < limit) {
+      // The skipped bytes may be reset to later so read them into the buffer.
+      byte[] segment = segmentForWrite();
+      int segmentOffset = count % SEGMENT_SIZE;
+      int toRead = (int) Math.min(byteCount, SEGMENT_SIZE - segmentOffset);
+      int read = in.read(segment, segmentOffset, toRead);
+      if (read == -1) {
+        return 0;
+      }
+      if (offset + read <= limit) {
+        count += read;
+      } else {
+        releaseSegments();
+        reset = offset + read;
+      }
+      offset += read;
+      return read;
+    }
+
     long skipped = in.skip(byteCount);
+    if (skipped > 0) {
+      releaseSegments();
+      reset = offset + skipped;
+    }
     offset += skipped;
     return skipped;
   }
 
   @Override public int available() throws IOException {
-    return in.available();
+    return (int) (reset + count - offset) + in.available();
   }
 
   @Override public void close() throws IOException {
+    releaseSegments();
     in.close();
   }
 
   @Override public boolean markSupported() {
-    return in.markSupported();
+    return true;
+  }
+
+  /** Returns the number of bytes this stream allocated rather than borrowed from the pool. */
+  long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /** Copies up to {@code length} buffered bytes at the current position into {@code sink}. */
+  private int replay(byte[] sink, int sinkOffset, int length) {
+    int position = (int) (offset - reset);
+    int total = 0;
+    while (total < length && position < count) {
+      int segmentOffset = position % SEGMENT_SIZE;
+      int toCopy = Math.min(length - total,
+          Math.min(SEGMENT_SIZE - segmentOffset, count - position));
+      System.arraycopy(segments.get(position / SEGMENT_SIZE), segmentOffset, sink,
+          sinkOffset + total, toCopy);
+      position += toCopy;
+      total += toCopy;
+    }
+    offset += total;
+    return total;
+  }
+
+  /** Records {@code byteCount} bytes which were just read from the source stream. */
+  private void consumed(byte[] source, int sourceOffset, int byteCount) {
+    if (offset + byteCount <= limit) {
+      int written = 0;
+      while (written < byteCount) {
+        byte[] segment = segmentForWrite();
+        int segmentOffset = count % SEGMENT_SIZE;
+        int toCopy = Math.min(byteCount - written, SEGMENT_SIZE - segmentOffset);
+        System.arraycopy(source, sourceOffset + written, segment, segmentOffset, toCopy);
+        written += toCopy;
+        count += toCopy;
+      }
+    } else {
+      // Moving past the limit invalidates every outstanding position so stop buffering.
+      releaseSegments();
+      reset = offset + byteCount;
+    }
+    offset += byteCount;
+  }
+
+  /** Returns the segment which the next buffered byte will be written to. */
+  private byte[] segmentForWrite() {
+    int index = count / SEGMENT_SIZE;
+    if (index == segments.size()) {
+      byte[] segment = SegmentPool.poll();
+      if (segment == null) {
+        segment = new byte[SEGMENT_SIZE];
+        allocatedBytes += SEGMENT_SIZE;
+      }
+      segments.add(segment);
+    }
+    return segments.get(index);
+  }
+
+  private void releaseSegments() {
+    for (int i = 0, size = segments.size(); i < size; i++) {
+      SegmentPool.recycle(segments.get(i));
+    }
+    segments.clear();
+    count = 0;
   }
 }
@@ -17,20 +17,42 @@ package com.squareup.picasso;
 
 import android.content.Context;
 import android.net.Uri;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.HttpResponseCache;
 import com.squareup.okhttp.OkHttpClient;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.squareup.picasso.Utils.parseResponseSourceHeader;
 
-/** A {@link Downloader} which uses OkHttp to download images. */
+/**
+ * A {@link Downloader} which uses OkHttp to download images. When a cache directory is used,
+ * responses which are interrupted part way through are resumed from where they stopped using an
+ * HTTP range request.
+ */
 public class OkHttpDownloader implements Downloader {
   static final String RESPONSE_SOURCE = "X-Android-Response-Source";
 
+  static final int DEFAULT_MAX_IDLE_CONNECTIONS = 6; // Three download threads for two hosts.
+  static final long DEFAULT_KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000; // 5 minutes
+  /**
+   * Appended to the cache directory's name to get the directory of interrupted bodies. It must not
+   * be inside the cache directory, whose contents are owned by the response cache.
+   */
+  static final String PARTIAL_SUFFIX = "-partial";
+  private static final List<String> TRANSPORTS = Arrays.asList("spdy/3", "http/1.1");
+
   private final OkHttpClient client;
+  /** Estimates connection reuse, or {@code null} if the pool's limits are not known. */
+  final ConnectionTracker connectionTracker;
+  /** Interrupted response bodies, or {@code null} if downloads are not resumed. */
+  final PartialDownloadStore partialStore;
 
   /**
    * Create new downloader that uses OkHttp. This will install an image cache into your application
@@ -68,7 +90,26 @@ public class OkHttpDownloader implements Downloader {
    * @param maxSize The size limit for the cache.
    */
   public OkHttpDownloader(final File cacheDir, final int maxSize) {
-    this(new OkHttpClient());
+    this(cacheDir, maxSize, DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_DURATION_MS);
+  }
+
+  /**
+   * Create new downloader that uses OkHttp. This will install an image cache into your application
+   * cache directory and a connection pool tuned with the specified limits. SPDY is used for hosts
+   * which support it so that concurrent requests share a single connection.
+   *
+   * @param cacheDir The directory in which the cache should be stored
+   * @param maxSize The size limit for the cache.
+   * @param maxIdleConnections The maximum number of idle connections kept alive in the pool.
+   * @param keepAliveDurationMs How long an idle connection is kept alive for reuse.
+   */
+  public OkHttpDownloader(final File cacheDir, final int maxSize, int maxIdleConnections,
+      long keepAliveDurationMs) {
+    this(new OkHttpClient(), new ConnectionTracker(maxIdleConnections, keepAliveDurationMs),
+        new PartialDownloadStore(new File(cacheDir.getPath() + PARTIAL_SUFFIX),
+            PartialDownloadStore.DEFAULT_MAX_SIZE));
+    client.setConnectionPool(new ConnectionPool(maxIdleConnections, keepAliveDurationMs));
+    client.setTransports(TRANSPORTS);
     try {
       client.setResponseCache(new HttpResponseCache(cacheDir, maxSize));
     } catch (IOException ignored) {
@@ -77,10 +118,18 @@ public class OkHttpDownloader implements Downloader {
 
   /**
    * Create a new downloader that uses the specified OkHttp instance. A response cache will not be
-   * automatically configured.
+   * automatically configured. Connection reuse is not estimated since the limits of the client's
+   * pool are unknown.
    */
   public OkHttpDownloader(OkHttpClient client) {
+    this(client, null, null);
+  }
+
+  private OkHttpDownloader(OkHttpClient client, ConnectionTracker connectionTracker,
+      PartialDownloadStore partialStore) {
     this.client = client;
+    this.connectionTracker = connectionTracker;
+    this.partialStore = partialStore;
   }
 
   protected HttpURLConnection openConnection(Uri uri) throws IOException {
@@ -91,14 +140,110 @@ public class OkHttpDownloader implements Downloader {
   }
 
   @Override public Response load(Uri uri, boolean localCacheOnly) throws IOException {
-    HttpURLConnection connection = openConnection(uri);
+    return load(uri, localCacheOnly, false);
+  }
+
+  /**
+   * Load {@code uri}, accepting a disk cache entry no matter how stale it is when
+   * {@code acceptStale} is set. A stale entry is served without contacting the server and its
+   * response is marked {@link Response#stale}.
+   */
+  Response load(Uri uri, boolean localCacheOnly, boolean acceptStale) throws IOException {
+    String host = uri.getScheme() + "://" + uri.getAuthority();
+    final HttpURLConnection connection = openConnection(uri);
     connection.setUseCaches(true);
+    PartialDownloadStore.Entry partial = null;
     if (localCacheOnly) {
-      connection.setRequestProperty("Cache-Control", "only-if-cached");
+      connection.setRequestProperty("Cache-Control",
+          acceptStale ? Utils.CACHE_ONLY_STALE : Utils.CACHE_ONLY);
+    } else {
+      if (acceptStale) {
+        connection.setRequestProperty("Cache-Control", Utils.MAX_STALE);
+      }
+      if (partialStore != null) {
+        partial = partialStore.resume(uri, connection);
+      }
     }
 
     boolean fromCache = parseResponseSourceHeader(connection.getHeaderField(RESPONSE_SOURCE));
+    boolean stale = fromCache && Utils.isStaleWarning(connection.getHeaderField("Warning"));
+    boolean tracked = !fromCache && connectionTracker != null;
+    if (tracked) {
+      connectionTracker.acquire(host);
+    }
+
+    InputStream stream;
+    long contentLength;
+    if (fromCache || localCacheOnly || partialStore == null) {
+      stream = connection.getInputStream();
+      contentLength = connection.getContentLength();
+    } else {
+      PartialDownloadStore.Body body = partialStore.open(uri, connection, partial);
+      stream = body.stream;
+      contentLength = body.contentLength;
+    }
+    final ReleasingInputStream releasing;
+    if (tracked) {
+      releasing = new ReleasingInputStream(stream, connectionTracker, host);
+      stream = releasing;
+    } else {
+      releasing = null;
+    }
+    return new Response(stream, fromCache, contentLength, stale) {
+      @Override public void disconnect() {
+        if (releasing != null) {
+          releasing.abandon();
+        }
+        connection.disconnect();
+      }
+    };
+  }
 
-    return new Response(connection.getInputStream(), fromCache);
+  /**
+   * Reports the connection as returned to the pool once its body has been read to the end and
+   * closed. A body which is disconnected or closed early does not return its connection.
+   */
+  private static class ReleasingInputStream extends FilterInputStream {
+    private final ConnectionTracker connectionTracker;
+    private final String host;
+    private volatile boolean abandoned;
+    private boolean exhausted;
+    private boolean closed;
+
+    ReleasingInputStream(InputStream in, ConnectionTracker connectionTracker, String host) {
+      super(in);
+      this.connectionTracker = connectionTracker;
+      this.host = host;
+    }
+
+    void abandon() {
+      abandoned = true;
+    }
+
+    @Override public int read() throws IOException {
+      int result = super.read();
+      if (result == -1) {
+        exhausted = true;
+      }
+      return result;
+    }
+
+    @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+      int read = super.read(buffer, offset, count);
+      if (read == -1) {
+        exhausted = true;
+      }
+      return read;
+    }
+
+    @Override public void close() throws IOException {
+      super.close();
+      if (!closed) {
+        closed = true;
+        if (exhausted && !abandoned) {
+          connectionTracker.release(host);
+        }
+      }
+    }
   }
 }
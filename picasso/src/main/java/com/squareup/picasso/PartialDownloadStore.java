@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
+
+/**
+ * Keeps the bodies of network responses which were interrupted part way through so that a later
+ * attempt at the same URI only requests the missing bytes with an HTTP {@code Range} header. A
+ * partial body is stored along with the strong {@code ETag} of its response and is sent back in an
+ * {@code If-Range} header, so a server whose image has changed responds with the new image in full.
+ * <p>
+ * The last {@link #MEMORY_WINDOW} bytes read are held in memory and older ones are spilled to disk,
+ * so small downloads which complete cost no disk I/O here and large ones only a bounded buffer.
+ */
+final class PartialDownloadStore {
+  static final long DEFAULT_MAX_SIZE = 5 * 1024 * 1024; // 5MB
+  /** The number of recorded bytes held in memory before they are written to disk. */
+  static final int MEMORY_WINDOW = 64 * 1024; // 64KB
+
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(\\d+)");
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File directory;
+  private final long maxSize;
+  /** Keys of the partial bodies which are currently being written. */
+  private final Set<String> writing = new HashSet<String>();
+
+  PartialDownloadStore(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Requests the remainder of the partial body stored for {@code uri} and returns it, or
+   * {@code null} if there is none. This must be called before {@code connection} is connected.
+   */
+  Entry resume(Uri uri, HttpURLConnection connection) {
+    Entry partial = get(uri);
+    if (partial != null) {
+      // A response to a range request must never be stored as the complete image.
+      connection.setUseCaches(false);
+      connection.setRequestProperty("Range", "bytes=" + partial.length + "-");
+      connection.setRequestProperty("If-Range", partial.etag);
+    }
+    return partial;
+  }
+
+  /**
+   * Returns the body of the response to {@code connection}. If the server honoured the range
+   * requested for {@code partial} the stored bytes are replayed ahead of the rest of the body.
+   * Bytes read from the network are kept so that they can be stored and resumed if reading fails
+   * before the end of the body.
+   */
+  Body open(Uri uri, HttpURLConnection connection, Entry partial) throws IOException {
+    if (partial != null && connection.getResponseCode() == HTTP_PARTIAL) {
+      Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField(
+          "Content-Range")));
+      if (!matcher.matches() || Long.parseLong(matcher.group(1)) != partial.length) {
+        partial.file.delete();
+        throw new IOException("Unexpected Content-Range for " + uri);
+      }
+      long contentLength = Long.parseLong(matcher.group(2));
+      InputStream remainder = connection.getInputStream();
+      String key = key(uri);
+      if (contentLength - partial.length <= maxSize && acquire(key)) {
+        remainder =
+            new RecordingInputStream(remainder, key, null, null, partial.length, contentLength);
+      }
+      InputStream stored = new LimitedInputStream(partial.open(), partial.length);
+      return new Body(new SequenceInputStream(stored, remainder), contentLength);
+    }
+
+    if (partial != null) {
+      // The server has a different image or cannot serve ranges.
+      partial.file.delete();
+    }
+    InputStream stream = connection.getInputStream();
+    long contentLength = connection.getContentLength();
+    String etag = connection.getHeaderField("ETag");
+    String encoding = connection.getHeaderField("Content-Encoding");
+    if (etag != null && !etag.startsWith("W/")
+        && (encoding == null || "identity".equalsIgnoreCase(encoding))
+        && contentLength > 0 && contentLength <= maxSize) {
+      String key = key(uri);
+      if (acquire(key)) {
+        stream = new RecordingInputStream(stream, key, uri.toString(), etag, 0, contentLength);
+      }
+    }
+    return new Body(stream, contentLength);
+  }
+
+  private Entry get(Uri uri) {
+    File file = new File(directory, key(uri));
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(file));
+      String storedUri = in.readUTF();
+      String etag = in.readUTF();
+      long bodyOffset = file.length() - in.available();
+      long length = file.length() - bodyOffset;
+      if (!storedUri.equals(uri.toString()) || length <= 0) {
+        return null;
+      }
+      return new Entry(file, etag, bodyOffset, length);
+    } catch (IOException e) {
+      file.delete();
+      return null;
+    } finally {
+      Utils.closeQuietly(in);
+    }
+  }
+
+  private synchronized boolean acquire(String key) {
+    return writing.add(key);
+  }
+
+  private synchronized void release(String key) {
+    writing.remove(key);
+  }
+
+  /** Deletes the least recently written partial bodies until the store is within its size. */
+  private synchronized void trimToSize() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override public int compare(File lhs, File rhs) {
+        long lhsModified = lhs.lastModified();
+        long rhsModified = rhs.lastModified();
+        return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < files.length && size > maxSize; i++) {
+      File file = files[i];
+      String name = file.getName();
+      if (name.endsWith(TEMP_SUFFIX) || writing.contains(name)) {
+        continue;
+      }
+      size -= file.length();
+      file.delete();
+    }
+  }
+
+  private static String key(Uri uri) {
+    // Collisions are harmless as the full URI is verified when reading an entry.
+    return Integer.toHexString(uri.toString().hashCode());
+  }
+
+  private static void closeQuietly(OutputStream out) {
+    try {
+      out.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  /** The stored start of a response body. */
+  static final class Entry {
+    final File file;
+    final String etag;
+    final long bodyOffset;
+    final long length;
+
+    Entry(File file, String etag, long bodyOffset, long length) {
+      this.file = file;
+      this.etag = etag;
+      this.bodyOffset = bodyOffset;
+      this.length = length;
+    }
+
+    InputStream open() throws IOException {
+      InputStream in = new FileInputStream(file);
+      long skipped = 0;
+      while (skipped < bodyOffset) {
+        long count = in.skip(bodyOffset - skipped);
+        if (count <= 0) {
+          Utils.closeQuietly(in);
+          throw new IOException("Truncated partial download " + file);
+        }
+        skipped += count;
+      }
+      return in;
+    }
+  }
+
+  /** A response body and its complete length. */
+  static final class Body {
+    final InputStream stream;
+    final long contentLength;
+
+    Body(InputStream stream, long contentLength) {
+      this.stream = stream;
+      this.contentLength = contentLength;
+    }
+  }
+
+  /**
+   * Records the bytes read from a network body. When the body ends early they are stored; when it
+   * is read in full or abandoned by the decoder they are discarded.
+   */
+  private final class RecordingInputStream extends FilterInputStream {
+    private final String key;
+    /** The URI and ETag of a new entry, or {@code null} to append to the existing entry. */
+    private final String uri;
+    private final String etag;
+    private final long contentLength;
+    /** Recorded bytes which have not been written to {@link #out} yet. */
+    private final ByteArrayOutputStream window = new ByteArrayOutputStream();
+    private final byte[] single = new byte[1];
+    /** The temporary file of a new entry or the existing entry, opened once the window is full. */
+    private OutputStream out;
+    private long recorded;
+    private boolean interrupted;
+    /** Whether writing to disk failed, which stops recording. */
+    private boolean failed;
+    private boolean finished;
+
+    RecordingInputStream(InputStream in, String key, String uri, String etag, long recorded,
+        long contentLength) {
+      super(in);
+      this.key = key;
+      this.uri = uri;
+      this.etag = etag;
+      this.recorded = recorded;
+      this.contentLength = contentLength;
+    }
+
+    @Override public int read() throws IOException {
+      int result;
+      try {
+        result = super.read();
+      } catch (IOException e) {
+        interrupted = true;
+        throw e;
+      }
+      if (result == -1) {
+        interrupted = recorded < contentLength;
+      } else {
+        single[0] = (byte) result;
+        record(single, 0, 1);
+      }
+      return result;
+    }
+
+    @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+      int read;
+      try {
+        read = super.read(buffer, offset, count);
+      } catch (IOException e) {
+        interrupted = true;
+        throw e;
+      }
+      if (read == -1) {
+        interrupted = recorded < contentLength;
+      } else {
+        record(buffer, offset, read);
+      }
+      return read;
+    }
+
+    @Override public long skip(long byteCount) throws IOException {
+      // Skipped bytes must still be recorded.
+      byte[] scratch = new byte[(int) Math.min(byteCount, 4096)];
+      long skipped = 0;
+      while (skipped < byteCount) {
+        int read = read(scratch, 0, (int) Math.min(scratch.length, byteCount - skipped));
+        if (read == -1) {
+          break;
+        }
+        skipped += read;
+      }
+      return skipped;
+    }
+
+    @Override public boolean markSupported() {
+      return false;
+    }
+
+    @Override public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        finish();
+      }
+    }
+
+    private void record(byte[] buffer, int offset, int count) {
+      if (finished || failed) {
+        return;
+      }
+      try {
+        if (window.size() + count > MEMORY_WINDOW) {
+          spill();
+          if (count > MEMORY_WINDOW) {
+            out.write(buffer, offset, count);
+            recorded += count;
+            return;
+          }
+        }
+        window.write(buffer, offset, count);
+        recorded += count;
+      } catch (IOException e) {
+        failed = true;
+      }
+    }
+
+    /** Writes the bytes held in memory to disk. */
+    private void spill() throws IOException {
+      if (out == null) {
+        if (uri != null) {
+          directory.mkdirs();
+          DataOutputStream header =
+              new DataOutputStream(new FileOutputStream(new File(directory, key + TEMP_SUFFIX)));
+          out = header;
+          header.writeUTF(uri);
+          header.writeUTF(etag);
+        } else {
+          out = new FileOutputStream(new File(directory, key), true);
+        }
+      }
+      window.writeTo(out);
+      window.reset();
+    }
+
+    private void finish() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      boolean keep = !failed && interrupted && recorded > 0 && recorded < contentLength;
+      if (keep) {
+        try {
+          spill();
+          out.close();
+          out = null;
+        } catch (IOException e) {
+          keep = false;
+        }
+      }
+      if (out != null) {
+        closeQuietly(out);
+      }
+      File temp = new File(directory, key + TEMP_SUFFIX);
+      if (uri == null) {
+        if (!keep) {
+          // Either the body was resumed in full or the appended bytes may be corrupt.
+          new File(directory, key).delete();
+        }
+      } else if (!keep || !temp.renameTo(new File(directory, key))) {
+        temp.delete();
+      }
+      release(key);
+      if (keep) {
+        trimToSize();
+      }
+    }
+  }
+
+  /** Reads at most a fixed number of bytes from a stream. */
+  private static final class LimitedInputStream extends FilterInputStream {
+    private long remaining;
+
+    LimitedInputStream(InputStream in, long limit) {
+      super(in);
+      this.remaining = limit;
+    }
+
+    @Override public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int result = super.read();
+      if (result != -1) {
+        remaining--;
+      }
+      return result;
+    }
+
+    @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = super.read(buffer, offset, (int) Math.min(count, remaining));
+      if (read > 0) {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override public long skip(long byteCount) throws IOException {
+      long skipped = super.skip(Math.min(byteCount, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override public int available() throws IOException {
+      return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -26,8 +26,11 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Process;
+import android.os.SystemClock;
 import android.widget.ImageView;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.ReferenceQueue;
@@ -36,13 +39,19 @@ import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static android.content.ContentResolver.SCHEME_ANDROID_RESOURCE;
 import static android.content.ContentResolver.SCHEME_CONTENT;
 import static android.content.ContentResolver.SCHEME_FILE;
 import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
+import static android.os.Process.THREAD_PRIORITY_LOWEST;
 import static android.provider.ContactsContract.Contacts;
 import static com.squareup.picasso.Downloader.Response;
+import static com.squareup.picasso.GeometricTransformation.Geometry;
+import static com.squareup.picasso.LatencyStats.Stage;
 import static com.squareup.picasso.Request.RequestWeakReference;
 import static com.squareup.picasso.Utils.calculateInSampleSize;
 
@@ -58,6 +67,18 @@ public class Picasso {
   private static final int REQUEST_RETRY = 2;
   private static final int REQUEST_DECODE_FAILED = 3;
   private static final int REQUEST_CANCEL_GC = 4;
+  private static final int REQUEST_PREVIEW = 5;
+  private static final int REQUEST_REVALIDATED = 6;
+
+  private static final int PROGRESSIVE_BUFFER_SIZE = 16 * 1024; // 16KB
+  private static final int MAX_PRESIZED_BUFFER_SIZE = 4 * 1024 * 1024; // 4MB
+  private static final int DECODE_BUFFER_SIZE = 16 * 1024; // Mirrors BitmapFactory default.
+  private static final int HEADER_LIMIT = 64 * 1024; // 64KB
+  private static final int PREVIEW_MIN_BYTES = 8 * 1024; // 8KB
+  private static final int PREVIEW_INTERVAL = 300; // ms
+  private static final int PREVIEW_SAMPLE_SIZE = 8;
+  private static final int MAX_PREVIEWS = 3;
+  private static final long DISCONNECT_KEEP_ALIVE = 60 * 1000; // ms
 
   /**
    * Global lock for bitmap decoding to ensure that we are only are decoding one at a time. Since
@@ -66,6 +87,17 @@ public class Picasso {
    */
   private static final Object DECODE_LOCK = new Object();
 
+  /**
+   * Disconnects the responses of cancelled requests. Closing a connection can block, for example
+   * while TLS writes its close notification, so this is never done on the main thread.
+   */
+  private static final ExecutorService DISCONNECT_SERVICE = new ThreadPoolExecutor(0, 1,
+      DISCONNECT_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+      new Utils.PicassoThreadFactory());
+
+  /** The decoder's read buffer for network responses, reused by every decode on a thread. */
+  private static final ThreadLocal<byte[]> DECODE_BUFFER = new ThreadLocal<byte[]>();
+
   /** Callbacks for Picasso events. */
   public interface Listener {
     /**
@@ -88,6 +120,23 @@ public class Picasso {
         case REQUEST_COMPLETE:
           picasso.targetsToRequests.remove(request.getTarget());
           request.complete();
+          request.endStage(Stage.DELIVERY, request.resultNanos);
+          picasso.stats.requestCompleted(request);
+          if (picasso.eventListener != null) {
+            picasso.eventListener.requestDelivered(request.id, System.nanoTime());
+          }
+          if (request.revalidate) {
+            picasso.revalidate(request);
+          }
+          break;
+
+        case REQUEST_REVALIDATED:
+          Object target = request.getTarget();
+          // Only replace the stale image if nothing else has been loaded into the target since.
+          if (picasso.targetsToRevalidations.get(target) == request) {
+            picasso.targetsToRevalidations.remove(target);
+            request.complete();
+          }
           break;
 
         case REQUEST_RETRY:
@@ -102,6 +151,10 @@ public class Picasso {
           cancelExistingRequest(request, null);
           break;
 
+        case REQUEST_PREVIEW:
+          request.preview();
+          break;
+
         default:
           throw new AssertionError("Unknown handler message received: " + msg.what);
       }
@@ -113,25 +166,47 @@ public class Picasso {
   final Context context;
   final Downloader downloader;
   final ExecutorService service;
+  final DownloadScheduler scheduler;
   final Cache cache;
+  final Cache intermediateCache;
+  final UrlRewriter urlRewriter;
   final Listener listener;
+  final EventListener eventListener;
+  final CacheTraceWriter cacheTrace;
   final Stats stats;
   final Map<Object, Request> targetsToRequests;
+  final Map<ImageView, DeferredRequestCreator> targetsToDeferredRequests;
+  final Map<Object, Request> targetsToRevalidations;
   final ReferenceQueue<Object> referenceQueue;
 
+  final boolean staleWhileRevalidate;
+
   boolean debugging;
 
-  Picasso(Context context, Downloader downloader, ExecutorService service, Cache cache,
-      Listener listener, Stats stats, boolean debugging) {
+  /** The ID of the most recently submitted request. Only used with an event listener. */
+  private int lastRequestId;
+
+  Picasso(Context context, Downloader downloader, ExecutorService service,
+      DownloadScheduler scheduler, Cache cache, Cache intermediateCache, UrlRewriter urlRewriter,
+      Listener listener, EventListener eventListener, CacheTraceWriter cacheTrace, Stats stats,
+      boolean staleWhileRevalidate, boolean debugging) {
     this.context = context;
     this.downloader = downloader;
     this.service = service;
+    this.scheduler = scheduler;
     this.cache = cache;
+    this.intermediateCache = intermediateCache;
+    this.urlRewriter = urlRewriter;
     this.listener = listener;
+    this.eventListener = eventListener;
+    this.cacheTrace = cacheTrace;
     this.stats = stats;
+    this.staleWhileRevalidate = staleWhileRevalidate;
     this.debugging = debugging;
 
     this.targetsToRequests = new WeakHashMap<Object, Request>();
+    this.targetsToDeferredRequests = new WeakHashMap<ImageView, DeferredRequestCreator>();
+    this.targetsToRevalidations = new WeakHashMap<Object, Request>();
     this.referenceQueue = new ReferenceQueue<Object>();
 
     new CleanupThread(referenceQueue, handler).start();
@@ -228,11 +303,24 @@ public class Picasso {
     this.debugging = debugging;
   }
 
+  /**
+   * Returns the slowest requests delivered in the last five to ten minutes, slowest first. Only
+   * requests which took longer than the {@link Builder#slowRequestLog threshold} are kept.
+   */
+  public List<SlowRequest> getSlowRequests() {
+    return stats.getSlowRequests();
+  }
+
   /** Creates a {@link StatsSnapshot} of the current stats for this instance. */
   public StatsSnapshot getSnapshot() {
     return stats.createSnapshot();
   }
 
+  void defer(ImageView view, DeferredRequestCreator request) {
+    cancelExistingRequest(view, null);
+    targetsToDeferredRequests.put(view, request);
+  }
+
   void submit(Request request) {
     Object target = request.getTarget();
     if (target == null) return;
@@ -241,10 +329,48 @@ public class Picasso {
 
     targetsToRequests.put(target, request);
 
-    request.future = service.submit(request);
+    request.submitted();
+    if (eventListener != null) {
+      if (request.id == 0) {
+        request.id = ++lastRequestId;
+      }
+      eventListener.requestSubmitted(request.id, request.uri, request.submittedNanos);
+    }
+    request.future = scheduler.submit(request);
+  }
+
+  /**
+   * Schedules a background check for newer content after {@code request} was served a stale
+   * response from the disk cache.
+   */
+  void revalidate(Request request) {
+    Object target = request.getTarget();
+    if (target == null) return;
+
+    request.revalidate = false;
+    request.revalidating = true;
+    targetsToRevalidations.put(target, request);
+    request.submitted();
+    request.future = scheduler.submit(request);
+  }
+
+  /**
+   * Whether the events of {@code request} are reported. A revalidation is not, since its ID has
+   * already been delivered.
+   */
+  boolean reportsEvents(Request request) {
+    return eventListener != null && !request.revalidating;
   }
 
   void run(Request request) {
+    long startNanos = request.endStage(Stage.QUEUE, request.submittedNanos);
+    if (reportsEvents(request)) {
+      eventListener.requestStarted(request.id, startNanos);
+    }
+    if (request.revalidating) {
+      runRevalidation(request);
+      return;
+    }
     try {
       Bitmap result = resolveRequest(request);
 
@@ -254,6 +380,7 @@ public class Picasso {
       }
 
       request.result = result;
+      request.resultNanos = System.nanoTime();
       handler.sendMessage(handler.obtainMessage(REQUEST_COMPLETE, request));
     } catch (IOException e) {
       if (listener != null && request.uri != null) {
@@ -263,12 +390,44 @@ public class Picasso {
     }
   }
 
+  private void runRevalidation(Request request) {
+    int priority = Process.getThreadPriority(Process.myTid());
+    Process.setThreadPriority(THREAD_PRIORITY_LOWEST);
+    try {
+      Bitmap result = loadFromType(request);
+      if (result == null) {
+        return; // Not modified.
+      }
+      if (!request.skipCache) {
+        cache.set(request.key, result);
+      }
+      request.result = result;
+      handler.sendMessage(handler.obtainMessage(REQUEST_REVALIDATED, request));
+    } catch (IOException ignored) {
+      // The stale image is already being displayed.
+    } catch (OutOfMemoryError ignored) {
+      // The stale image is already being displayed.
+    } finally {
+      Process.setThreadPriority(priority);
+    }
+  }
+
   Bitmap resolveRequest(Request request) throws IOException {
     Bitmap bitmap = loadFromCache(request);
+    if (eventListener != null) {
+      if (bitmap == null) {
+        eventListener.cacheMiss(request.id, System.nanoTime());
+      } else {
+        eventListener.cacheHit(request.id, System.nanoTime());
+      }
+    }
     if (bitmap == null) {
       stats.cacheMiss();
       try {
-        bitmap = loadFromType(request);
+        bitmap = loadFromPrefix(request);
+        if (bitmap == null) {
+          bitmap = loadFromType(request);
+        }
       } catch (OutOfMemoryError e) {
         IOException ioException = new IOException("Failed to decode request: " + request);
         ioException.initCause(e);
@@ -277,9 +436,15 @@ public class Picasso {
 
       if (bitmap != null && !request.skipCache) {
         cache.set(request.key, bitmap);
+        if (cacheTrace != null) {
+          cacheTrace.record(request.key, Utils.getBitmapBytes(bitmap), false);
+        }
       }
     } else {
       stats.cacheHit();
+      if (cacheTrace != null) {
+        cacheTrace.record(request.key, Utils.getBitmapBytes(bitmap), true);
+      }
     }
     return bitmap;
   }
@@ -290,6 +455,17 @@ public class Picasso {
 
     if (cached != null) {
       stats.cacheHit();
+      if (cacheTrace != null) {
+        cacheTrace.record(key, Utils.getBitmapBytes(cached), true);
+      }
+      if (eventListener != null) {
+        // Reported as a request of its own which is delivered immediately.
+        int id = ++lastRequestId;
+        long now = System.nanoTime();
+        eventListener.requestSubmitted(id, uri, now);
+        eventListener.cacheHit(id, now);
+        eventListener.requestDelivered(id, System.nanoTime());
+      }
     }
 
     return cached;
@@ -302,14 +478,17 @@ public class Picasso {
       request.retryCount--;
       submit(request);
     } else {
-      targetsToRequests.remove(request.getTarget());
-      request.error();
+      error(request);
     }
   }
 
   void error(Request request) {
     targetsToRequests.remove(request.getTarget());
     request.error();
+    stats.requestFailed();
+    if (eventListener != null) {
+      eventListener.requestFailed(request.id, System.nanoTime());
+    }
   }
 
   Bitmap decodeStream(InputStream stream, PicassoBitmapOptions bitmapOptions) throws IOException {
@@ -333,6 +512,128 @@ public class Picasso {
     }
   }
 
+  /**
+   * Decodes a network response while it is still arriving. The bounds pass only consumes header
+   * bytes, which are held in pooled segments and replayed to the full decode, so the body is read
+   * from the socket exactly once. The decoder's read buffer is shared by both passes and reused by
+   * later decodes on the same download thread. Buffers are charged to the request which allocated
+   * them.
+   */
+  Bitmap decodeResponse(Request request, Response response, PicassoBitmapOptions bitmapOptions)
+      throws IOException {
+    InputStream stream = response.stream;
+    if (stream == null) {
+      return null;
+    }
+
+    long contentLength = response.contentLength;
+    boolean lengthKnown = contentLength > 0;
+    if (bitmapOptions == null) {
+      bitmapOptions = new PicassoBitmapOptions();
+    }
+    byte[] decodeBuffer = DECODE_BUFFER.get();
+    if (decodeBuffer == null) {
+      decodeBuffer = new byte[DECODE_BUFFER_SIZE];
+      stats.bytesAllocated(request, decodeBuffer.length);
+      DECODE_BUFFER.set(decodeBuffer);
+    }
+    bitmapOptions.inTempStorage = decodeBuffer;
+    MarkableInputStream markStream = null;
+    try {
+      if (bitmapOptions.inJustDecodeBounds) {
+        markStream = new MarkableInputStream(stream);
+        stream = markStream;
+
+        long mark = markStream.savePosition(lengthKnown && contentLength < HEADER_LIMIT
+            ? (int) contentLength : HEADER_LIMIT);
+        BitmapFactory.decodeStream(stream, null, bitmapOptions);
+        calculateInSampleSize(bitmapOptions);
+
+        markStream.reset(mark);
+      }
+      return BitmapFactory.decodeStream(stream, null, bitmapOptions);
+    } finally {
+      bitmapOptions.inTempStorage = null;
+      Utils.closeQuietly(stream);
+      if (markStream != null) {
+        stats.bytesAllocated(request, markStream.allocatedBytes());
+      }
+    }
+  }
+
+  /**
+   * Buffers the entire stream while periodically decoding a heavily subsampled preview of the
+   * bytes which have arrived so far. The full image is decoded from the buffer once the stream has
+   * been exhausted which also allows the bounds pass to run without re-reading the stream.
+   * <p>
+   * Every preview decodes the whole buffer so far, so a preview is only attempted once the buffer
+   * has doubled since the last attempt and at most {@link #MAX_PREVIEWS} are delivered. This keeps
+   * the total preview work linear in the size of the body.
+   */
+  Bitmap decodeProgressiveStream(Request request, Response response,
+      PicassoBitmapOptions bitmapOptions) throws IOException {
+    InputStream stream = response.stream;
+    if (stream == null) {
+      return null;
+    }
+
+    BitmapFactory.Options previewOptions = new BitmapFactory.Options();
+    previewOptions.inSampleSize = PREVIEW_SAMPLE_SIZE;
+    previewOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+
+    // Size the buffer for the whole body up front when its length is known so it never grows.
+    long contentLength = response.contentLength;
+    byte[] buffer = new byte[contentLength > 0 && contentLength < MAX_PRESIZED_BUFFER_SIZE
+        ? (int) contentLength + 1 : PROGRESSIVE_BUFFER_SIZE];
+    stats.bytesAllocated(request, buffer.length);
+    int count = 0;
+    int previews = 0;
+    int nextPreviewCount = PREVIEW_MIN_BYTES;
+    long previewMillis = SystemClock.uptimeMillis();
+    try {
+      while (true) {
+        if (count == buffer.length) {
+          byte[] grown = new byte[buffer.length * 2];
+          stats.bytesAllocated(request, grown.length);
+          System.arraycopy(buffer, 0, grown, 0, count);
+          buffer = grown;
+        }
+        int read = stream.read(buffer, count, buffer.length - count);
+        if (read == -1) {
+          break;
+        }
+        count += read;
+
+        long now = SystemClock.uptimeMillis();
+        if (previews < MAX_PREVIEWS && count >= nextPreviewCount
+            && now - previewMillis >= PREVIEW_INTERVAL) {
+          // Partial data may not contain a full header yet in which case this returns null.
+          Bitmap preview = decodePreview(buffer, count, previewOptions);
+          if (preview != null) {
+            stats.bytesAllocated(request, Utils.getBitmapBytes(preview));
+            request.previewResult = preview;
+            handler.sendMessage(handler.obtainMessage(REQUEST_PREVIEW, request));
+            previews++;
+          }
+          nextPreviewCount = count * 2;
+          previewMillis = now;
+        }
+      }
+    } finally {
+      Utils.closeQuietly(stream);
+    }
+
+    if (bitmapOptions != null && bitmapOptions.inJustDecodeBounds) {
+      BitmapFactory.decodeByteArray(buffer, 0, count, bitmapOptions);
+      calculateInSampleSize(bitmapOptions);
+    }
+    return BitmapFactory.decodeByteArray(buffer, 0, count, bitmapOptions);
+  }
+
+  Bitmap decodePreview(byte[] buffer, int count, BitmapFactory.Options previewOptions) {
+    return BitmapFactory.decodeByteArray(buffer, 0, count, previewOptions);
+  }
+
   Bitmap decodeContentStream(Uri path, PicassoBitmapOptions bitmapOptions) throws IOException {
     ContentResolver contentResolver = context.getContentResolver();
     if (bitmapOptions != null && bitmapOptions.inJustDecodeBounds) {
@@ -342,6 +643,25 @@ public class Picasso {
     return BitmapFactory.decodeStream(contentResolver.openInputStream(path), null, bitmapOptions);
   }
 
+  /**
+   * Decodes a local file straight from its descriptor. The bounds pass and the full decode share
+   * the same open file so its pages are read in place rather than copied through Java buffers.
+   */
+  Bitmap decodeFile(Uri uri, PicassoBitmapOptions bitmapOptions) throws IOException {
+    FileInputStream stream = new FileInputStream(uri.getPath());
+    try {
+      FileDescriptor descriptor = stream.getFD();
+      if (bitmapOptions != null && bitmapOptions.inJustDecodeBounds) {
+        BitmapFactory.decodeFileDescriptor(descriptor, null, bitmapOptions);
+        calculateInSampleSize(bitmapOptions);
+        stream.getChannel().position(0);
+      }
+      return BitmapFactory.decodeFileDescriptor(descriptor, null, bitmapOptions);
+    } finally {
+      Utils.closeQuietly(stream);
+    }
+  }
+
   Bitmap decodeResource(Resources resources, int resourceId, PicassoBitmapOptions bitmapOptions) {
     if (bitmapOptions != null && bitmapOptions.inJustDecodeBounds) {
       BitmapFactory.decodeResource(resources, resourceId, bitmapOptions);
@@ -353,18 +673,49 @@ public class Picasso {
   private void cancelExistingRequest(Object target, Uri uri) {
     Request existing = targetsToRequests.remove(target);
     cancelExistingRequest(existing, uri);
+
+    DeferredRequestCreator deferred = targetsToDeferredRequests.remove(target);
+    if (deferred != null) {
+      deferred.cancel();
+    }
+
+    Request revalidation = targetsToRevalidations.remove(target);
+    if (revalidation != null) {
+      cancelExistingRequest(revalidation, null);
+    }
   }
 
   private void cancelExistingRequest(Request request, Uri uri) {
     if (request != null) {
       if (!request.future.isDone()) {
         request.future.cancel(true);
+        // Interrupting the worker does not unblock a socket read so drop the connection as well.
+        Response response = request.response;
+        if (response != null) {
+          disconnectLater(request, response);
+        }
       } else if (uri == null || !uri.equals(request.uri)) {
         request.retryCancelled = true;
+      } else {
+        return;
+      }
+      if (reportsEvents(request)) {
+        eventListener.requestCancelled(request.id, System.nanoTime());
       }
     }
   }
 
+  private static void disconnectLater(final Request request, final Response response) {
+    DISCONNECT_SERVICE.execute(new Runnable() {
+      @Override public void run() {
+        // The worker clears the response once its body has been read and released.
+        if (request.response == response) {
+          response.disconnect();
+        }
+      }
+    });
+  }
+
   private Bitmap loadFromCache(Request request) {
     if (request.skipCache) return null;
 
@@ -375,8 +726,77 @@ public class Picasso {
     return cached;
   }
 
+  /**
+   * Resumes the transformation chain from the longest prefix of it whose result is held by either
+   * the memory cache or the intermediate cache. Returns {@code null} if no prefix is cached.
+   */
+  private Bitmap loadFromPrefix(Request request) {
+    List<Transformation> transformations = request.transformations;
+    if (intermediateCache == null || request.skipCache || transformations == null) return null;
+
+    for (int i = transformations.size() - 1; i >= 0; i--) {
+      String key = Utils.createPrefixKey(request, i);
+      Bitmap cached = cache.get(key);
+      if (cached == null) {
+        cached = intermediateCache.get(key);
+      }
+      if (cached == null) {
+        continue;
+      }
+      // Transformations recycle their input so never hand them the shared instance.
+      Bitmap.Config config = cached.getConfig();
+      Bitmap result = cached.copy(config != null ? config : Bitmap.Config.ARGB_8888, true);
+      if (result == null) {
+        return null;
+      }
+      stats.bytesAllocated(request, Utils.getBitmapBytes(result));
+      request.loadedFrom = Request.LoadedFrom.MEMORY;
+      long transformStart = System.nanoTime();
+      result = applyTransformations(request, i, false, result);
+      long transformEnd = request.endStage(Stage.TRANSFORM, transformStart);
+      if (eventListener != null) {
+        eventListener.transformFinished(request.id, result.getWidth(), result.getHeight(),
+            transformEnd);
+      }
+      stats.bitmapTransformed(result);
+      return result;
+    }
+    return null;
+  }
+
+  /**
+   * Applies the transformations of {@code request} from index {@code start} onwards. When an
+   * intermediate cache is present a copy of each intermediate result is stored under its prefix
+   * key, starting with {@code result} itself only if {@code cacheStart} is set.
+   */
+  private Bitmap applyTransformations(Request request, int start, boolean cacheStart,
+      Bitmap result) {
+    List<Transformation> transformations = request.transformations;
+    boolean cacheIntermediates = intermediateCache != null && !request.skipCache;
+    for (int i = start, count = transformations.size(); i < count; i++) {
+      if (cacheIntermediates && (i > start || cacheStart)) {
+        Bitmap.Config config = result.getConfig();
+        Bitmap copy = result.copy(config != null ? config : Bitmap.Config.ARGB_8888, false);
+        if (copy != null) {
+          stats.bytesAllocated(request, Utils.getBitmapBytes(copy));
+          intermediateCache.set(Utils.createPrefixKey(request, i), copy);
+        }
+      }
+      // Measured up front since a transformation recycles its input when it returns a new bitmap.
+      long inputBytes = Utils.getBitmapBytes(result);
+      Bitmap newResult = applyCustomTransformations(transformations, i, i + 1, result);
+      if (newResult != result) {
+        stats.bytesAllocated(request, Utils.getBitmapBytes(newResult));
+        stats.bytesRecycled(request, inputBytes);
+      }
+      result = newResult;
+    }
+    return result;
+  }
+
   private Bitmap loadFromType(Request request) throws IOException {
     PicassoBitmapOptions options = request.options;
+    long decodeStart = System.nanoTime();
 
     int exifRotation = 0;
     Bitmap result = null;
@@ -402,26 +822,59 @@ public class Picasso {
         request.loadedFrom = Request.LoadedFrom.DISK;
       } else if (SCHEME_FILE.equals(scheme)) {
         exifRotation = Utils.getFileExifRotation(uri.getPath());
-        result = decodeContentStream(uri, options);
+        result = decodeFile(uri, options);
         request.loadedFrom = Request.LoadedFrom.DISK;
       } else if (SCHEME_ANDROID_RESOURCE.equals(scheme)) {
         result = decodeContentStream(uri, options);
         request.loadedFrom = Request.LoadedFrom.DISK;
       } else {
+        Uri downloadUri = rewriteUrl(uri, options);
         Response response = null;
+        long networkStart = decodeStart;
+        if (reportsEvents(request)) {
+          eventListener.downloadStarted(request.id, networkStart);
+        }
         try {
-          response = downloader.load(uri, request.retryCount == 0);
-          if (response == null) {
-            return null;
+          if (request.revalidating) {
+            response = downloader.load(downloadUri, false);
+            if (response == null || response.cached) {
+              return null; // Not modified.
+            }
+          } else {
+            if (staleWhileRevalidate && request.retryCount != 0) {
+              response = loadAcceptingStale(downloadUri);
+              request.revalidate = response != null && response.stale;
+            } else {
+              response = downloader.load(downloadUri, request.retryCount == 0);
+            }
+            if (response == null) {
+              return null;
+            }
+          }
+          decodeStart = request.endStage(Stage.NETWORK, networkStart);
+          response = scheduler.meter(request, response);
+          request.response = response;
+          if (request.future != null && request.future.isCancelled()) {
+            // Cancelled while the connection was being opened.
+            response.disconnect();
+          }
+          if (request.progressive) {
+            result = decodeProgressiveStream(request, response, options);
+          } else {
+            result = decodeResponse(request, response, options);
           }
-          result = decodeStream(response.stream, options);
         } finally {
+          request.response = null;
           if (response != null && response.stream != null) {
             try {
               response.stream.close();
             } catch (IOException ignored) {
             }
           }
+          if (reportsEvents(request) && response != null) {
+            eventListener.downloadFinished(request.id, DownloadScheduler.bytesRead(response),
+                System.nanoTime());
+          }
         }
         request.loadedFrom = response.cached ? Request.LoadedFrom.DISK : Request.LoadedFrom.NETWORK;
       }
@@ -431,34 +884,81 @@ public class Picasso {
       return null;
     }
 
+    long transformStart = request.endStage(Stage.DECODE, decodeStart);
+    int inSampleSize = options != null ? Math.max(1, options.inSampleSize) : 1;
+    request.sourceWidth = result.getWidth() * inSampleSize;
+    request.sourceHeight = result.getHeight() * inSampleSize;
+    request.inSampleSize = inSampleSize;
     stats.bitmapDecoded(result);
-
-    // If the caller wants deferred resize, try to load the target ImageView's measured size.
-    if (options != null && options.deferredResize) {
-      ImageView target = request.target.get();
-      if (target != null) {
-        int targetWidth = target.getMeasuredWidth();
-        int targetHeight = target.getMeasuredHeight();
-        if (targetWidth != 0 && targetHeight != 0) {
-          options.targetWidth = targetWidth;
-          options.targetHeight = targetHeight;
-        }
-      }
+    stats.bytesAllocated(request, Utils.getBitmapBytes(result));
+    if (reportsEvents(request)) {
+      eventListener.decodeFinished(request.id, result.getWidth(), result.getHeight(), inSampleSize,
+          transformStart);
     }
 
-    if (options != null || exifRotation != 0) {
-      result = transformResult(options, result, exifRotation);
+    List<Transformation> transformations = request.transformations;
+    List<Transformation> geometry = leadingGeometricTransformations(transformations);
+    if (options != null || exifRotation != 0 || geometry != null) {
+      long sourceBytes = Utils.getBitmapBytes(result);
+      Bitmap newResult = transformResult(options, result, exifRotation, geometry);
+      if (newResult != result) {
+        stats.bytesAllocated(request, Utils.getBitmapBytes(newResult));
+        stats.bytesRecycled(request, sourceBytes);
+      }
+      result = newResult;
     }
 
-    List<Transformation> transformations = request.transformations;
     if (transformations != null) {
-      result = applyCustomTransformations(transformations, result);
+      result = applyTransformations(request, geometry != null ? geometry.size() : 0, true, result);
       stats.bitmapTransformed(result);
     }
 
+    if (options != null || exifRotation != 0 || transformations != null) {
+      long transformEnd = request.endStage(Stage.TRANSFORM, transformStart);
+      if (reportsEvents(request)) {
+        eventListener.transformFinished(request.id, result.getWidth(), result.getHeight(),
+            transformEnd);
+      }
+    }
+
     return result;
   }
 
+  /**
+   * Returns the URL to download for {@code uri}. A rewriter which fails or returns {@code null}
+   * fails the attempt like a download error would, so the request is retried and then errors.
+   */
+  private Uri rewriteUrl(Uri uri, PicassoBitmapOptions options) throws IOException {
+    int targetWidth = options != null ? options.targetWidth : 0;
+    int targetHeight = options != null ? options.targetHeight : 0;
+    Uri rewritten;
+    try {
+      rewritten = urlRewriter.rewrite(uri, targetWidth, targetHeight);
+    } catch (RuntimeException e) {
+      IOException ioException = new IOException("UrlRewriter failed for " + uri);
+      ioException.initCause(e);
+      throw ioException;
+    }
+    if (rewritten == null) {
+      throw new IOException("UrlRewriter returned null for " + uri);
+    }
+    return rewritten;
+  }
+
+  /**
+   * Loads {@code uri}, serving it from the disk cache no matter how stale it is rather than waiting
+   * for the server. Other downloaders load normally and never report a stale response.
+   */
+  Response loadAcceptingStale(Uri uri) throws IOException {
+    if (downloader instanceof OkHttpDownloader) {
+      return ((OkHttpDownloader) downloader).load(uri, false, true);
+    }
+    if (downloader instanceof UrlConnectionDownloader) {
+      return ((UrlConnectionDownloader) downloader).load(uri, false, true);
+    }
+    return downloader.load(uri, false);
+  }
+
   static class CleanupThread extends Thread {
     private final ReferenceQueue<?> referenceQueue;
     private final Handler handler;
@@ -488,7 +988,29 @@ public class Picasso {
     }
   }
 
+  /**
+   * Returns the run of {@link GeometricTransformation}s at the start of {@code transformations}
+   * which can be folded into {@link #transformResult}, or {@code null} if there are none.
+   */
+  static List<Transformation> leadingGeometricTransformations(
+      List<Transformation> transformations) {
+    if (transformations == null) {
+      return null;
+    }
+    int count = 0;
+    while (count < transformations.size()
+        && transformations.get(count) instanceof GeometricTransformation) {
+      count++;
+    }
+    return count == 0 ? null : transformations.subList(0, count);
+  }
+
   static Bitmap transformResult(PicassoBitmapOptions options, Bitmap result, int exifRotation) {
+    return transformResult(options, result, exifRotation, null);
+  }
+
+  static Bitmap transformResult(PicassoBitmapOptions options, Bitmap result, int exifRotation,
+      List<Transformation> geometricTransformations) {
     int inWidth = result.getWidth();
     int inHeight = result.getHeight();
 
@@ -554,8 +1076,17 @@ public class Picasso {
     }
 
     synchronized (DECODE_LOCK) {
-      Bitmap newResult =
-          Bitmap.createBitmap(result, drawX, drawY, drawWidth, drawHeight, matrix, false);
+      Bitmap newResult;
+      if (geometricTransformations == null) {
+        newResult = Bitmap.createBitmap(result, drawX, drawY, drawWidth, drawHeight, matrix, false);
+      } else {
+        // Fold the geometric transformations into the same matrix and draw only once.
+        Geometry geometry = new Geometry(drawX, drawY, drawWidth, drawHeight, matrix);
+        for (int i = 0, count = geometricTransformations.size(); i < count; i++) {
+          ((GeometricTransformation) geometricTransformations.get(i)).apply(geometry);
+        }
+        newResult = geometry.draw(result);
+      }
       if (newResult != result) {
         result.recycle();
         result = newResult;
@@ -566,7 +1097,12 @@ public class Picasso {
   }
 
   static Bitmap applyCustomTransformations(List<Transformation> transformations, Bitmap result) {
-    for (int i = 0, count = transformations.size(); i < count; i++) {
+    return applyCustomTransformations(transformations, 0, transformations.size(), result);
+  }
+
+  static Bitmap applyCustomTransformations(List<Transformation> transformations, int start,
+      int end, Bitmap result) {
+    for (int i = start; i < end; i++) {
       Transformation transformation = transformations.get(i);
       Bitmap newResult = transformation.transform(result);
 
@@ -628,8 +1164,17 @@ public class Picasso {
     private final Context context;
     private Downloader downloader;
     private ExecutorService service;
+    private int maxRequestsPerHost;
+    private long maxBytesPerSecond;
     private Cache memoryCache;
+    private Cache intermediateCache;
+    private UrlRewriter urlRewriter;
     private Listener listener;
+    private EventListener eventListener;
+    private CacheTraceWriter cacheTrace;
+    private long slowRequestThresholdMillis = SlowRequestLog.DEFAULT_THRESHOLD_MILLIS;
+    private int maxSlowRequests = SlowRequestLog.DEFAULT_MAX_ENTRIES;
+    private boolean staleWhileRevalidate;
     private boolean debugging;
 
     /** Start building a new {@link Picasso} instance. */
@@ -664,6 +1209,27 @@ public class Picasso {
       return this;
     }
 
+    /**
+     * Specify the maximum number of network requests which may run concurrently for each host.
+     * Further requests for a busy host wait without occupying a thread of the executor service.
+     */
+    public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+      if (maxRequestsPerHost <= 0) {
+        throw new IllegalArgumentException("Max requests per host must be positive.");
+      }
+      this.maxRequestsPerHost = maxRequestsPerHost;
+      return this;
+    }
+
+    /** Specify a limit on the combined rate at which images are downloaded. */
+    public Builder maxBytesPerSecond(long maxBytesPerSecond) {
+      if (maxBytesPerSecond <= 0) {
+        throw new IllegalArgumentException("Max bytes per second must be positive.");
+      }
+      this.maxBytesPerSecond = maxBytesPerSecond;
+      return this;
+    }
+
     /** Specify the memory cache used for the most recent images. */
     public Builder memoryCache(Cache memoryCache) {
       if (memoryCache == null) {
@@ -676,6 +1242,39 @@ public class Picasso {
       return this;
     }
 
+    /**
+     * Specify a cache for the intermediate results of transformation chains. Requests whose
+     * transformations share a prefix with an earlier request resume from the longest cached
+     * prefix instead of decoding and transforming the image again.
+     * <p>
+     * Each intermediate is stored as a copy so the cache should be kept small.
+     */
+    public Builder intermediateCache(Cache intermediateCache) {
+      if (intermediateCache == null) {
+        throw new IllegalArgumentException("Intermediate cache must not be null.");
+      }
+      if (this.intermediateCache != null) {
+        throw new IllegalStateException("Intermediate cache already set.");
+      }
+      this.intermediateCache = intermediateCache;
+      return this;
+    }
+
+    /**
+     * Specify a {@link UrlRewriter} which may replace the URL of each network image with one for a
+     * variant at the size it will be displayed.
+     */
+    public Builder urlRewriter(UrlRewriter urlRewriter) {
+      if (urlRewriter == null) {
+        throw new IllegalArgumentException("URL rewriter must not be null.");
+      }
+      if (this.urlRewriter != null) {
+        throw new IllegalStateException("URL rewriter already set.");
+      }
+      this.urlRewriter = urlRewriter;
+      return this;
+    }
+
     /** Specify a listener for interesting events. */
     public Builder listener(Listener listener) {
       if (listener == null) {
@@ -688,6 +1287,67 @@ public class Picasso {
       return this;
     }
 
+    /**
+     * Specify a listener for the events of every request, for tracing and profiling.
+     *
+     * @see TraceEventWriter
+     */
+    public Builder eventListener(EventListener eventListener) {
+      if (eventListener == null) {
+        throw new IllegalArgumentException("Event listener must not be null.");
+      }
+      if (this.eventListener != null) {
+        throw new IllegalStateException("Event listener already set.");
+      }
+      this.eventListener = eventListener;
+      return this;
+    }
+
+    /**
+     * Specify a writer which records every lookup of a requested image in the memory cache, for
+     * choosing its size offline.
+     */
+    public Builder cacheTrace(CacheTraceWriter cacheTrace) {
+      if (cacheTrace == null) {
+        throw new IllegalArgumentException("Cache trace must not be null.");
+      }
+      if (this.cacheTrace != null) {
+        throw new IllegalStateException("Cache trace already set.");
+      }
+      this.cacheTrace = cacheTrace;
+      return this;
+    }
+
+    /**
+     * Whether images with a stale response in the disk cache are displayed straight away. The
+     * cached image is shown without waiting for the server and is then revalidated in the
+     * background at low priority. The target and memory cache are only updated if the server
+     * returns new content.
+     */
+    public Builder staleWhileRevalidate(boolean staleWhileRevalidate) {
+      this.staleWhileRevalidate = staleWhileRevalidate;
+      return this;
+    }
+
+    /**
+     * Keep the {@code maxEntries} slowest requests of the last five to ten minutes which took
+     * longer than {@code thresholdMillis} from being submitted until being delivered. Defaults to
+     * the 10 slowest requests over one second.
+     *
+     * @see Picasso#getSlowRequests()
+     */
+    public Builder slowRequestLog(long thresholdMillis, int maxEntries) {
+      if (thresholdMillis <= 0) {
+        throw new IllegalArgumentException("Slow request threshold must be positive.");
+      }
+      if (maxEntries <= 0) {
+        throw new IllegalArgumentException("Slow request count must be positive.");
+      }
+      this.slowRequestThresholdMillis = thresholdMillis;
+      this.maxSlowRequests = maxEntries;
+      return this;
+    }
+
     /** Whether debugging is enabled or not. */
     public Builder debugging(boolean debugging) {
       this.debugging = debugging;
@@ -707,10 +1367,22 @@ public class Picasso {
       if (service == null) {
         service = Executors.newFixedThreadPool(3, new Utils.PicassoThreadFactory());
       }
+      if (urlRewriter == null) {
+        urlRewriter = UrlRewriter.IDENTITY;
+      }
 
-      Stats stats = new Stats(memoryCache);
-
-      return new Picasso(context, downloader, service, memoryCache, listener, stats, debugging);
+      ConnectionTracker connectionTracker = null;
+      if (downloader instanceof OkHttpDownloader) {
+        connectionTracker = ((OkHttpDownloader) downloader).connectionTracker;
+      }
+      DownloadScheduler scheduler =
+          new DownloadScheduler(service, maxRequestsPerHost, maxBytesPerSecond);
+      Stats stats = new Stats(memoryCache, connectionTracker, scheduler,
+          new SlowRequestLog(slowRequestThresholdMillis, maxSlowRequests));
+
+      return new Picasso(context, downloader, service, scheduler, memoryCache, intermediateCache,
+          urlRewriter, listener, eventListener, cacheTrace, stats, staleWhileRevalidate,
+          debugging);
     }
   }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+
+/**
+ * A {@link Transformation} which computes each output pixel from the ARGB pixels of the source.
+ * <p/>
+ * The image is split into bands of rows which are filtered in parallel on a shared pool of
+ * threads. Filters may run several passes (e.g., the horizontal and vertical halves of a blur)
+ * with every band of one pass finishing before the next pass starts. Pixel buffers are reused
+ * between calls so only the result bitmap is allocated.
+ */
+public abstract class PixelTransformation implements Transformation {
+  static final int BAND_COUNT = Runtime.getRuntime().availableProcessors();
+  private static final int MIN_BAND_ROWS = 32;
+  private static final int MAX_RETAINED_PIXELS = 1024 * 1024; // 4MB per buffer
+
+  private static final ExecutorService BAND_EXECUTOR =
+      Executors.newFixedThreadPool(Math.max(1, BAND_COUNT - 1), new Utils.PicassoThreadFactory());
+
+  /** Guards the scratch buffers. Transformations already use every core so run one at a time. */
+  private static final Object SCRATCH_LOCK = new Object();
+  private static int[] scratchPixels;
+  private static int[] scratchBuffer;
+
+  /** The number of passes this filter needs. Defaults to one. */
+  protected int passCount() {
+    return 1;
+  }
+
+  /**
+   * Compute rows {@code startRow} (inclusive) to {@code endRow} (exclusive) of
+   * {@code destination} from {@code source} for the given pass. Both arrays hold
+   * {@code width * height} ARGB pixels in row-major order. The output of one pass is the input of
+   * the next. This will be called concurrently for disjoint row ranges.
+   */
+  protected abstract void filter(int pass, int[] source, int[] destination, int width, int height,
+      int startRow, int endRow);
+
+  @Override public final Bitmap transform(Bitmap source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int size = width * height;
+
+    Bitmap result;
+    synchronized (SCRATCH_LOCK) {
+      int[] pixels = scratchPixels;
+      int[] buffer = scratchBuffer;
+      if (pixels == null || pixels.length < size) {
+        pixels = new int[size];
+        buffer = new int[size];
+        if (size <= MAX_RETAINED_PIXELS) {
+          scratchPixels = pixels;
+          scratchBuffer = buffer;
+        }
+      }
+
+      source.getPixels(pixels, 0, width, 0, 0, width, height);
+      int[] output = filter(this, pixels, buffer, width, height);
+
+      result = source.isMutable() ? source : Bitmap.createBitmap(width, height, ARGB_8888);
+      result.setPixels(output, 0, width, 0, 0, width, height);
+    }
+
+    if (result != source) {
+      source.recycle();
+    }
+    return result;
+  }
+
+  /**
+   * Run every pass of {@code transformation}, alternating between {@code pixels} and
+   * {@code buffer}. Returns whichever of the two holds the final result.
+   */
+  static int[] filter(PixelTransformation transformation, int[] pixels, int[] buffer, int width,
+      int height) {
+    int bands = Math.max(1, Math.min(BAND_COUNT, height / MIN_BAND_ROWS));
+    int rowsPerBand = Math.max(1, (height + bands - 1) / bands);
+    bands = (height + rowsPerBand - 1) / rowsPerBand;
+
+    int[] source = pixels;
+    int[] destination = buffer;
+    for (int pass = 0, passCount = transformation.passCount(); pass < passCount; pass++) {
+      if (bands == 1) {
+        transformation.filter(pass, source, destination, width, height, 0, height);
+      } else {
+        filterBands(transformation, pass, source, destination, width, height, bands, rowsPerBand);
+      }
+      int[] swap = source;
+      source = destination;
+      destination = swap;
+    }
+    return source;
+  }
+
+  private static void filterBands(final PixelTransformation transformation, final int pass,
+      final int[] source, final int[] destination, final int width, final int height, int bands,
+      int rowsPerBand) {
+    Future<?>[] futures = new Future<?>[bands - 1];
+    for (int i = 1; i < bands; i++) {
+      final int startRow = i * rowsPerBand;
+      final int endRow = Math.min(height, startRow + rowsPerBand);
+      futures[i - 1] = BAND_EXECUTOR.submit(new Runnable() {
+        @Override public void run() {
+          transformation.filter(pass, source, destination, width, height, startRow, endRow);
+        }
+      });
+    }
+
+    // The calling thread takes the first band rather than sitting idle.
+    boolean filtered = false;
+    try {
+      transformation.filter(pass, source, destination, width, height, 0, rowsPerBand);
+      filtered = true;
+    } finally {
+      RuntimeException failure = await(transformation, futures);
+      if (filtered && failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  /**
+   * Waits for every band, even after one has failed or we are interrupted, since they share our
+   * buffers. Returns the first failure or {@code null} if every band finished.
+   */
+  private static RuntimeException await(PixelTransformation transformation, Future<?>[] futures) {
+    RuntimeException failure = null;
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            String message = "Failed to filter " + transformation.key();
+            failure = new RuntimeException(message, e.getCause());
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return failure;
+  }
+
+  static int clamp(int value, int min, int max) {
+    return value < min ? min : value > max ? max : value;
+  }
+}
@@ -23,6 +23,7 @@ import android.net.Uri;
 import android.widget.ImageView;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Future;
 
@@ -60,19 +61,46 @@ class Request implements Runnable {
   final List<Transformation> transformations;
   final boolean skipCache;
   final boolean noFade;
+  final boolean progressive;
   final int errorResId;
   final Drawable errorDrawable;
   final String key;
 
+  /** Identifies this request to the {@link EventListener}. Assigned when first submitted. */
+  int id;
   Future<?> future;
+  /** The response whose body is being read, if any. Used to abort the download on cancel. */
+  volatile Downloader.Response response;
   Bitmap result;
+  Bitmap previewResult;
   LoadedFrom loadedFrom;
   int retryCount;
   boolean retryCancelled;
+  /** Served a stale disk cache response which should be revalidated once delivered. */
+  boolean revalidate;
+  /** Checking the server for content newer than what was delivered. */
+  boolean revalidating;
+  /** {@link System#nanoTime()} at which the first attempt was submitted. */
+  long firstSubmittedNanos;
+  /** {@link System#nanoTime()} at which the latest attempt was submitted. */
+  long submittedNanos;
+  /** {@link System#nanoTime()} at which the result was posted to the main thread. */
+  long resultNanos;
+  /** Time spent in each {@link LatencyStats.Stage} by the latest attempt, in nanoseconds. */
+  final long[] stageNanos = new long[LatencyStats.Stage.values().length];
+  /** Bytes of bitmaps and decode buffers allocated for this request by all of its attempts. */
+  long allocatedBytes;
+  /** Bytes of intermediate bitmaps recycled for this request by all of its attempts. */
+  long recycledBytes;
+  /** Dimensions of the source image before subsampling, or 0 if it was not decoded. */
+  int sourceWidth;
+  int sourceHeight;
+  int inSampleSize;
+  private String transformationKeys;
 
   Request(Picasso picasso, Uri uri, int resourceId, ImageView imageView,
       PicassoBitmapOptions options, List<Transformation> transformations, boolean skipCache,
-      boolean noFade, int errorResId, Drawable errorDrawable) {
+      boolean noFade, boolean progressive, int errorResId, Drawable errorDrawable) {
     this.picasso = picasso;
     this.uri = uri;
     this.resourceId = resourceId;
@@ -81,12 +109,29 @@ class Request implements Runnable {
     this.transformations = transformations;
     this.skipCache = skipCache;
     this.noFade = noFade;
+    this.progressive = progressive;
     this.errorResId = errorResId;
     this.errorDrawable = errorDrawable;
     this.retryCount = DEFAULT_RETRY_COUNT;
     this.key = createKey(this);
   }
 
+  /** Starts timing a new attempt at this request. */
+  void submitted() {
+    submittedNanos = System.nanoTime();
+    if (firstSubmittedNanos == 0) {
+      firstSubmittedNanos = submittedNanos;
+    }
+    Arrays.fill(stageNanos, 0);
+  }
+
+  /** Records that {@code stage}, begun at {@code startNanos}, has just ended and returns now. */
+  long endStage(LatencyStats.Stage stage, long startNanos) {
+    long now = System.nanoTime();
+    stageNanos[stage.ordinal()] += now - startNanos;
+    return now;
+  }
+
   Object getTarget() {
     return target.get();
   }
@@ -105,6 +150,21 @@ class Request implements Runnable {
     }
   }
 
+  /** Display the most recent low-resolution preview without fading it in. */
+  void preview() {
+    if (previewResult == null) {
+      return;
+    }
+
+    ImageView target = this.target.get();
+    if (target != null) {
+      Context context = picasso.context;
+      boolean debugging = picasso.debugging;
+      PicassoDrawable.setBitmap(target, context, previewResult, LoadedFrom.NETWORK, true,
+          debugging);
+    }
+  }
+
   void error() {
     ImageView target = this.target.get();
     if (target == null) {
@@ -168,10 +228,14 @@ class Request implements Runnable {
         + ']';
   }
 
+  /** Returns the keys of this request's transformations in the form {@code [a, b]}. */
   String transformationKeys() {
     if (transformations == null) {
       return "[]";
     }
+    if (transformationKeys != null) {
+      return transformationKeys;
+    }
 
     StringBuilder sb = new StringBuilder(transformations.size() * 16);
 
@@ -187,6 +251,7 @@ class Request implements Runnable {
     }
     sb.append(']');
 
-    return sb.toString();
+    transformationKeys = sb.toString();
+    return transformationKeys;
   }
 }
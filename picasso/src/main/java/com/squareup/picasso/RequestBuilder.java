@@ -40,6 +40,7 @@ public class RequestBuilder {
   private List<Transformation> transformations;
   private boolean skipCache;
   private boolean noFade;
+  private boolean progressive;
   private boolean hasNullPlaceholder;
   private int placeholderResId;
   private Drawable placeholderDrawable;
@@ -123,9 +124,11 @@ public class RequestBuilder {
   }
 
   /**
-   * Attempt to resize the image to fit exactly into the target {@link ImageView}'s bounds. This
-   * will only have an affect if the target view has been measured when the image becomes
-   * available.
+   * Attempt to resize the image to fit exactly into the target {@link ImageView}'s bounds. If the
+   * target view has not been laid out yet the request is deferred until it has a size so that the
+   * image is decoded at the size it will be displayed.
+   * <p/>
+   * <em>Note:</em> This method works only when your target is an {@link ImageView}.
    */
   public RequestBuilder fit() {
     PicassoBitmapOptions options = getOptions();
@@ -138,6 +141,14 @@ public class RequestBuilder {
     return this;
   }
 
+  /** Internal use only. Used by {@link DeferredRequestCreator}. */
+  RequestBuilder unfit() {
+    if (options != null) {
+      options.deferredResize = false;
+    }
+    return this;
+  }
+
   /** Resize the image to the specified dimension size. */
   public RequestBuilder resizeDimen(int targetWidthResId, int targetHeightResId) {
     Resources resources = picasso.context.getResources();
@@ -288,17 +299,33 @@ public class RequestBuilder {
     return this;
   }
 
+  /**
+   * Periodically display a heavily subsampled preview of the partially downloaded image while a
+   * network request is in flight. Previews are shown without fading and the full image is still
+   * delivered once the download completes.
+   * <p/>
+   * This only has an effect for requests into an {@link ImageView} which are loaded from the
+   * network. It is most useful for large or progressive JPEGs on slow connections.
+   */
+  public RequestBuilder progressive() {
+    progressive = true;
+    return this;
+  }
+
   /** Synchronously fulfill this request. Must not be called from the main thread. */
   public Bitmap get() throws IOException {
     checkNotMain();
 
+    if (options != null && options.deferredResize) {
+      throw new IllegalStateException("Fit cannot be used with get.");
+    }
     if (uri == null && resourceId == 0) {
       return null;
     }
 
     Request request =
-        new Request(picasso, uri, resourceId, null, options, transformations, skipCache, false, 0,
-            null);
+        new Request(picasso, uri, resourceId, null, options, transformations, skipCache, false,
+            false, 0, null);
     return picasso.resolveRequest(request);
   }
 
@@ -334,6 +361,18 @@ public class RequestBuilder {
 
     boolean hasItemToLoad = uri != null || resourceId != 0;
 
+    if (hasItemToLoad && options != null && options.deferredResize) {
+      int width = target.getWidth();
+      int height = target.getHeight();
+      if (width == 0 || height == 0) {
+        // Nothing can be decoded at the right size yet so wait for layout before submitting.
+        setPlaceholder(target);
+        picasso.defer(target, new DeferredRequestCreator(this, target));
+        return;
+      }
+      unfit().resize(width, height);
+    }
+
     if (hasItemToLoad) {
       // Look for the target bitmap in the memory cache without moving to a background thread.
       String requestKey = createKey(uri, resourceId, options, transformations);
@@ -345,27 +384,34 @@ public class RequestBuilder {
       }
     }
 
-    if (placeholderResId != 0 || placeholderDrawable != null) {
-      PicassoDrawable.setPlaceholder(target, picasso.context, placeholderResId, placeholderDrawable,
-          picasso.debugging);
-    } else if (hasNullPlaceholder) {
-      target.setImageDrawable(null);
-    }
+    setPlaceholder(target);
 
     if (hasItemToLoad) {
       Request request =
           new Request(picasso, uri, resourceId, target, options, transformations, skipCache, noFade,
-              errorResId, errorDrawable);
+              progressive, errorResId, errorDrawable);
       picasso.submit(request);
     } else {
       picasso.cancelRequest(target);
     }
   }
 
+  private void setPlaceholder(ImageView target) {
+    if (placeholderResId != 0 || placeholderDrawable != null) {
+      PicassoDrawable.setPlaceholder(target, picasso.context, placeholderResId, placeholderDrawable,
+          picasso.debugging);
+    } else if (hasNullPlaceholder) {
+      target.setImageDrawable(null);
+    }
+  }
+
   private void makeTargetRequest(Target target, boolean strong) {
     if (target == null) {
       throw new IllegalArgumentException("Target must not be null.");
     }
+    if (options != null && options.deferredResize) {
+      throw new IllegalStateException("Fit cannot be used with a Target.");
+    }
     if (uri == null && resourceId == 0) {
       picasso.cancelRequest(target);
       return;
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events into a ring of one-second buckets so that the totals of any recent window of up to
+ * {@link #MAX_SECONDS} can be read without keeping the events themselves. Each bucket holds a
+ * fixed number of fields.
+ * <p>
+ * A bucket is reclaimed by the first event of a new second. Events which race with that reset may
+ * be lost, which is acceptable for counts which are only used to compute rates.
+ */
+final class RollingCounters {
+  static final int MAX_SECONDS = 15 * 60;
+
+  private final int fieldCount;
+  /** The second since boot which each bucket currently counts. */
+  private final AtomicLongArray seconds = new AtomicLongArray(MAX_SECONDS);
+  private final AtomicLongArray counts;
+
+  RollingCounters(int fieldCount) {
+    this.fieldCount = fieldCount;
+    this.counts = new AtomicLongArray(MAX_SECONDS * fieldCount);
+  }
+
+  void add(long nowMillis, int field, long delta) {
+    long second = nowMillis / 1000;
+    int bucket = (int) (second % MAX_SECONDS);
+    long held = seconds.get(bucket);
+    if (held != second) {
+      if (held > second || !seconds.compareAndSet(bucket, held, second)) {
+        // Another thread moved the bucket on first. Only count the event if it is for this second.
+        if (seconds.get(bucket) != second) {
+          return;
+        }
+      } else {
+        for (int i = 0, base = bucket * fieldCount; i < fieldCount; i++) {
+          counts.set(base + i, 0);
+        }
+      }
+    }
+    counts.addAndGet(bucket * fieldCount + field, delta);
+  }
+
+  /** Returns the total of {@code field} over the {@code windowSeconds} up to {@code nowMillis}. */
+  long sum(long nowMillis, int windowSeconds, int field) {
+    if (windowSeconds > MAX_SECONDS) {
+      throw new IllegalArgumentException("Window must be at most " + MAX_SECONDS + " seconds.");
+    }
+    long second = nowMillis / 1000;
+    long total = 0;
+    for (int i = 0; i < windowSeconds && second - i >= 0; i++) {
+      int bucket = (int) ((second - i) % MAX_SECONDS);
+      if (seconds.get(bucket) == second - i) {
+        total += counts.get(bucket * fieldCount + field);
+      }
+    }
+    return total;
+  }
+}
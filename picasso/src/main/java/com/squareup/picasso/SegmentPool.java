@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/**
+ * A bounded, process-wide pool of fixed-size byte arrays. Streams on the decode path borrow
+ * segments from here rather than allocating their own buffers for every request.
+ */
+final class SegmentPool {
+  static final int SEGMENT_SIZE = 4 * 1024; // 4KB
+  static final int MAX_POOL_COUNT = 16; // 64KB
+
+  private static final byte[][] pool = new byte[MAX_POOL_COUNT][];
+  private static int poolCount;
+
+  private SegmentPool() {
+    // No instances.
+  }
+
+  /**
+   * Returns a recycled segment of {@link #SEGMENT_SIZE} bytes or {@code null} if the pool is empty
+   * and the caller must allocate one.
+   */
+  static synchronized byte[] poll() {
+    if (poolCount == 0) {
+      return null;
+    }
+    byte[] segment = pool[--poolCount];
+    pool[poolCount] = null;
+    return segment;
+  }
+
+  /** Returns {@code segment} to the pool. It must not be used by the caller afterwards. */
+  static void recycle(byte[] segment) {
+    if (segment.length != SEGMENT_SIZE) {
+      throw new IllegalArgumentException("Segment must be " + SEGMENT_SIZE + " bytes.");
+    }
+    synchronized (SegmentPool.class) {
+      if (poolCount < MAX_POOL_COUNT) {
+        pool[poolCount++] = segment;
+      }
+    }
+  }
+
+  static synchronized int pooledCount() {
+    return poolCount;
+  }
+}
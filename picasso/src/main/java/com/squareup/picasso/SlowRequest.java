@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.util.Collections;
+import java.util.Map;
+
+/** A request which took longer than the slow request threshold to be delivered. */
+public class SlowRequest {
+  /** The memory cache key of the request. */
+  public final String key;
+  /** The URI which was loaded, or {@code null} for a resource. */
+  public final Uri uri;
+  /** The resource which was loaded, or 0 for a URI. */
+  public final int resourceId;
+  /** Where the image was loaded from: {@code MEMORY}, {@code DISK} or {@code NETWORK}. */
+  public final String loadedFrom;
+  /** Number of times the request was retried. */
+  public final int retryCount;
+  /** Time in microseconds from the request first being submitted until it was delivered. */
+  public final long duration;
+  /** Time in microseconds spent in each stage by the attempt which succeeded. */
+  public final Map<LatencyStats.Stage, Long> stageDurations;
+  /** Width of the image before subsampling, or 0 if it was not decoded. */
+  public final int sourceWidth;
+  /** Height of the image before subsampling, or 0 if it was not decoded. */
+  public final int sourceHeight;
+  /** The sample size the image was decoded with, or 0 if it was not decoded. */
+  public final int inSampleSize;
+  /** Bytes of bitmaps and decode buffers allocated for the request. */
+  public final long allocatedBytes;
+  /** Wall clock time in milliseconds at which the request was delivered. */
+  public final long timeStamp;
+
+  public SlowRequest(String key, Uri uri, int resourceId, String loadedFrom, int retryCount,
+      long duration, Map<LatencyStats.Stage, Long> stageDurations, int sourceWidth,
+      int sourceHeight, int inSampleSize, long allocatedBytes, long timeStamp) {
+    this.key = key;
+    this.uri = uri;
+    this.resourceId = resourceId;
+    this.loadedFrom = loadedFrom;
+    this.retryCount = retryCount;
+    this.duration = duration;
+    this.stageDurations = Collections.unmodifiableMap(stageDurations);
+    this.sourceWidth = sourceWidth;
+    this.sourceHeight = sourceHeight;
+    this.inSampleSize = inSampleSize;
+    this.allocatedBytes = allocatedBytes;
+    this.timeStamp = timeStamp;
+  }
+
+  @Override public String toString() {
+    return "SlowRequest{"
+        + "key="
+        + key
+        + ", loadedFrom="
+        + loadedFrom
+        + ", retryCount="
+        + retryCount
+        + ", duration="
+        + duration
+        + ", stageDurations="
+        + stageDurations
+        + ", sourceWidth="
+        + sourceWidth
+        + ", sourceHeight="
+        + sourceHeight
+        + ", inSampleSize="
+        + inSampleSize
+        + ", allocatedBytes="
+        + allocatedBytes
+        + ", timeStamp="
+        + timeStamp
+        + '}';
+  }
+}
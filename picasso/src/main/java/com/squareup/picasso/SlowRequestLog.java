@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the slowest requests delivered during the current and previous windows of time. Requests
+ * under the threshold are rejected by a single comparison so the log costs nothing for the vast
+ * majority of requests.
+ */
+final class SlowRequestLog {
+  static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+  static final int DEFAULT_MAX_ENTRIES = 10;
+  static final long WINDOW_MILLIS = 5 * 60 * 1000; // 5 minutes
+
+  private final long thresholdNanos;
+  private final int maxEntries;
+
+  /** The slowest requests of each window, slowest first. Guarded by this. */
+  private List<SlowRequest> current = new ArrayList<SlowRequest>();
+  private List<SlowRequest> previous = Collections.emptyList();
+  private long windowStartMillis;
+
+  SlowRequestLog(long thresholdMillis, int maxEntries) {
+    this.thresholdNanos = thresholdMillis * 1000000L;
+    this.maxEntries = maxEntries;
+  }
+
+  boolean isSlow(long durationNanos) {
+    return durationNanos >= thresholdNanos;
+  }
+
+  /**
+   * Records {@code request} which took {@code durationNanos} to deliver if it is among the
+   * slowest of the current window.
+   */
+  void add(Request request, long durationNanos, long nowMillis) {
+    long duration = durationNanos / 1000;
+    synchronized (this) {
+      roll(nowMillis);
+      int size = current.size();
+      if (size == maxEntries && current.get(size - 1).duration >= duration) {
+        return;
+      }
+      int index = 0;
+      while (index < size && current.get(index).duration >= duration) {
+        index++;
+      }
+      current.add(index, createEntry(request, duration));
+      if (current.size() > maxEntries) {
+        current.remove(maxEntries);
+      }
+    }
+  }
+
+  /** Returns the slowest requests of the current and previous windows, slowest first. */
+  synchronized List<SlowRequest> snapshot(long nowMillis) {
+    roll(nowMillis);
+    List<SlowRequest> entries = new ArrayList<SlowRequest>(current.size() + previous.size());
+    int i = 0;
+    int j = 0;
+    while (i < current.size() || j < previous.size()) {
+      if (j == previous.size()
+          || (i < current.size() && current.get(i).duration >= previous.get(j).duration)) {
+        entries.add(current.get(i++));
+      } else {
+        entries.add(previous.get(j++));
+      }
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  private void roll(long nowMillis) {
+    long elapsed = nowMillis - windowStartMillis;
+    if (elapsed < WINDOW_MILLIS) {
+      return;
+    }
+    previous = elapsed < 2 * WINDOW_MILLIS ? current : Collections.<SlowRequest>emptyList();
+    current = new ArrayList<SlowRequest>();
+    windowStartMillis = nowMillis - elapsed % WINDOW_MILLIS;
+  }
+
+  private static SlowRequest createEntry(Request request, long duration) {
+    Map<LatencyStats.Stage, Long> stageDurations =
+        new EnumMap<LatencyStats.Stage, Long>(LatencyStats.Stage.class);
+    for (LatencyStats.Stage stage : LatencyStats.Stage.values()) {
+      stageDurations.put(stage, request.stageNanos[stage.ordinal()] / 1000);
+    }
+    return new SlowRequest(request.key, request.uri, request.resourceId,
+        request.loadedFrom != null ? request.loadedFrom.name() : null,
+        Request.DEFAULT_RETRY_COUNT - request.retryCount, duration, stageDurations,
+        request.sourceWidth, request.sourceHeight, request.inSampleSize, request.allocatedBytes,
+        System.currentTimeMillis());
+  }
+}
@@ -16,111 +16,241 @@
 package com.squareup.picasso;
 
 import android.graphics.Bitmap;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Message;
-
-import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
+import android.os.SystemClock;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Records stats inline on the calling thread. Counters are striped so that download threads and
+ * the main thread never contend with each other, and snapshots read them without blocking writers.
+ */
 class Stats {
-  private static final int REQUESTED_COMPLETED = 0;
-  private static final int CACHE_HIT = 1;
-  private static final int CACHE_MISS = 2;
-  private static final int BITMAP_DECODE_FINISHED = 3;
-  private static final int BITMAP_TRANSFORMED_FINISHED = 4;
+  /** The number of distinct transformation chains whose allocations are tracked separately. */
+  static final int MAX_TRANSFORMATION_KEYS = 32;
+  /** Lengths in seconds of the rolling windows reported in each snapshot. */
+  static final int[] WINDOW_SECONDS = { 60, 5 * 60, 15 * 60 };
 
-  private static final String STATS_THREAD_NAME = Utils.THREAD_PREFIX + "Stats";
+  private static final int RECENT_HITS = 0;
+  private static final int RECENT_MISSES = 1;
+  private static final int RECENT_DECODES = 2;
+  private static final int RECENT_DECODED_BYTES = 3;
+  private static final int RECENT_COMPLETED = 4;
+  private static final int RECENT_FAILED = 5;
+  private static final int RECENT_FIELD_COUNT = 6;
 
   final Cache cache;
-  final Handler handler;
-
-  long cacheHits;
-  long cacheMisses;
-  long totalOriginalBitmapSize;
-  long totalTransformedBitmapSize;
-  long averageOriginalBitmapSize;
-  long averageTransformedBitmapSize;
-  int originalBitmapCount;
-  int transformedBitmapCount;
-
-  Stats(Cache cache) {
+  final ConnectionTracker connectionTracker;
+  final DownloadScheduler scheduler;
+
+  final StripedCounter cacheHits = new StripedCounter();
+  final StripedCounter cacheMisses = new StripedCounter();
+  final StripedCounter totalOriginalBitmapSize = new StripedCounter();
+  final StripedCounter totalTransformedBitmapSize = new StripedCounter();
+  final StripedCounter originalBitmapCount = new StripedCounter();
+  final StripedCounter transformedBitmapCount = new StripedCounter();
+  final StripedCounter completedCount = new StripedCounter();
+  final StripedCounter failedCount = new StripedCounter();
+  final StripedCounter allocatedBytes = new StripedCounter();
+  final StripedCounter recycledBytes = new StripedCounter();
+  /** Bytes allocated by requests with each chain of transformations. */
+  final ConcurrentMap<String, AtomicLong> allocatedBytesByTransformation =
+      new ConcurrentHashMap<String, AtomicLong>();
+  final LatencyHistogram[] stageLatencies = createHistograms();
+  /** Histograms for each {@link Request.LoadedFrom}, created when first needed. */
+  final AtomicReferenceArray<LatencyHistogram[]> stageLatenciesByLoadedFrom =
+      new AtomicReferenceArray<LatencyHistogram[]>(Request.LoadedFrom.values().length);
+  /** Per-second counts backing the rolling windows. */
+  final RollingCounters recent = new RollingCounters(RECENT_FIELD_COUNT);
+  final SlowRequestLog slowRequests;
+  final long startMillis;
+
+  Stats(Cache cache, ConnectionTracker connectionTracker, DownloadScheduler scheduler) {
+    this(cache, connectionTracker, scheduler, new SlowRequestLog(
+        SlowRequestLog.DEFAULT_THRESHOLD_MILLIS, SlowRequestLog.DEFAULT_MAX_ENTRIES));
+  }
+
+  Stats(Cache cache, ConnectionTracker connectionTracker, DownloadScheduler scheduler,
+      SlowRequestLog slowRequests) {
     this.cache = cache;
-    HandlerThread statsThread = new HandlerThread(STATS_THREAD_NAME, THREAD_PRIORITY_BACKGROUND);
-    statsThread.start();
-    handler = new StatsHandler(statsThread.getLooper());
+    this.connectionTracker = connectionTracker;
+    this.scheduler = scheduler;
+    this.slowRequests = slowRequests;
+    this.startMillis = SystemClock.uptimeMillis();
   }
 
   void bitmapDecoded(Bitmap bitmap) {
-    processBitmap(bitmap, BITMAP_DECODE_FINISHED);
+    long bitmapBytes = Utils.getBitmapBytes(bitmap);
+    originalBitmapCount.increment();
+    totalOriginalBitmapSize.add(bitmapBytes);
+    long now = SystemClock.uptimeMillis();
+    recent.add(now, RECENT_DECODES, 1);
+    recent.add(now, RECENT_DECODED_BYTES, bitmapBytes);
   }
 
   void bitmapTransformed(Bitmap bitmap) {
-    processBitmap(bitmap, BITMAP_TRANSFORMED_FINISHED);
+    transformedBitmapCount.increment();
+    totalTransformedBitmapSize.add(Utils.getBitmapBytes(bitmap));
+  }
+
+  /** Charges {@code byteCount} bytes allocated while loading {@code request} to it. */
+  void bytesAllocated(Request request, long byteCount) {
+    request.allocatedBytes += byteCount;
+    allocatedBytes.add(byteCount);
+
+    if (request.transformations != null) {
+      String transformationKeys = request.transformationKeys();
+      AtomicLong counter = allocatedBytesByTransformation.get(transformationKeys);
+      if (counter == null && allocatedBytesByTransformation.size() < MAX_TRANSFORMATION_KEYS) {
+        allocatedBytesByTransformation.putIfAbsent(transformationKeys, new AtomicLong());
+        counter = allocatedBytesByTransformation.get(transformationKeys);
+      }
+      // Chains beyond the limit still count towards the total.
+      if (counter != null) {
+        counter.addAndGet(byteCount);
+      }
+    }
+  }
+
+  /** Charges {@code byteCount} bytes recycled while loading {@code request} to it. */
+  void bytesRecycled(Request request, long byteCount) {
+    request.recycledBytes += byteCount;
+    recycledBytes.add(byteCount);
+  }
+
+  void requestCompleted(Request request) {
+    completedCount.increment();
+    long now = SystemClock.uptimeMillis();
+    recent.add(now, RECENT_COMPLETED, 1);
+    long durationNanos = System.nanoTime() - request.firstSubmittedNanos;
+    if (slowRequests.isSlow(durationNanos)) {
+      slowRequests.add(request, durationNanos, now);
+    }
+
+    long[] stageNanos = request.stageNanos;
+    recordStages(stageLatencies, stageNanos);
+
+    int loadedFrom = request.loadedFrom.ordinal();
+    LatencyHistogram[] sourceLatencies = stageLatenciesByLoadedFrom.get(loadedFrom);
+    if (sourceLatencies == null) {
+      stageLatenciesByLoadedFrom.compareAndSet(loadedFrom, null, createHistograms());
+      sourceLatencies = stageLatenciesByLoadedFrom.get(loadedFrom);
+    }
+    recordStages(sourceLatencies, stageNanos);
+  }
+
+  void requestFailed() {
+    failedCount.increment();
+    recent.add(SystemClock.uptimeMillis(), RECENT_FAILED, 1);
   }
 
   void cacheHit() {
-    handler.sendEmptyMessage(CACHE_HIT);
+    cacheHits.increment();
+    recent.add(SystemClock.uptimeMillis(), RECENT_HITS, 1);
   }
 
   void cacheMiss() {
-    handler.sendEmptyMessage(CACHE_MISS);
+    cacheMisses.increment();
+    recent.add(SystemClock.uptimeMillis(), RECENT_MISSES, 1);
+  }
+
+  List<SlowRequest> getSlowRequests() {
+    return slowRequests.snapshot(SystemClock.uptimeMillis());
   }
 
-  synchronized StatsSnapshot createSnapshot() {
-    return new StatsSnapshot(cache.maxSize(), cache.size(), cacheHits, cacheMisses,
-        totalOriginalBitmapSize, totalTransformedBitmapSize, averageOriginalBitmapSize,
-        averageTransformedBitmapSize, originalBitmapCount, transformedBitmapCount,
+  StatsSnapshot createSnapshot() {
+    long estimatedPoolHits = 0;
+    long estimatedPoolMisses = 0;
+    if (connectionTracker != null) {
+      estimatedPoolHits = connectionTracker.hitCount();
+      estimatedPoolMisses = connectionTracker.missCount();
+    }
+    long totalOriginalBitmapSize = this.totalOriginalBitmapSize.sum();
+    long totalTransformedBitmapSize = this.totalTransformedBitmapSize.sum();
+    int originalBitmapCount = (int) this.originalBitmapCount.sum();
+    int transformedBitmapCount = (int) this.transformedBitmapCount.sum();
+    long allocatedBytes = this.allocatedBytes.sum();
+    long now = SystemClock.uptimeMillis();
+    long elapsedMillis = now - startMillis;
+    return new StatsSnapshot(cache.maxSize(), cache.size(), cacheHits.sum(), cacheMisses.sum(),
+        totalOriginalBitmapSize, totalTransformedBitmapSize,
+        getAverage(originalBitmapCount, totalOriginalBitmapSize),
+        getAverage(transformedBitmapCount, totalTransformedBitmapSize), originalBitmapCount,
+        transformedBitmapCount, completedCount.sum(), failedCount.sum(), estimatedPoolHits,
+        estimatedPoolMisses, scheduler.createSnapshot(), createLatencySnapshot(stageLatencies),
+        createLatencySnapshotsByLoadedFrom(), allocatedBytes, recycledBytes.sum(),
+        elapsedMillis > 0 ? allocatedBytes * 1000 / elapsedMillis : 0,
+        createAllocationSnapshot(), createWindowSnapshots(now), slowRequests.snapshot(now),
         System.currentTimeMillis());
   }
 
-  private void processBitmap(Bitmap bitmap, int what) {
-    // Never send bitmaps to the handler as they could be recycled before we process them.
-    int bitmapSize = Utils.getBitmapBytes(bitmap);
-    handler.sendMessage(handler.obtainMessage(what, bitmapSize, 0));
+  private Map<String, WindowStats> createWindowSnapshots(long now) {
+    // Until a window has been running for its full length its rates are over the time so far.
+    long elapsedSeconds = (now - startMillis) / 1000 + 1;
+    Map<String, WindowStats> windows = new LinkedHashMap<String, WindowStats>();
+    for (int seconds : WINDOW_SECONDS) {
+      windows.put(seconds / 60 + "m", new WindowStats(Math.min(seconds, elapsedSeconds) * 1000,
+          recent.sum(now, seconds, RECENT_HITS), recent.sum(now, seconds, RECENT_MISSES),
+          recent.sum(now, seconds, RECENT_DECODES), recent.sum(now, seconds, RECENT_DECODED_BYTES),
+          recent.sum(now, seconds, RECENT_COMPLETED), recent.sum(now, seconds, RECENT_FAILED)));
+    }
+    return windows;
   }
 
-  private static long getAverage(int count, long totalSize) {
-    return totalSize / count;
+  private Map<String, Long> createAllocationSnapshot() {
+    Map<String, Long> snapshot = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : allocatedBytesByTransformation.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    return snapshot;
   }
 
-  private class StatsHandler extends Handler {
+  private Map<String, Map<LatencyStats.Stage, LatencyStats>> createLatencySnapshotsByLoadedFrom() {
+    Map<String, Map<LatencyStats.Stage, LatencyStats>> snapshots =
+        new LinkedHashMap<String, Map<LatencyStats.Stage, LatencyStats>>();
+    for (Request.LoadedFrom loadedFrom : Request.LoadedFrom.values()) {
+      LatencyHistogram[] histograms = stageLatenciesByLoadedFrom.get(loadedFrom.ordinal());
+      if (histograms != null) {
+        snapshots.put(loadedFrom.name(), createLatencySnapshot(histograms));
+      }
+    }
+    return snapshots;
+  }
 
-    public StatsHandler(Looper looper) {
-      super(looper);
+  private static Map<LatencyStats.Stage, LatencyStats> createLatencySnapshot(
+      LatencyHistogram[] histograms) {
+    Map<LatencyStats.Stage, LatencyStats> snapshot =
+        new EnumMap<LatencyStats.Stage, LatencyStats>(LatencyStats.Stage.class);
+    for (LatencyStats.Stage stage : LatencyStats.Stage.values()) {
+      snapshot.put(stage, histograms[stage.ordinal()].createSnapshot(stage));
     }
+    return Collections.unmodifiableMap(snapshot);
+  }
 
-    @Override public void handleMessage(final Message msg) {
-      synchronized (Stats.this) {
-        switch (msg.what) {
-          case CACHE_HIT:
-            cacheHits++;
-            break;
-          case CACHE_MISS:
-            cacheMisses++;
-            break;
-          case BITMAP_DECODE_FINISHED:
-            originalBitmapCount++;
-            totalOriginalBitmapSize += msg.arg1;
-            averageOriginalBitmapSize = getAverage(originalBitmapCount, totalOriginalBitmapSize);
-            break;
-          case BITMAP_TRANSFORMED_FINISHED:
-            transformedBitmapCount++;
-            totalTransformedBitmapSize += msg.arg1;
-            averageTransformedBitmapSize =
-                getAverage(originalBitmapCount, totalTransformedBitmapSize);
-            break;
-          case REQUESTED_COMPLETED:
-            break;
-          default:
-            Handler mainHandler = new Handler(Looper.getMainLooper());
-            mainHandler.post(new Runnable() {
-              @Override public void run() {
-                throw new AssertionError("Unhandled stats message." + msg.what);
-              }
-            });
-        }
+  private static LatencyHistogram[] createHistograms() {
+    LatencyHistogram[] histograms = new LatencyHistogram[LatencyStats.Stage.values().length];
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+    return histograms;
+  }
+
+  private static void recordStages(LatencyHistogram[] histograms, long[] stageNanos) {
+    for (int i = 0; i < stageNanos.length; i++) {
+      // Stages which a request skipped, such as the network for a local image, are not recorded.
+      if (stageNanos[i] > 0) {
+        histograms[i].recordNanos(stageNanos[i]);
       }
     }
   }
+
+  private static long getAverage(int count, long totalSize) {
+    return count == 0 ? 0 : totalSize / count;
+  }
 }
@@ -18,6 +18,10 @@ package com.squareup.picasso;
 import android.util.Log;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /** Represents all stats for a {@link Picasso} instance at a single point in time. */
 public class StatsSnapshot {
@@ -33,6 +37,40 @@ public class StatsSnapshot {
   public final long averageTransformedBitmapSize;
   public final int originalBitmapCount;
   public final int transformedBitmapCount;
+  /** Number of requests delivered to their target. */
+  public final long completedRequestCount;
+  /** Number of requests which failed after exhausting their retries. */
+  public final long failedRequestCount;
+  /**
+   * Estimated number of network loads which reused a pooled connection. OkHttp does not report
+   * reuse so this mirrors the pool's keep-alive policy. It is zero for other downloaders.
+   */
+  public final long estimatedConnectionPoolHits;
+  /** Estimated number of network loads which opened a new connection. */
+  public final long estimatedConnectionPoolMisses;
+  public final Map<String, HostStats> hostStats;
+  /** Latency of each stage of the requests completed by this instance. */
+  public final Map<LatencyStats.Stage, LatencyStats> stageLatencies;
+  /**
+   * Latency of each stage of completed requests grouped by where their image was loaded from:
+   * {@code MEMORY}, {@code DISK} or {@code NETWORK}.
+   */
+  public final Map<String, Map<LatencyStats.Stage, LatencyStats>> stageLatenciesByLoadedFrom;
+  /** Bytes of bitmaps and decode buffers allocated while loading images. */
+  public final long totalAllocatedBytes;
+  /** Bytes of intermediate bitmaps recycled while resizing and transforming images. */
+  public final long totalRecycledBytes;
+  /** Bytes allocated per second on average since this instance was created. */
+  public final long allocatedBytesPerSecond;
+  /**
+   * Bytes allocated by requests with each chain of transformations, keyed by the
+   * {@link Transformation#key() keys} of the chain in the form {@code [a, b]}.
+   */
+  public final Map<String, Long> allocatedBytesByTransformation;
+  /** Activity over the last {@code 1m}, {@code 5m} and {@code 15m}. */
+  public final Map<String, WindowStats> windows;
+  /** The slowest recently delivered requests, slowest first. */
+  public final List<SlowRequest> slowRequests;
 
   public final long timeStamp;
 
@@ -40,6 +78,26 @@ public class StatsSnapshot {
       long totalOriginalBitmapSize, long totalTransformedBitmapSize, long averageOriginalBitmapSize,
       long averageTransformedBitmapSize, int originalBitmapCount, int transformedBitmapCount,
       long timeStamp) {
+    this(maxSize, size, cacheHits, cacheMisses, totalOriginalBitmapSize,
+        totalTransformedBitmapSize, averageOriginalBitmapSize, averageTransformedBitmapSize,
+        originalBitmapCount, transformedBitmapCount, 0, 0, 0, 0,
+        Collections.<String, HostStats>emptyMap(),
+        Collections.<LatencyStats.Stage, LatencyStats>emptyMap(),
+        Collections.<String, Map<LatencyStats.Stage, LatencyStats>>emptyMap(), 0, 0, 0,
+        Collections.<String, Long>emptyMap(), Collections.<String, WindowStats>emptyMap(),
+        Collections.<SlowRequest>emptyList(), timeStamp);
+  }
+
+  StatsSnapshot(int maxSize, int size, long cacheHits, long cacheMisses,
+      long totalOriginalBitmapSize, long totalTransformedBitmapSize, long averageOriginalBitmapSize,
+      long averageTransformedBitmapSize, int originalBitmapCount, int transformedBitmapCount,
+      long completedRequestCount, long failedRequestCount, long estimatedConnectionPoolHits,
+      long estimatedConnectionPoolMisses, Map<String, HostStats> hostStats,
+      Map<LatencyStats.Stage, LatencyStats> stageLatencies,
+      Map<String, Map<LatencyStats.Stage, LatencyStats>> stageLatenciesByLoadedFrom,
+      long totalAllocatedBytes, long totalRecycledBytes, long allocatedBytesPerSecond,
+      Map<String, Long> allocatedBytesByTransformation, Map<String, WindowStats> windows,
+      List<SlowRequest> slowRequests, long timeStamp) {
     this.maxSize = maxSize;
     this.size = size;
     this.cacheHits = cacheHits;
@@ -50,9 +108,95 @@ public class StatsSnapshot {
     this.averageTransformedBitmapSize = averageTransformedBitmapSize;
     this.originalBitmapCount = originalBitmapCount;
     this.transformedBitmapCount = transformedBitmapCount;
+    this.completedRequestCount = completedRequestCount;
+    this.failedRequestCount = failedRequestCount;
+    this.estimatedConnectionPoolHits = estimatedConnectionPoolHits;
+    this.estimatedConnectionPoolMisses = estimatedConnectionPoolMisses;
+    this.hostStats = Collections.unmodifiableMap(hostStats);
+    this.stageLatencies = Collections.unmodifiableMap(stageLatencies);
+    this.stageLatenciesByLoadedFrom = Collections.unmodifiableMap(stageLatenciesByLoadedFrom);
+    this.totalAllocatedBytes = totalAllocatedBytes;
+    this.totalRecycledBytes = totalRecycledBytes;
+    this.allocatedBytesPerSecond = allocatedBytesPerSecond;
+    this.allocatedBytesByTransformation =
+        Collections.unmodifiableMap(allocatedBytesByTransformation);
+    this.windows = Collections.unmodifiableMap(windows);
+    this.slowRequests = Collections.unmodifiableList(slowRequests);
     this.timeStamp = timeStamp;
   }
 
+  /**
+   * Returns the activity between {@code previous} and this snapshot, both of which must have been
+   * taken from the same {@link Picasso} instance.
+   */
+  public WindowStats diff(StatsSnapshot previous) {
+    return new WindowStats(timeStamp - previous.timeStamp, cacheHits - previous.cacheHits,
+        cacheMisses - previous.cacheMisses, originalBitmapCount - previous.originalBitmapCount,
+        totalOriginalBitmapSize - previous.totalOriginalBitmapSize,
+        completedRequestCount - previous.completedRequestCount,
+        failedRequestCount - previous.failedRequestCount);
+  }
+
+  /**
+   * Returns every value of this snapshot under a flat, dot separated key such as
+   * {@code cache.hits} or {@code window.5m.hitRatio}, for reporting to a metrics system.
+   */
+  public Map<String, Number> toMap() {
+    Map<String, Number> map = new LinkedHashMap<String, Number>();
+    map.put("cache.maxSize", maxSize);
+    map.put("cache.size", size);
+    map.put("cache.hits", cacheHits);
+    map.put("cache.misses", cacheMisses);
+    map.put("bitmap.count", originalBitmapCount);
+    map.put("bitmap.totalSize", totalOriginalBitmapSize);
+    map.put("bitmap.averageSize", averageOriginalBitmapSize);
+    map.put("bitmap.transformedCount", transformedBitmapCount);
+    map.put("bitmap.transformedTotalSize", totalTransformedBitmapSize);
+    map.put("bitmap.transformedAverageSize", averageTransformedBitmapSize);
+    map.put("request.completed", completedRequestCount);
+    map.put("request.failed", failedRequestCount);
+    map.put("allocation.totalBytes", totalAllocatedBytes);
+    map.put("allocation.recycledBytes", totalRecycledBytes);
+    map.put("allocation.bytesPerSecond", allocatedBytesPerSecond);
+    map.put("connectionPool.estimatedHits", estimatedConnectionPoolHits);
+    map.put("connectionPool.estimatedMisses", estimatedConnectionPoolMisses);
+    for (HostStats host : hostStats.values()) {
+      String prefix = "host." + host.host + ".";
+      map.put(prefix + "requests", host.requestCount);
+      map.put(prefix + "waiting", host.waitingCount);
+      map.put(prefix + "averageQueueWaitTime", host.averageQueueWaitTime);
+      map.put(prefix + "maxQueueWaitTime", host.maxQueueWaitTime);
+      map.put(prefix + "bytesRead", host.bytesRead);
+      map.put(prefix + "throughput", host.throughput);
+    }
+    putLatencies(map, "latency.", stageLatencies);
+    for (Map.Entry<String, Map<LatencyStats.Stage, LatencyStats>> entry
+        : stageLatenciesByLoadedFrom.entrySet()) {
+      putLatencies(map, "latency." + entry.getKey() + ".", entry.getValue());
+    }
+    for (Map.Entry<String, WindowStats> entry : windows.entrySet()) {
+      String prefix = "window." + entry.getKey() + ".";
+      WindowStats window = entry.getValue();
+      map.put(prefix + "hitRatio", window.hitRatio);
+      map.put(prefix + "decodesPerSecond", window.decodesPerSecond);
+      map.put(prefix + "bytesPerSecond", window.bytesPerSecond);
+      map.put(prefix + "errorRate", window.errorRate);
+    }
+    return map;
+  }
+
+  private static void putLatencies(Map<String, Number> map, String prefix,
+      Map<LatencyStats.Stage, LatencyStats> latencies) {
+    for (LatencyStats latency : latencies.values()) {
+      String stagePrefix = prefix + latency.stage + ".";
+      map.put(stagePrefix + "count", latency.count);
+      map.put(stagePrefix + "p50", latency.p50);
+      map.put(stagePrefix + "p90", latency.p90);
+      map.put(stagePrefix + "p99", latency.p99);
+      map.put(stagePrefix + "max", latency.max);
+    }
+  }
+
   /** Prints out this {@link StatsSnapshot} into log. */
   public void dump() {
     StringWriter logWriter = new StringWriter();
@@ -85,10 +229,117 @@ public class StatsSnapshot {
     writer.println(averageOriginalBitmapSize);
     writer.print("  Average Transformed Bitmap Size: ");
     writer.println(averageTransformedBitmapSize);
+    writer.println("Request Stats");
+    writer.print("  Completed Requests: ");
+    writer.println(completedRequestCount);
+    writer.print("  Failed Requests: ");
+    writer.println(failedRequestCount);
+    writer.println("Allocation Stats");
+    writer.print("  Total Allocated Bytes: ");
+    writer.println(totalAllocatedBytes);
+    writer.print("  Total Recycled Bytes: ");
+    writer.println(totalRecycledBytes);
+    writer.print("  Allocated Bytes Per Second: ");
+    writer.println(allocatedBytesPerSecond);
+    for (Map.Entry<String, Long> entry : allocatedBytesByTransformation.entrySet()) {
+      writer.print("  Transformation ");
+      writer.print(entry.getKey());
+      writer.print(": ");
+      writer.println(entry.getValue());
+    }
+    writer.println("Connection Pool Stats");
+    writer.print("  Estimated Connection Pool Hits: ");
+    writer.println(estimatedConnectionPoolHits);
+    writer.print("  Estimated Connection Pool Misses: ");
+    writer.println(estimatedConnectionPoolMisses);
+    writer.println("Host Stats");
+    for (HostStats host : hostStats.values()) {
+      writer.print("  ");
+      writer.println(host.host);
+      writer.print("    Requests: ");
+      writer.println(host.requestCount);
+      writer.print("    Waiting Requests: ");
+      writer.println(host.waitingCount);
+      writer.print("    Average Queue Wait Time: ");
+      writer.println(host.averageQueueWaitTime);
+      writer.print("    Max Queue Wait Time: ");
+      writer.println(host.maxQueueWaitTime);
+      writer.print("    Bytes Read: ");
+      writer.println(host.bytesRead);
+      writer.print("    Throughput: ");
+      writer.println(host.throughput);
+    }
+    writer.println("Stage Latency Stats (microseconds)");
+    dumpLatencies(writer, "  ", stageLatencies);
+    for (Map.Entry<String, Map<LatencyStats.Stage, LatencyStats>> entry
+        : stageLatenciesByLoadedFrom.entrySet()) {
+      writer.print("  Loaded From ");
+      writer.println(entry.getKey());
+      dumpLatencies(writer, "    ", entry.getValue());
+    }
+    writer.println("Window Stats");
+    for (Map.Entry<String, WindowStats> entry : windows.entrySet()) {
+      WindowStats window = entry.getValue();
+      writer.print("  ");
+      writer.print(entry.getKey());
+      writer.print(": hitRatio=");
+      writer.print(window.hitRatio);
+      writer.print(" decodesPerSecond=");
+      writer.print(window.decodesPerSecond);
+      writer.print(" bytesPerSecond=");
+      writer.print(window.bytesPerSecond);
+      writer.print(" errorRate=");
+      writer.println(window.errorRate);
+    }
+    writer.println("Slow Requests (microseconds)");
+    for (SlowRequest slowRequest : slowRequests) {
+      writer.print("  ");
+      writer.println(slowRequest.key);
+      writer.print("    Uri: ");
+      writer.println(slowRequest.uri != null ? slowRequest.uri : slowRequest.resourceId);
+      writer.print("    Loaded From: ");
+      writer.println(slowRequest.loadedFrom);
+      writer.print("    Retries: ");
+      writer.println(slowRequest.retryCount);
+      writer.print("    Duration: ");
+      writer.println(slowRequest.duration);
+      writer.print("    Stages:");
+      for (Map.Entry<LatencyStats.Stage, Long> stage : slowRequest.stageDurations.entrySet()) {
+        writer.print(' ');
+        writer.print(stage.getKey());
+        writer.print('=');
+        writer.print(stage.getValue());
+      }
+      writer.println();
+      writer.print("    Source Size: ");
+      writer.print(slowRequest.sourceWidth);
+      writer.print('x');
+      writer.println(slowRequest.sourceHeight);
+      writer.print("    Sample Size: ");
+      writer.println(slowRequest.inSampleSize);
+    }
     writer.println("===============END PICASSO STATS ===============");
     writer.flush();
   }
 
+  private static void dumpLatencies(PrintWriter writer, String indent,
+      Map<LatencyStats.Stage, LatencyStats> latencies) {
+    for (LatencyStats latency : latencies.values()) {
+      writer.print(indent);
+      writer.print(latency.stage);
+      writer.print(": count=");
+      writer.print(latency.count);
+      writer.print(" p50=");
+      writer.print(latency.p50);
+      writer.print(" p90=");
+      writer.print(latency.p90);
+      writer.print(" p99=");
+      writer.print(latency.p99);
+      writer.print(" max=");
+      writer.println(latency.max);
+    }
+  }
+
   @Override public String toString() {
     return "StatsSnapshot{"
         + "maxSize="
@@ -111,6 +362,32 @@ public class StatsSnapshot {
         + originalBitmapCount
         + ", transformedBitmapCount="
         + transformedBitmapCount
+        + ", completedRequestCount="
+        + completedRequestCount
+        + ", failedRequestCount="
+        + failedRequestCount
+        + ", totalAllocatedBytes="
+        + totalAllocatedBytes
+        + ", totalRecycledBytes="
+        + totalRecycledBytes
+        + ", allocatedBytesPerSecond="
+        + allocatedBytesPerSecond
+        + ", allocatedBytesByTransformation="
+        + allocatedBytesByTransformation
+        + ", estimatedConnectionPoolHits="
+        + estimatedConnectionPoolHits
+        + ", estimatedConnectionPoolMisses="
+        + estimatedConnectionPoolMisses
+        + ", hostStats="
+        + hostStats.values()
+        + ", stageLatencies="
+        + stageLatencies.values()
+        + ", stageLatenciesByLoadedFrom="
+        + stageLatenciesByLoadedFrom
+        + ", windows="
+        + windows
+        + ", slowRequests="
+        + slowRequests
         + ", timeStamp="
         + timeStamp
         + '}';
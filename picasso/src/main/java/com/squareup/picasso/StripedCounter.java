@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which many threads can add to without contending, in the manner of Java 8's
+ * {@code LongAdder}. Each thread adds to one of several cells chosen by its ID and the cells are
+ * summed on read. Cells are spaced a cache line apart so that threads updating neighbouring cells
+ * do not invalidate each other's caches.
+ */
+final class StripedCounter {
+  private static final int CELL_COUNT = cellCount(Runtime.getRuntime().availableProcessors());
+  private static final int PADDING = 8; // Longs per 64 byte cache line.
+
+  private final AtomicLongArray cells = new AtomicLongArray(CELL_COUNT * PADDING);
+
+  void increment() {
+    add(1);
+  }
+
+  void add(long delta) {
+    cells.getAndAdd(cellIndex(Thread.currentThread()), delta);
+  }
+
+  /**
+   * Returns the current total. Additions made while the cells are being summed may or may not be
+   * included.
+   */
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i < CELL_COUNT; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  private static int cellIndex(Thread thread) {
+    long id = thread.getId();
+    // Thread IDs are usually sequential so mix the bits before picking a cell.
+    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((hash >>> 16) & (CELL_COUNT - 1)) * PADDING;
+  }
+
+  /** Returns the smallest power of two which is at least the number of processors, up to 16. */
+  static int cellCount(int processors) {
+    int count = 2;
+    while (count < processors && count < 16) {
+      count <<= 1;
+    }
+    return count;
+  }
+}
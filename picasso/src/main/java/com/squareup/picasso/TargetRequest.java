@@ -26,8 +26,8 @@ final class TargetRequest extends Request {
 
   TargetRequest(Picasso picasso, Uri uri, int resourceId, Target target, boolean strong,
       PicassoBitmapOptions bitmapOptions, List<Transformation> transformations, boolean skipCache) {
-    super(picasso, uri, resourceId, null, bitmapOptions, transformations, skipCache, false, 0,
-        null);
+    super(picasso, uri, resourceId, null, bitmapOptions, transformations, skipCache, false, false,
+        0, null);
     this.weakTarget =
         strong ? null : new WeakReference<Target>(target, picasso.referenceQueue);
     this.strongTarget = strong ? target : null;
@@ -51,6 +51,10 @@ final class TargetRequest extends Request {
     }
   }
 
+  @Override void preview() {
+    // Targets only receive the final image.
+  }
+
   @Override void error() {
     Target target = getTarget();
     if (target == null) {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link EventListener} which writes Chrome's trace event format so that the timeline of every
+ * request can be viewed offline in {@code chrome://tracing}. Each request is drawn on a row of its
+ * own, labelled with its URI, spanning from its submission until it is delivered, fails or is
+ * cancelled. Waiting for a thread and downloading are drawn as slices within the request, while
+ * cache lookups, decoding and transformations are marked as instant events.
+ * <p>
+ * Events are buffered, so {@link #close()} must be called to write the end of the trace. Errors
+ * writing the trace are silently ignored.
+ */
+public class TraceEventWriter extends EventListener implements Closeable {
+  private final PrintWriter writer;
+  private final Map<Integer, Timeline> timelines = new HashMap<Integer, Timeline>();
+  private boolean first = true;
+
+  /** Write a trace to {@code file}, replacing any existing contents. */
+  public TraceEventWriter(File file) throws IOException {
+    this(new FileWriter(file));
+  }
+
+  public TraceEventWriter(Writer writer) {
+    this.writer = new PrintWriter(new BufferedWriter(writer));
+    this.writer.println('[');
+  }
+
+  @Override public synchronized void requestSubmitted(int requestId, Uri uri,
+      long timestampNanos) {
+    if (timelines.containsKey(requestId)) {
+      return; // Retried.
+    }
+    timelines.put(requestId, new Timeline(timestampNanos));
+    String name = uri != null ? uri.toString() : "resource";
+    writeEvent("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + requestId
+        + ",\"args\":{\"name\":" + quote(name) + "}}");
+  }
+
+  @Override public synchronized void requestQueued(int requestId, long timestampNanos) {
+    Timeline timeline = timelines.get(requestId);
+    if (timeline != null) {
+      timeline.queuedNanos = timestampNanos;
+    }
+  }
+
+  @Override public synchronized void requestStarted(int requestId, long timestampNanos) {
+    Timeline timeline = timelines.get(requestId);
+    if (timeline != null && timeline.queuedNanos != 0) {
+      writeSlice("queued", requestId, timeline.queuedNanos, timestampNanos, null);
+      timeline.queuedNanos = 0;
+    }
+  }
+
+  @Override public synchronized void cacheHit(int requestId, long timestampNanos) {
+    writeInstant("cache hit", requestId, timestampNanos, null);
+  }
+
+  @Override public synchronized void cacheMiss(int requestId, long timestampNanos) {
+    writeInstant("cache miss", requestId, timestampNanos, null);
+  }
+
+  @Override public synchronized void downloadStarted(int requestId, long timestampNanos) {
+    Timeline timeline = timelines.get(requestId);
+    if (timeline != null) {
+      timeline.downloadNanos = timestampNanos;
+    }
+  }
+
+  @Override public synchronized void downloadFinished(int requestId, long byteCount,
+      long timestampNanos) {
+    Timeline timeline = timelines.get(requestId);
+    if (timeline != null && timeline.downloadNanos != 0) {
+      writeSlice("download", requestId, timeline.downloadNanos, timestampNanos,
+          "\"bytes\":" + byteCount);
+      timeline.downloadNanos = 0;
+    }
+  }
+
+  @Override public synchronized void decodeFinished(int requestId, int width, int height,
+      int inSampleSize, long timestampNanos) {
+    writeInstant("decoded", requestId, timestampNanos,
+        "\"width\":" + width + ",\"height\":" + height + ",\"inSampleSize\":" + inSampleSize);
+  }
+
+  @Override public synchronized void transformFinished(int requestId, int width, int height,
+      long timestampNanos) {
+    writeInstant("transformed", requestId, timestampNanos,
+        "\"width\":" + width + ",\"height\":" + height);
+  }
+
+  @Override public synchronized void requestDelivered(int requestId, long timestampNanos) {
+    finish(requestId, timestampNanos, "delivered");
+  }
+
+  @Override public synchronized void requestFailed(int requestId, long timestampNanos) {
+    finish(requestId, timestampNanos, "failed");
+  }
+
+  @Override public synchronized void requestCancelled(int requestId, long timestampNanos) {
+    finish(requestId, timestampNanos, "cancelled");
+  }
+
+  /** Writes the end of the trace and closes the underlying writer. */
+  @Override public synchronized void close() {
+    writer.println(']');
+    writer.close();
+  }
+
+  private void finish(int requestId, long timestampNanos, String outcome) {
+    Timeline timeline = timelines.remove(requestId);
+    if (timeline != null) {
+      writeSlice("request", requestId, timeline.submittedNanos, timestampNanos,
+          "\"outcome\":\"" + outcome + "\"");
+    }
+  }
+
+  private void writeSlice(String name, int requestId, long startNanos, long endNanos,
+      String args) {
+    writeEvent("{\"name\":\"" + name + "\",\"cat\":\"picasso\",\"ph\":\"X\",\"ts\":"
+        + startNanos / 1000 + ",\"dur\":" + (endNanos - startNanos) / 1000 + ",\"pid\":1,\"tid\":"
+        + requestId + (args != null ? ",\"args\":{" + args + "}" : "") + "}");
+  }
+
+  private void writeInstant(String name, int requestId, long timestampNanos, String args) {
+    writeEvent("{\"name\":\"" + name + "\",\"cat\":\"picasso\",\"ph\":\"i\",\"s\":\"t\",\"ts\":"
+        + timestampNanos / 1000 + ",\"pid\":1,\"tid\":" + requestId
+        + (args != null ? ",\"args\":{" + args + "}" : "") + "}");
+  }
+
+  private void writeEvent(String event) {
+    if (!first) {
+      writer.println(',');
+    }
+    first = false;
+    writer.print(event);
+  }
+
+  static String quote(String value) {
+    StringBuilder builder = new StringBuilder(value.length() + 2);
+    builder.append('"');
+    for (int i = 0, length = value.length(); i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+
+  /** Start times of the parts of a request which are drawn as slices. */
+  private static final class Timeline {
+    final long submittedNanos;
+    long queuedNanos;
+    long downloadNanos;
+
+    Timeline(long submittedNanos) {
+      this.submittedNanos = submittedNanos;
+    }
+  }
+}
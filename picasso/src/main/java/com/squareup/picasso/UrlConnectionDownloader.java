@@ -21,6 +21,7 @@ import android.net.http.HttpResponseCache;
 import android.os.Build;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
@@ -29,6 +30,8 @@ import static com.squareup.picasso.Utils.parseResponseSourceHeader;
 /**
  * A {@link Downloader} which uses {@link HttpURLConnection} to download images. A disk cache of
  * 10MB will automatically be installed in the application's cache directory, when available.
+ * Responses which are interrupted part way through are resumed from where they stopped using an
+ * HTTP range request.
  */
 public class UrlConnectionDownloader implements Downloader {
   static final String RESPONSE_SOURCE = "X-Android-Response-Source";
@@ -37,9 +40,12 @@ public class UrlConnectionDownloader implements Downloader {
   static volatile Object cache;
 
   private final Context context;
+  final PartialDownloadStore partialStore;
 
   public UrlConnectionDownloader(Context context) {
     this.context = context.getApplicationContext();
+    this.partialStore = new PartialDownloadStore(Utils.createDefaultPartialDir(context),
+        PartialDownloadStore.DEFAULT_MAX_SIZE);
   }
 
   protected HttpURLConnection openConnection(Uri path) throws IOException {
@@ -50,19 +56,50 @@ public class UrlConnectionDownloader implements Downloader {
   }
 
   @Override public Response load(Uri uri, boolean localCacheOnly) throws IOException {
+    return load(uri, localCacheOnly, false);
+  }
+
+  /**
+   * Load {@code uri}, accepting a disk cache entry no matter how stale it is when
+   * {@code acceptStale} is set. A stale entry is served without contacting the server and its
+   * response is marked {@link Response#stale}.
+   */
+  Response load(Uri uri, boolean localCacheOnly, boolean acceptStale) throws IOException {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
       installCacheIfNeeded(context);
     }
 
-    HttpURLConnection connection = openConnection(uri);
+    final HttpURLConnection connection = openConnection(uri);
     connection.setUseCaches(true);
+    PartialDownloadStore.Entry partial = null;
     if (localCacheOnly) {
-      connection.setRequestProperty("Cache-Control", "only-if-cached");
+      connection.setRequestProperty("Cache-Control",
+          acceptStale ? Utils.CACHE_ONLY_STALE : Utils.CACHE_ONLY);
+    } else {
+      if (acceptStale) {
+        connection.setRequestProperty("Cache-Control", Utils.MAX_STALE);
+      }
+      partial = partialStore.resume(uri, connection);
     }
 
     boolean fromCache = parseResponseSourceHeader(connection.getHeaderField(RESPONSE_SOURCE));
+    boolean stale = fromCache && Utils.isStaleWarning(connection.getHeaderField("Warning"));
 
-    return new Response(connection.getInputStream(), fromCache);
+    InputStream stream;
+    long contentLength;
+    if (fromCache || localCacheOnly) {
+      stream = connection.getInputStream();
+      contentLength = connection.getContentLength();
+    } else {
+      PartialDownloadStore.Body body = partialStore.open(uri, connection, partial);
+      stream = body.stream;
+      contentLength = body.contentLength;
+    }
+    return new Response(stream, fromCache, contentLength, stale) {
+      @Override public void disconnect() {
+        connection.disconnect();
+      }
+    };
   }
 
   private static void installCacheIfNeeded(Context context) {
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+
+/**
+ * Rewrites the URL of a network image before it is downloaded. This is useful for requesting an
+ * image from a resizing CDN at the size it will be displayed rather than downloading the original.
+ * <p/>
+ * Memory cache keys are always created from the original URL so they are not affected by
+ * rewriting.
+ * <p/>
+ * <em>Note:</em> The {@link #rewrite(Uri, int, int)} method will be invoked on a background
+ * thread.
+ */
+public interface UrlRewriter {
+  /**
+   * Returns the URL to download in place of {@code uri}. <strong>Must not be {@code
+   * null}.</strong>
+   *
+   * @param uri The requested image URL.
+   * @param targetWidth The width the image will be resized to, either from {@link
+   * RequestBuilder#resize(int, int)} or the measured target of {@link RequestBuilder#fit()}, or
+   * {@code 0} if it will not be resized.
+   * @param targetHeight The height the image will be resized to or {@code 0}.
+   */
+  Uri rewrite(Uri uri, int targetWidth, int targetHeight);
+
+  /** A rewriter which always returns the original URL. */
+  UrlRewriter IDENTITY = new UrlRewriter() {
+    @Override public Uri rewrite(Uri uri, int targetWidth, int targetHeight) {
+      return uri;
+    }
+  };
+}
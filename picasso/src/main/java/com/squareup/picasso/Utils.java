@@ -52,7 +52,12 @@ final class Utils {
   static final String THREAD_IDLE_NAME = THREAD_PREFIX + "Idle";
   static final int DEFAULT_READ_TIMEOUT = 20 * 1000; // 20s
   static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000; // 15s
+  static final String CACHE_ONLY = "only-if-cached";
+  /** Accept a cached response no matter how stale it is rather than going to the network. */
+  static final String MAX_STALE = "max-stale=" + Integer.MAX_VALUE;
+  static final String CACHE_ONLY_STALE = CACHE_ONLY + "," + MAX_STALE;
   private static final String PICASSO_CACHE = "picasso-cache";
+  private static final String PICASSO_PARTIAL = "picasso-partial";
   private static final int KEY_PADDING = 50; // Determined by exact science.
   private static final int MIN_DISK_CACHE_SIZE = 5 * 1024 * 1024; // 5MB
   private static final int MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
@@ -175,6 +180,21 @@ final class Utils {
     return builder.toString();
   }
 
+  /**
+   * Returns the key of {@code request} as if only its first {@code count} transformations had been
+   * specified. This is a prefix of {@link Request#key} since each transformation key is appended
+   * in order.
+   */
+  static String createPrefixKey(Request request, int count) {
+    String key = request.key;
+    List<Transformation> transformations = request.transformations;
+    int end = key.length();
+    for (int i = transformations.size() - 1; i >= count; i--) {
+      end -= transformations.get(i).key().length() + 1;
+    }
+    return key.substring(0, end);
+  }
+
   static void calculateInSampleSize(PicassoBitmapOptions options) {
     final int height = options.outHeight;
     final int width = options.outWidth;
@@ -199,6 +219,11 @@ final class Utils {
   }
 
   /** Returns {@code true} if header indicates the response body was loaded from the disk cache. */
+  /** Whether a {@code Warning} header marks a cached response as served after it expired. */
+  static boolean isStaleWarning(String header) {
+    return header != null && header.startsWith("110");
+  }
+
   static boolean parseResponseSourceHeader(String header) {
     if (header == null) {
       return false;
@@ -234,6 +259,10 @@ final class Utils {
     return cache;
   }
 
+  static File createDefaultPartialDir(Context context) {
+    return new File(context.getApplicationContext().getCacheDir(), PICASSO_PARTIAL);
+  }
+
   static int calculateDiskCacheSize(File dir) {
     int size = MIN_DISK_CACHE_SIZE;
 
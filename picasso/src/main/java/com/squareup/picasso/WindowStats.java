@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+/**
+ * Activity over a period of time, either one of the rolling windows of a {@link StatsSnapshot} or
+ * the time between two snapshots as computed by {@link StatsSnapshot#diff(StatsSnapshot)}.
+ */
+public class WindowStats {
+  /** Length of the period in milliseconds. */
+  public final long durationMillis;
+  public final long cacheHits;
+  public final long cacheMisses;
+  /** Number of bitmaps decoded. */
+  public final long decodeCount;
+  /** Total size in bytes of the bitmaps decoded. */
+  public final long decodedBytes;
+  /** Number of requests delivered to their target. */
+  public final long completedCount;
+  /** Number of requests which failed after exhausting their retries. */
+  public final long failedCount;
+  /** Fraction of memory cache lookups which were hits, or 0 if there were none. */
+  public final double hitRatio;
+  public final double decodesPerSecond;
+  /** Bytes of bitmaps decoded per second. */
+  public final double bytesPerSecond;
+  /** Fraction of finished requests which failed, or 0 if none finished. */
+  public final double errorRate;
+
+  public WindowStats(long durationMillis, long cacheHits, long cacheMisses, long decodeCount,
+      long decodedBytes, long completedCount, long failedCount) {
+    this.durationMillis = durationMillis;
+    this.cacheHits = cacheHits;
+    this.cacheMisses = cacheMisses;
+    this.decodeCount = decodeCount;
+    this.decodedBytes = decodedBytes;
+    this.completedCount = completedCount;
+    this.failedCount = failedCount;
+    this.hitRatio = ratio(cacheHits, cacheHits + cacheMisses);
+    this.decodesPerSecond = durationMillis > 0 ? decodeCount * 1000d / durationMillis : 0;
+    this.bytesPerSecond = durationMillis > 0 ? decodedBytes * 1000d / durationMillis : 0;
+    this.errorRate = ratio(failedCount, completedCount + failedCount);
+  }
+
+  private static double ratio(long count, long total) {
+    return total == 0 ? 0 : count / (double) total;
+  }
+
+  @Override public String toString() {
+    return "WindowStats{"
+        + "durationMillis="
+        + durationMillis
+        + ", hitRatio="
+        + hitRatio
+        + ", decodesPerSecond="
+        + decodesPerSecond
+        + ", bytesPerSecond="
+        + bytesPerSecond
+        + ", errorRate="
+        + errorRate
+        + '}';
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.squareup.picasso.Downloader.Response;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BatchingDownloaderTest {
+  private static final String BOUNDARY = "frontier";
+
+  private MockWebServer server;
+  private Downloader delegate;
+  private ExecutorService executor;
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.play();
+    delegate = mock(Downloader.class);
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @After public void tearDown() throws Exception {
+    release.countDown();
+    executor.shutdownNow();
+    server.shutdown();
+  }
+
+  @Test public void requestsWithinWindowAreFetchedTogether() throws Exception {
+    server.enqueue(new MockResponse() //
+        .addHeader("Content-Type", "multipart/mixed; boundary=" + BOUNDARY) //
+        .setBody(multipart("/b.png", "bbb", "/a.png", "aa")));
+    BatchingDownloader downloader = new TestBatchingDownloader(10000, 2);
+    Uri busy = startBusyLoad(downloader);
+
+    Future<byte[]> a = executor.submit(load(downloader, uri("/a.png")));
+    Future<byte[]> b = executor.submit(load(downloader, uri("/b.png")));
+
+    assertThat(new String(a.get(), "US-ASCII")).isEqualTo("aa");
+    assertThat(new String(b.get(), "US-ASCII")).isEqualTo("bbb");
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(server.takeRequest().getPath()).isEqualTo("/batch?count=2");
+    verify(delegate).load(busy, false);
+    verifyNoMoreInteractions(delegate);
+  }
+
+  @Test public void loneRequestIsLoadedRightAway() throws Exception {
+    Uri uri = uri("/a.png");
+    when(delegate.load(uri, false)).thenReturn(new Response(body("aa"), false));
+    BatchingDownloader downloader = new TestBatchingDownloader(10000, 2);
+
+    long start = System.nanoTime();
+    assertThat(new String(load(downloader, uri).call(), "US-ASCII")).isEqualTo("aa");
+    assertThat(System.nanoTime() - start).isLessThan(5000 * 1000000L);
+    assertThat(server.getRequestCount()).isEqualTo(0);
+  }
+
+  @Test public void requestAfterLoadFinishesIsLoadedRightAway() throws Exception {
+    Uri uri1 = uri("/a.png");
+    Uri uri2 = uri("/b.png");
+    when(delegate.load(uri1, false)).thenReturn(new Response(body("aa"), false));
+    when(delegate.load(uri2, false)).thenReturn(new Response(body("bbb"), false));
+    BatchingDownloader downloader = new TestBatchingDownloader(10000, 2);
+
+    // Reading and closing the first response ends its load.
+    assertThat(new String(load(downloader, uri1).call(), "US-ASCII")).isEqualTo("aa");
+    long start = System.nanoTime();
+    assertThat(new String(load(downloader, uri2).call(), "US-ASCII")).isEqualTo("bbb");
+    assertThat(System.nanoTime() - start).isLessThan(5000 * 1000000L);
+  }
+
+  @Test public void missingPartIsLoadedByDelegate() throws Exception {
+    server.enqueue(new MockResponse() //
+        .addHeader("Content-Type", "multipart/mixed; boundary=" + BOUNDARY) //
+        .setBody(multipart("/a.png", "aa")));
+    Uri missing = uri("/b.png");
+    when(delegate.load(missing, false)).thenReturn(new Response(body("bbb"), false));
+    BatchingDownloader downloader = new TestBatchingDownloader(10000, 2);
+    startBusyLoad(downloader);
+
+    Future<byte[]> a = executor.submit(load(downloader, uri("/a.png")));
+    Future<byte[]> b = executor.submit(load(downloader, missing));
+
+    assertThat(new String(a.get(), "US-ASCII")).isEqualTo("aa");
+    assertThat(new String(b.get(), "US-ASCII")).isEqualTo("bbb");
+  }
+
+  @Test public void failedBatchIsLoadedByDelegate() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(500));
+    Uri uri1 = uri("/a.png");
+    Uri uri2 = uri("/b.png");
+    when(delegate.load(uri1, false)).thenReturn(new Response(body("aa"), false));
+    when(delegate.load(uri2, false)).thenReturn(new Response(body("bbb"), false));
+    BatchingDownloader downloader = new TestBatchingDownloader(10000, 2);
+    startBusyLoad(downloader);
+
+    Future<byte[]> a = executor.submit(load(downloader, uri1));
+    Future<byte[]> b = executor.submit(load(downloader, uri2));
+
+    assertThat(new String(a.get(), "US-ASCII")).isEqualTo("aa");
+    assertThat(new String(b.get(), "US-ASCII")).isEqualTo("bbb");
+  }
+
+  @Test public void cacheOnlyRequestIsLoadedByDelegate() throws Exception {
+    Uri uri = uri("/a.png");
+    BatchingDownloader downloader = new TestBatchingDownloader(10000, 2);
+    downloader.load(uri, true);
+    verify(delegate).load(uri, true);
+  }
+
+  @Test public void invalidArgumentsThrow() {
+    try {
+      new TestBatchingDownloader(0, 2);
+      fail("Zero window should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new TestBatchingDownloader(10, 1);
+      fail("Batch size of one should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void partsWithoutLocationAreMatchedInOrder() throws Exception {
+    String body = "--" + BOUNDARY + "\r\n\r\nfirst\r\n--" + BOUNDARY + "\r\n"
+        + "Content-Type: image/png\r\n\r\nsecond\r\n--" + BOUNDARY + "--\r\n";
+    List<BatchingDownloader.Part> parts =
+        BatchingDownloader.parseMultipart(body.getBytes("US-ASCII"), BOUNDARY);
+    assertThat(parts).hasSize(2);
+    assertThat(parts.get(0).location).isNull();
+    assertThat(new String(parts.get(0).body, "US-ASCII")).isEqualTo("first");
+    assertThat(new String(parts.get(1).body, "US-ASCII")).isEqualTo("second");
+  }
+
+  @Test public void truncatedMultipartThrows() throws Exception {
+    String body = "--" + BOUNDARY + "\r\n\r\nfirst";
+    try {
+      BatchingDownloader.parseMultipart(body.getBytes("US-ASCII"), BOUNDARY);
+      fail("Truncated body should throw exception.");
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test public void boundaryIsParsedFromContentType() {
+    assertThat(BatchingDownloader.parseBoundary("multipart/mixed; boundary=abc")).isEqualTo("abc");
+    assertThat(BatchingDownloader.parseBoundary("Multipart/Mixed;Boundary=\"a b\"")) //
+        .isEqualTo("a b");
+    assertThat(BatchingDownloader.parseBoundary("image/png")).isNull();
+    assertThat(BatchingDownloader.parseBoundary(null)).isNull();
+  }
+
+  /**
+   * Starts loading an image through the delegate which stays in flight until the end of the test.
+   */
+  private Uri startBusyLoad(BatchingDownloader downloader) throws Exception {
+    Uri busy = uri("/busy.png");
+    final CountDownLatch loading = new CountDownLatch(1);
+    when(delegate.load(busy, false)).thenAnswer(new Answer<Response>() {
+      @Override public Response answer(InvocationOnMock invocation) throws Throwable {
+        loading.countDown();
+        release.await();
+        return new Response(body("busy"), false);
+      }
+    });
+    executor.submit(load(downloader, busy));
+    loading.await();
+    return busy;
+  }
+
+  private Uri uri(String path) {
+    return Uri.parse(server.getUrl(path).toString());
+  }
+
+  private static InputStream body(String body) throws IOException {
+    return new ByteArrayInputStream(body.getBytes("US-ASCII"));
+  }
+
+  private static String multipart(String... locationsAndBodies) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < locationsAndBodies.length; i += 2) {
+      builder.append("--").append(BOUNDARY).append("\r\n")
+          .append("Content-Location: ").append(locationsAndBodies[i]).append("\r\n\r\n")
+          .append(locationsAndBodies[i + 1]).append("\r\n");
+    }
+    return builder.append("--").append(BOUNDARY).append("--\r\n").toString();
+  }
+
+  private static Callable<byte[]> load(final Downloader downloader, final Uri uri) {
+    return new Callable<byte[]>() {
+      @Override public byte[] call() throws Exception {
+        InputStream stream = downloader.load(uri, false).stream;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int b;
+        while ((b = stream.read()) != -1) {
+          bytes.write(b);
+        }
+        stream.close();
+        return bytes.toByteArray();
+      }
+    };
+  }
+
+  private class TestBatchingDownloader extends BatchingDownloader {
+    TestBatchingDownloader(long windowMillis, int maxBatchSize) {
+      super(delegate, windowMillis, maxBatchSize);
+    }
+
+    @Override protected Uri createBatchUri(List<Uri> uris) {
+      return Uri.parse(server.getUrl("/batch?count=" + uris.size()).toString());
+    }
+  }
+}
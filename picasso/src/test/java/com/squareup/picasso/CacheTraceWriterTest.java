@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.squareup.picasso.CacheTraceWriter.HIT;
+import static com.squareup.picasso.CacheTraceWriter.MAGIC;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CacheTraceWriterTest {
+  @Test public void recordsHitsAndMisses() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CacheTraceWriter writer = new CacheTraceWriter(out);
+    writer.record("a", 6, false);
+    writer.record("a", 6, true);
+    writer.close();
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    assertThat(in.readInt()).isEqualTo(MAGIC);
+    assertThat(in.readInt()).isEqualTo("a".hashCode());
+    assertThat(in.readInt()).isEqualTo(6);
+    assertThat(in.readInt()).isEqualTo("a".hashCode());
+    assertThat(in.readInt()).isEqualTo(6 | HIT);
+    assertThat(in.read()).isEqualTo(-1);
+  }
+
+  @Test public void recordsAfterCloseAreDropped() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CacheTraceWriter writer = new CacheTraceWriter(out);
+    writer.close();
+    writer.record("a", 6, false);
+    assertThat(out.size()).isEqualTo(4);
+  }
+
+  @Test public void writeErrorsAreIgnored() {
+    CacheTraceWriter writer = new CacheTraceWriter(new OutputStream() {
+      @Override public void write(int b) throws IOException {
+        throw new IOException();
+      }
+    });
+    writer.record("a", 6, false);
+    writer.flush();
+    writer.close();
+  }
+}
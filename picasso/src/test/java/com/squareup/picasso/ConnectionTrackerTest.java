@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.os.SystemClock;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ConnectionTrackerTest {
+  private static final String HOST_1 = "http://a.example.com";
+  private static final String HOST_2 = "http://b.example.com";
+
+  @Test public void releasedConnectionIsReused() {
+    ConnectionTracker tracker = new ConnectionTracker(5, 1000);
+    assertThat(tracker.acquire(HOST_1)).isFalse();
+    tracker.release(HOST_1);
+    assertThat(tracker.acquire(HOST_1)).isTrue();
+    assertThat(tracker.acquire(HOST_1)).isFalse();
+    assertThat(tracker.hitCount()).isEqualTo(1);
+    assertThat(tracker.missCount()).isEqualTo(2);
+  }
+
+  @Test public void connectionsAreNotSharedAcrossHosts() {
+    ConnectionTracker tracker = new ConnectionTracker(5, 1000);
+    tracker.release(HOST_1);
+    assertThat(tracker.acquire(HOST_2)).isFalse();
+    assertThat(tracker.acquire(HOST_1)).isTrue();
+  }
+
+  @Test public void idleConnectionsExpire() {
+    ConnectionTracker tracker = new ConnectionTracker(5, 1000);
+    tracker.release(HOST_1);
+    SystemClock.sleep(1000);
+    assertThat(tracker.acquire(HOST_1)).isFalse();
+  }
+
+  @Test public void leastRecentlyReleasedIsEvictedWhenFull() {
+    ConnectionTracker tracker = new ConnectionTracker(1, 1000);
+    tracker.release(HOST_1);
+    tracker.release(HOST_2);
+    assertThat(tracker.acquire(HOST_1)).isFalse();
+    assertThat(tracker.acquire(HOST_2)).isTrue();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DeferredRequestCreatorTest {
+  private RequestBuilder creator;
+  private ImageView target;
+  private ViewTreeObserver observer;
+
+  @Before public void setUp() {
+    creator = mock(RequestBuilder.class);
+    when(creator.unfit()).thenReturn(creator);
+    when(creator.resize(100, 50)).thenReturn(creator);
+    target = mock(ImageView.class);
+    observer = mock(ViewTreeObserver.class);
+    when(observer.isAlive()).thenReturn(true);
+    when(target.getViewTreeObserver()).thenReturn(observer);
+  }
+
+  @Test public void registersForPreDraw() {
+    DeferredRequestCreator request = new DeferredRequestCreator(creator, target);
+    verify(observer).addOnPreDrawListener(request);
+  }
+
+  @Test public void waitsUntilTargetHasSize() {
+    DeferredRequestCreator request = new DeferredRequestCreator(creator, target);
+    request.onPreDraw();
+    verify(observer, never()).removeOnPreDrawListener(request);
+    verifyZeroInteractions(creator);
+  }
+
+  @Test public void submitsResizedOnceTargetHasSize() {
+    when(target.getWidth()).thenReturn(100);
+    when(target.getHeight()).thenReturn(50);
+    DeferredRequestCreator request = new DeferredRequestCreator(creator, target);
+    request.onPreDraw();
+    verify(observer).removeOnPreDrawListener(request);
+    verify(creator).unfit();
+    verify(creator).resize(100, 50);
+    verify(creator).into(target);
+  }
+
+  @Test public void cancelRemovesListener() {
+    DeferredRequestCreator request = new DeferredRequestCreator(creator, target);
+    request.cancel();
+    verify(observer).removeOnPreDrawListener(request);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.squareup.picasso.Downloader.Response;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DownloadSchedulerTest {
+  private static final Uri HOST_1_URI = Uri.parse("http://a.example.com/1.png");
+  private static final Uri HOST_2_URI = Uri.parse("http://b.example.com/1.png");
+  private static final Uri FILE_URI = Uri.parse("file:///sdcard/1.png");
+
+  private final Picasso picasso = mock(Picasso.class);
+  private SynchronousExecutorService executor;
+
+  @Before public void setUp() {
+    executor = new SynchronousExecutorService();
+  }
+
+  @Test public void requestsOverHostLimitWait() throws Exception {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 0);
+    scheduler.submit(request(HOST_1_URI));
+    scheduler.submit(request(HOST_1_URI));
+    scheduler.submit(request(HOST_2_URI));
+    assertThat(executor.tasks).hasSize(2);
+    assertThat(scheduler.createSnapshot().get("a.example.com").waitingCount).isEqualTo(1);
+
+    executor.executeFirst();
+    assertThat(executor.tasks).hasSize(2);
+    assertThat(scheduler.createSnapshot().get("a.example.com").waitingCount).isEqualTo(0);
+  }
+
+  @Test public void localRequestsAreNotLimited() {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 0);
+    scheduler.submit(request(FILE_URI));
+    scheduler.submit(request(FILE_URI));
+    assertThat(executor.tasks).hasSize(2);
+    assertThat(scheduler.createSnapshot()).isEmpty();
+  }
+
+  @Test public void cancelledWaitingRequestIsNeverStarted() throws Exception {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 0);
+    scheduler.submit(request(HOST_1_URI));
+    Future<?> waiting = scheduler.submit(request(HOST_1_URI));
+    waiting.cancel(true);
+    assertThat(scheduler.createSnapshot().get("a.example.com").waitingCount).isEqualTo(0);
+
+    executor.flush();
+    scheduler.submit(request(HOST_1_URI));
+    assertThat(executor.tasks).hasSize(1);
+    assertThat(scheduler.createSnapshot().get("a.example.com").requestCount).isEqualTo(1);
+  }
+
+  @Test public void cancellingQueuedRequestFreesSlotOnce() throws Exception {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 0);
+    Future<?> queued = scheduler.submit(request(HOST_1_URI));
+    scheduler.submit(request(HOST_1_URI));
+    queued.cancel(true);
+    assertThat(executor.tasks).hasSize(2);
+
+    // The executor still runs the cancelled task, which must not release the slot again.
+    executor.executeFirst();
+    scheduler.submit(request(HOST_1_URI));
+    assertThat(executor.tasks).hasSize(1);
+  }
+
+  @Test public void cancellingRunningRequestKeepsSlotUntilWorkerReturns() throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    doAnswer(new Answer() {
+      @Override public Object answer(InvocationOnMock invocation) {
+        running.countDown();
+        // Like a download blocked in a read which does not notice the interrupt.
+        while (release.getCount() > 0) {
+          try {
+            release.await();
+          } catch (InterruptedException ignored) {
+          }
+        }
+        return null;
+      }
+    }).when(picasso).run(any(Request.class));
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 0);
+    Future<?> first = scheduler.submit(request(HOST_1_URI));
+    scheduler.submit(request(HOST_1_URI));
+    Thread worker = new Thread(executor.tasks.remove(0));
+    worker.start();
+    running.await();
+
+    first.cancel(true);
+    assertThat(executor.tasks).isEmpty();
+
+    release.countDown();
+    worker.join();
+    assertThat(executor.tasks).hasSize(1);
+  }
+
+  @Test public void bytesReadAreCountedPerHost() throws Exception {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 0, 0);
+    Response response = new Response(new ByteArrayInputStream(new byte[100]), false);
+    InputStream stream = scheduler.meter(request(HOST_1_URI), response).stream;
+    byte[] buffer = new byte[30];
+    while (stream.read(buffer) != -1) {
+    }
+    assertThat(scheduler.createSnapshot().get("a.example.com").bytesRead).isEqualTo(100);
+  }
+
+  @Test public void meteredResponseDisconnectsOriginal() {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 0, 0);
+    final AtomicBoolean disconnected = new AtomicBoolean();
+    Response response = new Response(new ByteArrayInputStream(new byte[100]), false) {
+      @Override public void disconnect() {
+        disconnected.set(true);
+      }
+    };
+    Response metered = scheduler.meter(request(HOST_1_URI), response);
+    assertThat(metered).isNotSameAs(response);
+    metered.disconnect();
+    assertThat(disconnected.get()).isTrue();
+  }
+
+  @Test public void readsAreThrottled() throws Exception {
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 0, 1000);
+    Response response = new Response(new ByteArrayInputStream(new byte[200]), false);
+    InputStream stream = scheduler.meter(request(HOST_1_URI), response).stream;
+    long start = System.nanoTime();
+    while (stream.read(new byte[50]) != -1) {
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+    assertThat(elapsedMillis).isGreaterThanOrEqualTo(150);
+  }
+
+  private Request request(Uri uri) {
+    return new Request(picasso, uri, 0, null, null, null, false, false, false, 0, null);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the {@link Picasso} instances used by {@link LoadHarness} and {@link ScrollHarness}.
+ * <p>
+ * There is no image codec under Robolectric so each response body is read in full and then
+ * replaced by a bitmap from a {@link FakeDecoder}. The harnesses therefore measure downloading,
+ * scheduling, caching and delivery but not the cost of decoding an image.
+ */
+final class HarnessPicasso {
+  /** Reported by the harnesses along with their results. */
+  static final String DECODE_EXCLUDED =
+      "Decode cost is excluded: bodies are read in full but not decoded.";
+
+  /** Creates the bitmap standing in for a response body that has been read. */
+  interface FakeDecoder {
+    Bitmap decode(Request request, long bodyLength);
+  }
+
+  static Picasso create(Context context, Downloader downloader, ExecutorService service,
+      DownloadScheduler scheduler, Cache cache, EventListener listener,
+      final FakeDecoder decoder) {
+    Stats stats = new Stats(cache, null, scheduler);
+    return new Picasso(context, downloader, service, scheduler, cache, null,
+        UrlRewriter.IDENTITY, null, listener, null, stats, false, false) {
+      @Override Bitmap decodeResponse(Request request, Downloader.Response response,
+          PicassoBitmapOptions bitmapOptions) throws IOException {
+        long length = 0;
+        InputStream stream = response.stream;
+        try {
+          byte[] buffer = new byte[16 * 1024];
+          int count;
+          while ((count = stream.read(buffer)) != -1) {
+            length += count;
+          }
+        } finally {
+          Utils.closeQuietly(stream);
+        }
+        return decoder.decode(request, length);
+      }
+    };
+  }
+
+  private HarnessPicasso() {
+    // No instances.
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import org.junit.Test;
+
+import static com.squareup.picasso.LatencyStats.Stage.DECODE;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+  @Test public void emptyHistogramReportsZero() {
+    LatencyStats stats = new LatencyHistogram().createSnapshot(DECODE);
+    assertThat(stats.count).isEqualTo(0);
+    assertThat(stats.p50).isEqualTo(0);
+    assertThat(stats.max).isEqualTo(0);
+  }
+
+  @Test public void smallValuesAreExact() {
+    for (int i = 0; i < 16; i++) {
+      assertThat(LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(i)))
+          .isEqualTo(i);
+    }
+  }
+
+  @Test public void bucketsHaveBoundedRelativeError() {
+    for (long value = 16; value < 1000000; value = value * 3 / 2 + 1) {
+      long reported = LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(value));
+      assertThat(reported).isGreaterThanOrEqualTo(value);
+      assertThat(reported - value).isLessThanOrEqualTo(value / 16);
+    }
+  }
+
+  @Test public void hugeValuesShareLastBucket() {
+    int last = LatencyHistogram.bucketIndex(1L << 30);
+    assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(last);
+    assertThat(LatencyHistogram.bucketIndex((1L << 30) - 1)).isEqualTo(last);
+  }
+
+  @Test public void percentilesAreReported() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.recordNanos(i * 1000000L); // 1ms to 100ms.
+    }
+    LatencyStats stats = histogram.createSnapshot(DECODE);
+    assertThat(stats.stage).isEqualTo(DECODE);
+    assertThat(stats.count).isEqualTo(100);
+    assertThat(stats.p50).isGreaterThanOrEqualTo(50000).isLessThanOrEqualTo(50000 * 17 / 16);
+    assertThat(stats.p90).isGreaterThanOrEqualTo(90000).isLessThanOrEqualTo(90000 * 17 / 16);
+    assertThat(stats.p99).isGreaterThanOrEqualTo(99000).isLessThanOrEqualTo(100000);
+    assertThat(stats.max).isEqualTo(100000);
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static android.os.Build.VERSION_CODES.GINGERBREAD;
+import static org.robolectric.Robolectric.pauseMainLooper;
+import static org.robolectric.Robolectric.runUiThreadTasksIncludingDelayedTasks;
+import static org.robolectric.Robolectric.unPauseMainLooper;
+
+/**
+ * Drives a {@link Picasso} instance with thousands of requests against local web servers and
+ * reports throughput, latency percentiles, the memory cache hit ratio, retries and the peak number
+ * of bitmap bytes held. Images are requested with Zipfian popularity, come in a mix of sizes, and a
+ * few of them always fail.
+ * <p>
+ * The harness is not part of the regular test run. Run it on its own with:
+ * <pre>
+ * mvn test -pl picasso -Dtest=LoadHarness
+ * </pre>
+ * Every run with the same settings requests the same images in the same order. The settings can be
+ * changed with the system properties below, e.g. {@code -Dpicasso.load.cacheKb=4096}.
+ * <p>
+ * Decode cost is excluded: {@link HarnessPicasso} reads responses in full and replaces them with a
+ * bitmap whose size follows from the length of the body. Retries are not delayed since delayed
+ * main thread messages run as soon as the main looper is pumped.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, reportSdk = GINGERBREAD)
+public class LoadHarness {
+  private static final int REQUESTS = Integer.getInteger("picasso.load.requests", 5000);
+  private static final int IMAGES = Integer.getInteger("picasso.load.images", 1000);
+  private static final double ZIPF_EXPONENT =
+      Double.parseDouble(System.getProperty("picasso.load.zipfExponent", "0.9"));
+  /** How many requests are outstanding at any time, like the views of a screen of content. */
+  private static final int CONCURRENCY = Integer.getInteger("picasso.load.concurrency", 24);
+  private static final int THREADS = Integer.getInteger("picasso.load.threads", 3);
+  private static final int CACHE_KB = Integer.getInteger("picasso.load.cacheKb", 16 * 1024);
+  /** Percentage of images whose server always responds with an error. */
+  private static final int FAILURE_PERCENT = Integer.getInteger("picasso.load.failurePercent", 2);
+  private static final long SEED = Long.getLong("picasso.load.seed", 0);
+
+  /** Response body sizes and how likely an image is to have each of them, in percent. */
+  private static final int[] BODY_SIZES = { 4 * 1024, 32 * 1024, 128 * 1024, 512 * 1024 };
+  private static final int[] BODY_SIZE_PERCENTS = { 40, 30, 20, 10 };
+  /** Decoded bytes per byte of response body, roughly that of a JPEG. */
+  private static final int COMPRESSION_RATIO = 10;
+
+  private final Context context = Robolectric.application;
+
+  /** One server per body size plus one which fails, at index {@code BODY_SIZES.length}. */
+  private final List<MockWebServer> servers = new ArrayList<MockWebServer>();
+  private final List<MockResponse> responses = new ArrayList<MockResponse>();
+  private ExecutorService service;
+
+  @Before public void setUp() throws Exception {
+    for (int size : BODY_SIZES) {
+      byte[] body = new byte[size];
+      new Random(size).nextBytes(body);
+      addServer(new MockResponse().setBody(body));
+    }
+    addServer(new MockResponse().setResponseCode(500));
+    service = Executors.newFixedThreadPool(THREADS, new Utils.PicassoThreadFactory());
+    pauseMainLooper();
+  }
+
+  @After public void tearDown() throws Exception {
+    unPauseMainLooper();
+    service.shutdownNow();
+    for (MockWebServer server : servers) {
+      server.shutdown();
+    }
+  }
+
+  @Test public void run() throws Exception {
+    Random random = new Random(SEED);
+    Uri[] uris = createUris(random);
+    double[] popularity = zipfDistribution(IMAGES, ZIPF_EXPONENT);
+
+    LruCache cache = new LruCache(CACHE_KB * 1024);
+    LoadListener listener = new LoadListener(cache);
+    Picasso picasso = createPicasso(cache, listener);
+
+    long[] latencies = new long[REQUESTS];
+    AtomicInteger done = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    int issued = 0;
+    long start = System.nanoTime();
+    while (done.get() < REQUESTS) {
+      while (issued < REQUESTS && issued - done.get() < CONCURRENCY) {
+        Uri uri = uris[sample(popularity, random)];
+        // Every request gets its own target so that none replaces another.
+        picasso.load(uri).fetch(new LoadTarget(latencies, issued, done, failed));
+        issued++;
+      }
+      runUiThreadTasksIncludingDelayedTasks();
+      listener.samplePeak();
+      if (issued - done.get() >= CONCURRENCY) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    StatsSnapshot snapshot = picasso.getSnapshot();
+    long lookups = snapshot.cacheHits + snapshot.cacheMisses;
+    Arrays.sort(latencies);
+    System.out.println(String.format("Load harness: %d requests of %d images (zipf %.2f), "
+            + "%d in flight, %d threads, %dKB memory cache", REQUESTS, IMAGES, ZIPF_EXPONENT,
+        CONCURRENCY, THREADS, CACHE_KB));
+    System.out.println("  " + HarnessPicasso.DECODE_EXCLUDED);
+    System.out.println(String.format("  Throughput:         %.1f requests/s",
+        REQUESTS * 1e9 / elapsed));
+    System.out.println(String.format("  Latency (ms):       p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+        percentileMillis(latencies, 50), percentileMillis(latencies, 90),
+        percentileMillis(latencies, 99), latencies[latencies.length - 1] / 1e6));
+    System.out.println(String.format("  Cache hit ratio:    %.3f (%d hits, %d misses)",
+        lookups == 0 ? 0 : (double) snapshot.cacheHits / lookups, snapshot.cacheHits,
+        snapshot.cacheMisses));
+    System.out.println(String.format("  Failed requests:    %d", failed.get()));
+    System.out.println(String.format("  Retries:            %d", listener.retries.get()));
+    System.out.println(String.format("  Peak bitmap bytes:  %d", listener.peakBitmapBytes.get()));
+    System.out.println(String.format("  Bytes downloaded:   %d", listener.downloadedBytes.get()));
+  }
+
+  private void addServer(MockResponse response) throws IOException {
+    MockWebServer server = new MockWebServer();
+    server.play();
+    servers.add(server);
+    responses.add(response);
+  }
+
+  /** Assigns each image a server, making every {@code FAILURE_PERCENT}th image fail on average. */
+  private Uri[] createUris(Random random) {
+    Uri[] uris = new Uri[IMAGES];
+    for (int i = 0; i < IMAGES; i++) {
+      int index = BODY_SIZES.length;
+      if (random.nextInt(100) >= FAILURE_PERCENT) {
+        int percent = random.nextInt(100);
+        index = 0;
+        while (percent >= BODY_SIZE_PERCENTS[index]) {
+          percent -= BODY_SIZE_PERCENTS[index];
+          index++;
+        }
+      }
+      uris[i] = Uri.parse(servers.get(index).getUrl("/" + i + ".jpg").toString());
+    }
+    return uris;
+  }
+
+  private Picasso createPicasso(Cache cache, EventListener listener) {
+    Downloader downloader = new UrlConnectionDownloader(context) {
+      @Override protected HttpURLConnection openConnection(Uri uri) throws IOException {
+        // Each server always sends the same response so requests may take them in any order.
+        for (int i = 0; i < servers.size(); i++) {
+          if (servers.get(i).getPort() == uri.getPort()) {
+            servers.get(i).enqueue(responses.get(i));
+          }
+        }
+        return super.openConnection(uri);
+      }
+    };
+    DownloadScheduler scheduler = new DownloadScheduler(service, 0, 0);
+    return HarnessPicasso.create(context, downloader, service, scheduler, cache, listener,
+        new HarnessPicasso.FakeDecoder() {
+          @Override public Bitmap decode(Request request, long bodyLength) {
+            // A 4:3 image holding COMPRESSION_RATIO times as many ARGB_8888 bytes as the body.
+            int width = (int) Math.sqrt(bodyLength * COMPRESSION_RATIO / 4 * 4 / 3);
+            return Bitmap.createBitmap(width, width * 3 / 4, Bitmap.Config.ARGB_8888);
+          }
+        });
+  }
+
+  /** Returns the cumulative probability of each of {@code count} ranks. */
+  private static double[] zipfDistribution(int count, double exponent) {
+    double[] cumulative = new double[count];
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += 1 / Math.pow(i + 1, exponent);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < count; i++) {
+      cumulative[i] /= sum;
+    }
+    return cumulative;
+  }
+
+  private static int sample(double[] cumulative, Random random) {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+  }
+
+  private static double percentileMillis(long[] sorted, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+
+  /** Records the time from making its request until it succeeds or fails for good. */
+  private static final class LoadTarget implements Target {
+    private final long[] latencies;
+    private final int index;
+    private final AtomicInteger done;
+    private final AtomicInteger failed;
+    private final long startNanos = System.nanoTime();
+
+    LoadTarget(long[] latencies, int index, AtomicInteger done, AtomicInteger failed) {
+      this.latencies = latencies;
+      this.index = index;
+      this.done = done;
+      this.failed = failed;
+    }
+
+    @Override public void onSuccess(Bitmap bitmap) {
+      latencies[index] = System.nanoTime() - startNanos;
+      done.incrementAndGet();
+    }
+
+    @Override public void onError() {
+      latencies[index] = System.nanoTime() - startNanos;
+      failed.incrementAndGet();
+      done.incrementAndGet();
+    }
+  }
+
+  /**
+   * Counts retries and tracks the bitmap bytes held by the memory cache plus those decoded for
+   * requests which have not yet been delivered.
+   */
+  private static final class LoadListener extends EventListener {
+    final AtomicInteger retries = new AtomicInteger();
+    final AtomicLong peakBitmapBytes = new AtomicLong();
+    final AtomicLong downloadedBytes = new AtomicLong();
+
+    private final Cache cache;
+    private final ConcurrentMap<Integer, Boolean> submitted =
+        new ConcurrentHashMap<Integer, Boolean>();
+    private final ConcurrentMap<Integer, Long> pendingBytes =
+        new ConcurrentHashMap<Integer, Long>();
+    private final AtomicLong pendingTotal = new AtomicLong();
+
+    LoadListener(Cache cache) {
+      this.cache = cache;
+    }
+
+    @Override public void requestSubmitted(int requestId, Uri uri, long timestampNanos) {
+      if (submitted.putIfAbsent(requestId, Boolean.TRUE) != null) {
+        retries.incrementAndGet();
+      }
+    }
+
+    @Override public void downloadFinished(int requestId, long byteCount, long timestampNanos) {
+      if (byteCount > 0) {
+        downloadedBytes.addAndGet(byteCount);
+      }
+    }
+
+    @Override public void decodeFinished(int requestId, int width, int height, int inSampleSize,
+        long timestampNanos) {
+      long bytes = width * height * 4L;
+      pendingBytes.put(requestId, bytes);
+      pendingTotal.addAndGet(bytes);
+      samplePeak();
+    }
+
+    @Override public void requestDelivered(int requestId, long timestampNanos) {
+      finished(requestId);
+    }
+
+    @Override public void requestFailed(int requestId, long timestampNanos) {
+      finished(requestId);
+    }
+
+    @Override public void requestCancelled(int requestId, long timestampNanos) {
+      finished(requestId);
+    }
+
+    void samplePeak() {
+      long bytes = cache.size() + pendingTotal.get();
+      long peak;
+      while (bytes > (peak = peakBitmapBytes.get())) {
+        if (peakBitmapBytes.compareAndSet(peak, bytes)) {
+          break;
+        }
+      }
+    }
+
+    private void finished(int requestId) {
+      Long bytes = pendingBytes.remove(requestId);
+      if (bytes != null) {
+        pendingTotal.addAndGet(-bytes);
+      }
+      submitted.remove(requestId);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.squareup.picasso;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -52,6 +53,73 @@ public class MarkableInputStreamTest {
     }
   }
 
+  @Test
+  public void unmarkableStreamResetsAcrossSegments() throws Exception {
+    byte[] data = new byte[3 * SegmentPool.SEGMENT_SIZE];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    MarkableInputStream in = new MarkableInputStream(new UnmarkableInputStream(data));
+    assertThat(in.read()).isEqualTo(0);
+    long pos = in.savePosition(2 * SegmentPool.SEGMENT_SIZE);
+
+    byte[] first = new byte[2 * SegmentPool.SEGMENT_SIZE];
+    assertThat(in.read(first)).isEqualTo(first.length);
+    in.reset(pos);
+    byte[] second = new byte[2 * SegmentPool.SEGMENT_SIZE];
+    assertThat(in.read(second)).isEqualTo(second.length);
+    assertThat(second).isEqualTo(first);
+    for (int i = 0; i < first.length; i++) {
+      assertThat(first[i]).isEqualTo(data[i + 1]);
+    }
+
+    // Reading past the limit invalidates the position.
+    assertThat(in.read()).isEqualTo(data[first.length + 1] & 0xff);
+    try {
+      in.reset(pos);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void closeRecyclesSegments() throws Exception {
+    byte[] data = new byte[2 * SegmentPool.SEGMENT_SIZE];
+    MarkableInputStream in = new MarkableInputStream(new UnmarkableInputStream(data));
+    in.savePosition(data.length);
+    assertThat(in.read(new byte[data.length])).isEqualTo(data.length);
+
+    int pooled = SegmentPool.pooledCount();
+    in.close();
+    assertThat(SegmentPool.pooledCount())
+        .isEqualTo(Math.min(pooled + 2, SegmentPool.MAX_POOL_COUNT));
+  }
+
+  @Test
+  public void pooledSegmentsAreNotCountedAsAllocated() throws Exception {
+    byte[] data = new byte[2 * SegmentPool.SEGMENT_SIZE];
+    MarkableInputStream first = new MarkableInputStream(new UnmarkableInputStream(data));
+    first.savePosition(data.length);
+    assertThat(first.read(new byte[data.length])).isEqualTo(data.length);
+    first.close();
+
+    MarkableInputStream second = new MarkableInputStream(new UnmarkableInputStream(data));
+    second.savePosition(data.length);
+    assertThat(second.read(new byte[data.length])).isEqualTo(data.length);
+    assertThat(second.allocatedBytes()).isEqualTo(0);
+    second.close();
+  }
+
+  private static class UnmarkableInputStream extends FilterInputStream {
+    UnmarkableInputStream(byte[] data) {
+      super(new ByteArrayInputStream(data));
+    }
+
+    @Override public boolean markSupported() {
+      return false;
+    }
+  }
+
   private String readBytes(InputStream in, int count) throws IOException {
     byte[] result = new byte[count];
     assertThat(in.read(result)).isEqualTo(count);
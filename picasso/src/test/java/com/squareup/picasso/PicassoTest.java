@@ -18,10 +18,15 @@ package com.squareup.picasso;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.widget.ImageView;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -48,14 +53,20 @@ import static org.fest.assertions.api.Assertions.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -128,13 +139,19 @@ public class PicassoTest {
   private SynchronousExecutorService executor;
   private Downloader downloader;
   private Cache cache;
+  private Cache intermediateCache;
+  private UrlRewriter urlRewriter;
   private Stats stats;
   private Listener listener;
+  private EventListener eventListener;
+  private CacheTraceWriter cacheTrace;
+  private boolean staleWhileRevalidate;
 
   @Before public void setUp() {
     executor = new SynchronousExecutorService();
     downloader = mock(Downloader.class);
     cache = mock(Cache.class);
+    urlRewriter = UrlRewriter.IDENTITY;
     stats = mock(Stats.class);
     listener = mock(Listener.class);
   }
@@ -411,7 +428,7 @@ public class PicassoTest {
 
     Picasso picasso = create(LOADER_ANSWER, NULL_ANSWER);
     Request request =
-        new Request(picasso, URI_1, 0, target, null, null, false, false, 0, errorDrawable);
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, errorDrawable);
     request = spy(request);
     picasso.submit(request);
     executor.flush();
@@ -427,7 +444,8 @@ public class PicassoTest {
 
     Picasso picasso = create(NULL_ANSWER, NULL_ANSWER);
     Request request =
-        new Request(picasso, FILE_1_URL, 0, target, null, null, false, false, 0, errorDrawable);
+        new Request(picasso, FILE_1_URL, 0, target, null, null, false, false,
+            false, 0, errorDrawable);
     request = spy(request);
     picasso.submit(request);
     executor.flush();
@@ -443,7 +461,8 @@ public class PicassoTest {
 
     Picasso picasso = create(NULL_ANSWER, NULL_ANSWER);
     Request request =
-        new Request(picasso, CONTENT_1_URL, 0, target, null, null, false, false, 0, errorDrawable);
+        new Request(picasso, CONTENT_1_URL, 0, target, null, null, false, false,
+            false, 0, errorDrawable);
     request = spy(request);
     picasso.submit(request);
     executor.flush();
@@ -458,7 +477,8 @@ public class PicassoTest {
     Picasso picasso = create(IO_EXCEPTION_ANSWER, BITMAP1_ANSWER);
     ImageView target = mock(ImageView.class);
 
-    Request request = new Request(picasso, URI_1, 0, target, null, null, false, false, 0, null);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null);
     request = spy(request);
 
     retryRequest(picasso, request);
@@ -472,7 +492,8 @@ public class PicassoTest {
     ImageView target = mock(ImageView.class);
 
     Request request =
-        new Request(picasso, Uri.fromFile(FILE_1), 0, target, null, null, false, false, 0, null);
+        new Request(picasso, Uri.fromFile(FILE_1), 0, target, null, null, false, false,
+            false, 0, null);
     request = spy(request);
 
     retryRequest(picasso, request);
@@ -488,7 +509,7 @@ public class PicassoTest {
     ImageView target = mock(ImageView.class);
 
     Request request =
-        new Request(picasso, CONTENT_1_URL, 0, target, null, null, false, false, 0, null);
+        new Request(picasso, CONTENT_1_URL, 0, target, null, null, false, false, false, 0, null);
     request = spy(request);
 
     retryRequest(picasso, request);
@@ -503,7 +524,7 @@ public class PicassoTest {
     ImageView target = mock(ImageView.class);
 
     Request request =
-        new Request(picasso, URI_1, 0, target, null, null, false, false, 0, errorDrawable);
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, errorDrawable);
 
     retryRequest(picasso, request);
     verify(target).setImageDrawable(errorDrawable);
@@ -515,7 +536,8 @@ public class PicassoTest {
     Picasso picasso = create(IO_EXCEPTION_ANSWER, BITMAP1_ANSWER);
     ImageView target = mock(ImageView.class);
 
-    Request request = new Request(picasso, URI_1, 0, target, null, null, false, false, 0, null);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null);
 
     retryRequest(picasso, request);
     assertThat(picasso.targetsToRequests).isEmpty();
@@ -689,7 +711,7 @@ public class PicassoTest {
     transformations.add(resize);
 
     Request request =
-        new Request(picasso, URI_1, 0, target, null, transformations, false, false, 0, null);
+        new Request(picasso, URI_1, 0, target, null, transformations, false, false, false, 0, null);
     picasso.submit(request);
 
     executor.flush();
@@ -740,7 +762,7 @@ public class PicassoTest {
     transformations.add(resize);
 
     Request request =
-        new Request(picasso, URI_1, 0, target, null, transformations, false, false, 0, null);
+        new Request(picasso, URI_1, 0, target, null, transformations, false, false, false, 0, null);
     picasso.submit(request);
 
     executor.flush();
@@ -816,6 +838,33 @@ public class PicassoTest {
     }
   }
 
+  @Test public void builderInvalidCacheTrace() throws Exception {
+    try {
+      new Picasso.Builder(context).cacheTrace(null);
+      fail("Null cache trace should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    CacheTraceWriter cacheTrace = new CacheTraceWriter(new ByteArrayOutputStream());
+    try {
+      new Picasso.Builder(context).cacheTrace(cacheTrace).cacheTrace(cacheTrace);
+      fail("Setting cache trace twice should throw exception.");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test public void builderInvalidSlowRequestLog() throws Exception {
+    try {
+      new Picasso.Builder(context).slowRequestLog(0, 10);
+      fail("Zero threshold should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new Picasso.Builder(context).slowRequestLog(1000, 0);
+      fail("Zero entries should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   @Test public void builderCreatesDefaults() throws Exception {
     Picasso p = new Picasso.Builder(context).build();
     assertThat(p.downloader).isNotNull();
@@ -874,10 +923,274 @@ public class PicassoTest {
     Picasso.applyCustomTransformations(transformations, input);
   }
 
+  @Test public void intermediateResultsAreCachedByPrefix() throws Exception {
+    intermediateCache = mock(Cache.class);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    List<Transformation> transformations = new ArrayList<Transformation>();
+    transformations.add(new TestTransformation("A"));
+    transformations.add(new TestTransformation("B"));
+    Request request = new Request(picasso, URI_1, 0, mock(ImageView.class), null, transformations,
+        false, false, false, 0, null);
+
+    picasso.resolveRequest(request);
+
+    verify(intermediateCache).set(eq(URI_1 + "\n"), any(Bitmap.class));
+    verify(intermediateCache).set(eq(URI_1 + "\nA\n"), any(Bitmap.class));
+    verify(intermediateCache, never()).set(eq(request.key), any(Bitmap.class));
+    verify(cache).set(eq(request.key), any(Bitmap.class));
+  }
+
+  @Test public void longestCachedPrefixIsResumed() throws Exception {
+    intermediateCache = mock(Cache.class);
+    when(intermediateCache.get(URI_1 + "\nA\n")).thenReturn(bitmap1);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    Transformation first = mock(Transformation.class);
+    when(first.key()).thenReturn("A");
+    Bitmap result = Bitmap.createBitmap(10, 10, null);
+    List<Transformation> transformations = new ArrayList<Transformation>();
+    transformations.add(first);
+    transformations.add(new TestTransformation("B", result));
+    Request request = new Request(picasso, URI_1, 0, mock(ImageView.class), null, transformations,
+        false, false, false, 0, null);
+
+    assertThat(picasso.resolveRequest(request)).isSameAs(result);
+    assertThat(request.loadedFrom).isEqualTo(Request.LoadedFrom.MEMORY);
+    assertThat(bitmap1.isRecycled()).isFalse();
+    verify(first, never()).transform(any(Bitmap.class));
+    verify(downloader, never()).load(any(Uri.class), anyBoolean());
+  }
+
+  @Test public void prefixLookupRequiresIntermediateCache() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    List<Transformation> transformations = new ArrayList<Transformation>();
+    transformations.add(new TestTransformation("A"));
+    Request request = new Request(picasso, URI_1, 0, mock(ImageView.class), null, transformations,
+        false, false, false, 0, null);
+
+    picasso.resolveRequest(request);
+
+    verify(cache).get(request.key);
+    verify(cache, never()).get(URI_1 + "\n");
+  }
+
+  @Test public void prefixLookupsAreNotTraced() throws Exception {
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    cacheTrace = new CacheTraceWriter(trace);
+    intermediateCache = mock(Cache.class);
+    when(intermediateCache.get(URI_1 + "\nA\n")).thenReturn(bitmap1);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    List<Transformation> transformations = new ArrayList<Transformation>();
+    transformations.add(new TestTransformation("A"));
+    transformations.add(new TestTransformation("B"));
+    Request request = new Request(picasso, URI_1, 0, mock(ImageView.class), null, transformations,
+        false, false, false, 0, null);
+
+    picasso.resolveRequest(request);
+    cacheTrace.close();
+
+    // The magic number and a single miss for the requested key.
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(trace.toByteArray()));
+    assertThat(in.readInt()).isEqualTo(CacheTraceWriter.MAGIC);
+    assertThat(in.readInt()).isEqualTo(request.key.hashCode());
+    assertThat(in.readInt() & CacheTraceWriter.HIT).isZero();
+    assertThat(in.read()).isEqualTo(-1);
+  }
+
+  @Test public void revalidationsAreNotTraced() throws Exception {
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    cacheTrace = new CacheTraceWriter(trace);
+    staleWhileRevalidate = true;
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    doReturn(new Downloader.Response(null, true, -1, true)).when(picasso)
+        .loadAcceptingStale(URI_1);
+    picasso.load(URI_1).into(mock(ImageView.class));
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+    cacheTrace.close();
+
+    verify(cache, times(2)).set(anyString(), eq(bitmap1));
+    // The magic number and a single miss record.
+    assertThat(trace.size()).isEqualTo(12);
+  }
+
+  @Test public void staleResponseIsDisplayedThenRevalidated() throws Exception {
+    staleWhileRevalidate = true;
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    doReturn(new Downloader.Response(null, true, -1, true)).when(picasso)
+        .loadAcceptingStale(URI_1);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+
+    verify(picasso).loadAcceptingStale(URI_1);
+    verifyZeroInteractions(downloader);
+    verify(target).setImageDrawable(any(PicassoDrawable.class));
+    assertThat(picasso.targetsToRevalidations).hasSize(1);
+
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+
+    verify(downloader).load(URI_1, false);
+    verify(cache, times(2)).set(anyString(), eq(bitmap1));
+    verify(target, times(2)).setImageDrawable(any(PicassoDrawable.class));
+    assertThat(picasso.targetsToRevalidations).isEmpty();
+  }
+
+  @Test public void freshCachedResponseIsNotRevalidated() throws Exception {
+    staleWhileRevalidate = true;
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    doReturn(new Downloader.Response(null, true)).when(picasso).loadAcceptingStale(URI_1);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+
+    verify(target).setImageDrawable(any(PicassoDrawable.class));
+    assertThat(picasso.targetsToRevalidations).isEmpty();
+    assertThat(executor.tasks).isEmpty();
+    verifyZeroInteractions(downloader);
+  }
+
+  @Test public void notModifiedRevalidationLeavesTargetAlone() throws Exception {
+    staleWhileRevalidate = true;
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    doReturn(new Downloader.Response(null, true, -1, true)).when(picasso)
+        .loadAcceptingStale(URI_1);
+    doReturn(new Downloader.Response(null, true)).when(downloader)
+        .load(any(Uri.class), anyBoolean());
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+
+    verify(downloader).load(URI_1, false);
+    verify(cache).set(anyString(), eq(bitmap1));
+    verify(target).setImageDrawable(any(PicassoDrawable.class));
+  }
+
+  @Test public void reusingTargetCancelsRevalidation() throws Exception {
+    staleWhileRevalidate = true;
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    doReturn(new Downloader.Response(null, true, -1, true)).when(picasso)
+        .loadAcceptingStale(URI_1);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+    Request revalidation = picasso.targetsToRevalidations.get(target);
+
+    picasso.cancelRequest(target);
+
+    assertThat(picasso.targetsToRevalidations).isEmpty();
+    assertThat(revalidation.future.isCancelled()).isTrue();
+  }
+
+  @Test public void revalidationIsNotReportedToEventListener() throws Exception {
+    eventListener = mock(EventListener.class);
+    staleWhileRevalidate = true;
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    doReturn(new Downloader.Response(null, true, -1, true)).when(picasso)
+        .loadAcceptingStale(URI_1);
+    picasso.load(URI_1).into(mock(ImageView.class));
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+    executor.flush();
+    runUiThreadTasksIncludingDelayedTasks();
+
+    verify(downloader).load(URI_1, false);
+    InOrder inOrder = inOrder(eventListener);
+    inOrder.verify(eventListener).requestSubmitted(eq(1), eq(URI_1), anyLong());
+    inOrder.verify(eventListener).requestQueued(eq(1), anyLong());
+    inOrder.verify(eventListener).requestStarted(eq(1), anyLong());
+    inOrder.verify(eventListener).cacheMiss(eq(1), anyLong());
+    inOrder.verify(eventListener).downloadStarted(eq(1), anyLong());
+    inOrder.verify(eventListener).downloadFinished(eq(1), eq(-1L), anyLong());
+    inOrder.verify(eventListener).decodeFinished(eq(1), anyInt(), anyInt(), eq(1), anyLong());
+    inOrder.verify(eventListener).requestDelivered(eq(1), anyLong());
+    verifyNoMoreInteractions(eventListener);
+  }
+
+  @Test public void staleResponsesAreNotUsedByDefault() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    picasso.load(URI_1).into(mock(ImageView.class));
+    executor.flush();
+
+    verify(picasso, never()).loadAcceptingStale(any(Uri.class));
+    verify(downloader).load(URI_1, false);
+    assertThat(picasso.targetsToRevalidations).isEmpty();
+  }
+
+  @Test public void rewrittenUrlIsDownloadedAtTargetSize() throws Exception {
+    urlRewriter = mock(UrlRewriter.class);
+    when(urlRewriter.rewrite(URI_1, 100, 50)).thenReturn(URI_2);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    picasso.load(URI_1).resize(100, 50).into(mock(ImageView.class));
+    executor.flush();
+
+    verify(downloader).load(eq(URI_2), anyBoolean());
+    verify(downloader, never()).load(eq(URI_1), anyBoolean());
+    // Cache keys are still created from the requested URL.
+    verify(cache).set(startsWith(URI_1.toString()), eq(bitmap1));
+  }
+
+  @Test public void unresizedUrlIsRewrittenWithZeroSize() throws Exception {
+    urlRewriter = mock(UrlRewriter.class);
+    when(urlRewriter.rewrite(URI_1, 0, 0)).thenReturn(URI_2);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    picasso.load(URI_1).into(mock(ImageView.class));
+    executor.flush();
+
+    verify(downloader).load(eq(URI_2), anyBoolean());
+  }
+
+  @Test public void nullRewrittenUrlRetriesThenErrors() throws Exception {
+    urlRewriter = mock(UrlRewriter.class);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    Request request =
+        spy(new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null));
+
+    retryRequest(picasso, request);
+    verify(picasso, times(3)).retry(request);
+    verify(request).error();
+    verifyZeroInteractions(downloader);
+    assertThat(picasso.targetsToRequests).isEmpty();
+  }
+
+  @Test public void throwingRewriterRetriesThenErrors() throws Exception {
+    urlRewriter = mock(UrlRewriter.class);
+    when(urlRewriter.rewrite(any(Uri.class), anyInt(), anyInt()))
+        .thenThrow(new IllegalStateException());
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    Request request =
+        spy(new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null));
+
+    retryRequest(picasso, request);
+    verify(request).error();
+    verify(listener, times(3)).onImageLoadFailed(eq(picasso), eq(URI_1), any(IOException.class));
+    assertThat(picasso.targetsToRequests).isEmpty();
+  }
+
+  @Test public void localUrisAreNotRewritten() throws Exception {
+    urlRewriter = mock(UrlRewriter.class);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    picasso.load(FILE_1_URL).into(mock(ImageView.class));
+    executor.flush();
+
+    verifyZeroInteractions(urlRewriter);
+  }
+
   @Test public void cancelRequestBeforeExecution() throws Exception {
     Picasso picasso = create(NULL_ANSWER, NULL_ANSWER);
     ImageView target = mock(ImageView.class);
-    Request request = new Request(picasso, URI_1, 0, target, null, null, false, false, 0, null);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null);
     picasso.submit(request);
     assertThat(picasso.targetsToRequests).hasSize(1);
     assertThat(request.future.isCancelled()).isFalse();
@@ -887,6 +1200,40 @@ public class PicassoTest {
     verifyZeroInteractions(target);
   }
 
+  @Test public void cancelRequestDisconnectsInFlightResponse() throws Exception {
+    Picasso picasso = create(NULL_ANSWER, NULL_ANSWER);
+    ImageView target = mock(ImageView.class);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null);
+    picasso.submit(request);
+    Downloader.Response response = mock(Downloader.Response.class);
+    final Thread[] disconnectThread = new Thread[1];
+    doAnswer(new Answer() {
+      @Override public Object answer(InvocationOnMock invocation) throws Throwable {
+        disconnectThread[0] = Thread.currentThread();
+        return null;
+      }
+    }).when(response).disconnect();
+    request.response = response;
+    picasso.cancelRequest(target);
+    verify(response, timeout(1000)).disconnect();
+    assertThat(disconnectThread[0]).isNotSameAs(Thread.currentThread());
+  }
+
+  @Test public void responseIsReleasedAfterDecode() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    Request request = new Request(picasso, URI_1, 0, mock(ImageView.class), null, null, false,
+        false, false, 0, null);
+    picasso.resolveRequest(request);
+    assertThat(request.response).isNull();
+  }
+
+  @Test public void defaultResponseDisconnectClosesStream() throws Exception {
+    InputStream stream = mock(InputStream.class);
+    new Downloader.Response(stream, false).disconnect();
+    verify(stream).close();
+  }
+
   @Test public void cancelTargetRequestBeforeExecution() throws Exception {
     Picasso picasso = create(NULL_ANSWER, NULL_ANSWER);
     Target target = mock(Target.class);
@@ -903,7 +1250,8 @@ public class PicassoTest {
   @Test public void cancelRequestBetweenRetries() throws Exception {
     Picasso picasso = create(IO_EXCEPTION_ANSWER, NULL_ANSWER);
     ImageView target = mock(ImageView.class);
-    Request request = new Request(picasso, URI_1, 0, target, null, null, false, false, 0, null);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null);
     picasso.submit(request);
     assertThat(picasso.targetsToRequests).hasSize(1);
     assertThat(request.future.isCancelled()).isFalse();
@@ -920,7 +1268,8 @@ public class PicassoTest {
   @Test public void cancelRequestAfterResult() throws Exception {
     Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
     ImageView target = mock(ImageView.class);
-    Request request = new Request(picasso, URI_1, 0, target, null, null, false, false, 0, null);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, false, 0, null);
     picasso.submit(request);
     assertThat(picasso.targetsToRequests).hasSize(1);
     pauseMainLooper();
@@ -965,6 +1314,76 @@ public class PicassoTest {
     verify(stats).cacheHit();
   }
 
+  @Test public void completedRequestReportsStageLatencies() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+
+    ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+    verify(stats).requestCompleted(captor.capture());
+    long[] stageNanos = captor.getValue().stageNanos;
+    assertThat(stageNanos[LatencyStats.Stage.QUEUE.ordinal()]).isGreaterThan(0);
+    assertThat(stageNanos[LatencyStats.Stage.NETWORK.ordinal()]).isGreaterThan(0);
+    assertThat(stageNanos[LatencyStats.Stage.DECODE.ordinal()]).isGreaterThan(0);
+    assertThat(stageNanos[LatencyStats.Stage.TRANSFORM.ordinal()]).isEqualTo(0);
+    assertThat(stageNanos[LatencyStats.Stage.DELIVERY.ordinal()]).isGreaterThan(0);
+  }
+
+  @Test public void eventListenerReceivesRequestEventsInOrder() throws Exception {
+    eventListener = mock(EventListener.class);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+
+    InOrder inOrder = inOrder(eventListener);
+    inOrder.verify(eventListener).requestSubmitted(eq(1), eq(URI_1), anyLong());
+    inOrder.verify(eventListener).requestQueued(eq(1), anyLong());
+    inOrder.verify(eventListener).requestStarted(eq(1), anyLong());
+    inOrder.verify(eventListener).cacheMiss(eq(1), anyLong());
+    inOrder.verify(eventListener).downloadStarted(eq(1), anyLong());
+    inOrder.verify(eventListener).downloadFinished(eq(1), eq(-1L), anyLong());
+    inOrder.verify(eventListener).decodeFinished(eq(1), anyInt(), anyInt(), eq(1), anyLong());
+    inOrder.verify(eventListener).requestDelivered(eq(1), anyLong());
+    verifyNoMoreInteractions(eventListener);
+  }
+
+  @Test public void eventListenerReceivesMemoryHitAsDeliveredRequest() throws Exception {
+    eventListener = mock(EventListener.class);
+    when(cache.get(Utils.createKey(URI_1, 0, null, null))).thenReturn(bitmap1);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    picasso.load(URI_1).into(mock(ImageView.class));
+
+    InOrder inOrder = inOrder(eventListener);
+    inOrder.verify(eventListener).requestSubmitted(eq(1), eq(URI_1), anyLong());
+    inOrder.verify(eventListener).cacheHit(eq(1), anyLong());
+    inOrder.verify(eventListener).requestDelivered(eq(1), anyLong());
+    verifyNoMoreInteractions(eventListener);
+  }
+
+  @Test public void eventListenerReceivesCancellation() throws Exception {
+    eventListener = mock(EventListener.class);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    picasso.cancelRequest(target);
+
+    verify(eventListener).requestCancelled(eq(1), anyLong());
+  }
+
+  @Test public void eventListenerReceivesFailure() throws Exception {
+    eventListener = mock(EventListener.class);
+    Picasso picasso = create(LOADER_ANSWER, NULL_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+
+    verify(eventListener).requestFailed(eq(1), anyLong());
+    verify(eventListener, never()).requestDelivered(anyInt(), anyLong());
+    verify(stats).requestFailed();
+  }
+
   @Test public void listenerCalledOnFailure() throws Exception {
     Picasso picasso = create(LOADER_ANSWER, IO_EXCEPTION_ANSWER);
     ImageView target = mock(ImageView.class);
@@ -1005,6 +1424,81 @@ public class PicassoTest {
     verify(picasso).decodeContentStream(any(Uri.class), any(PicassoBitmapOptions.class));
   }
 
+  @Test public void fileUriDecodedFromFileDescriptor() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(FILE_1_URL).into(target);
+    executor.flush();
+
+    verify(picasso).decodeFile(any(Uri.class), any(PicassoBitmapOptions.class));
+    verify(picasso, never()).decodeContentStream(any(Uri.class),
+        any(PicassoBitmapOptions.class));
+  }
+
+  @Test public void progressiveNetworkRequestDecodesProgressively() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).progressive().into(target);
+    executor.flush();
+
+    verify(picasso).decodeProgressiveStream(any(Request.class), any(Downloader.Response.class),
+        any(PicassoBitmapOptions.class));
+    verify(picasso, never()).decodeResponse(any(Request.class), any(Downloader.Response.class),
+        any(PicassoBitmapOptions.class));
+  }
+
+  @Test public void progressivePreviewReachesTargetBeforeFinalImage() throws Exception {
+    Picasso picasso = create(new Answer() {
+      @Override public Object answer(InvocationOnMock invocation) throws Throwable {
+        return new Downloader.Response(new SlowInputStream(64 * 1024, 8 * 1024), false);
+      }
+    }, BITMAP1_ANSWER);
+    doCallRealMethod().when(picasso)
+        .decodeProgressiveStream(any(Request.class), any(Downloader.Response.class),
+            any(PicassoBitmapOptions.class));
+    doReturn(bitmap2).when(picasso)
+        .decodePreview(any(byte[].class), anyInt(), any(BitmapFactory.Options.class));
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).progressive().into(target);
+    executor.flush();
+
+    ArgumentCaptor<PicassoDrawable> captor = ArgumentCaptor.forClass(PicassoDrawable.class);
+    verify(target, atLeastOnce()).setImageDrawable(captor.capture());
+    PicassoDrawable preview = captor.getAllValues().get(0);
+    assertThat(preview.bitmapDrawable.getBitmap()).isEqualTo(bitmap2);
+    assertThat(preview.animating).isFalse();
+    // Previews are attempted at 8KB, 16KB, and 32KB after which the cap is reached.
+    verify(picasso, times(3))
+        .decodePreview(any(byte[].class), anyInt(), any(BitmapFactory.Options.class));
+  }
+
+  @Test public void networkUriDecodedFromResponse() throws Exception {
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    ImageView target = mock(ImageView.class);
+    picasso.load(URI_1).into(target);
+    executor.flush();
+
+    verify(picasso).decodeResponse(any(Request.class), any(Downloader.Response.class),
+        any(PicassoBitmapOptions.class));
+    verify(picasso, never()).decodeStream(any(InputStream.class),
+        any(PicassoBitmapOptions.class));
+  }
+
+  @Test public void previewIsDisplayedWithoutFade() throws Exception {
+    ImageView target = mock(ImageView.class);
+    Picasso picasso = create(LOADER_ANSWER, BITMAP1_ANSWER);
+    Request request =
+        new Request(picasso, URI_1, 0, target, null, null, false, false, true, 0, null);
+    request.previewResult = bitmap2;
+    request.preview();
+
+    ArgumentCaptor<PicassoDrawable> captor = ArgumentCaptor.forClass(PicassoDrawable.class);
+    verify(target).setImageDrawable(captor.capture());
+    PicassoDrawable actualDrawable = captor.getValue();
+    assertThat(actualDrawable.bitmapDrawable.getBitmap()).isEqualTo(bitmap2);
+    assertThat(actualDrawable.animating).isFalse();
+  }
+
   @Test public void outOfMemoryTriggersRetry() throws Exception {
     Picasso picasso = create(LOADER_ANSWER, OOME_ANSWER);
     ImageView target = mock(ImageView.class);
@@ -1015,6 +1509,31 @@ public class PicassoTest {
     verify(picasso).retry(any(Request.class));
   }
 
+  /** Returns a fixed number of bytes per read, letting the preview interval pass between reads. */
+  private static class SlowInputStream extends InputStream {
+    private int remaining;
+    private final int chunk;
+
+    SlowInputStream(int length, int chunk) {
+      this.remaining = length;
+      this.chunk = chunk;
+    }
+
+    @Override public int read() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      SystemClock.sleep(500);
+      int read = Math.min(Math.min(count, chunk), remaining);
+      remaining -= read;
+      return read;
+    }
+  }
+
   private void retryRequest(Picasso picasso, Request request) throws Exception {
     picasso.submit(request);
 
@@ -1025,14 +1544,25 @@ public class PicassoTest {
   }
 
   private Picasso create(Answer loaderAnswer, Answer decoderAnswer) throws IOException {
-    Picasso picasso = new Picasso(context, downloader, executor, cache, listener, stats, false);
+    DownloadScheduler scheduler = new DownloadScheduler(executor, 0, 0);
+    Picasso picasso = new Picasso(context, downloader, executor, scheduler, cache,
+        intermediateCache, urlRewriter, listener, eventListener, cacheTrace, stats,
+        staleWhileRevalidate, false);
     picasso = spy(picasso);
 
     doAnswer(loaderAnswer).when(downloader).load(any(Uri.class), anyBoolean());
     doAnswer(decoderAnswer).when(picasso)
         .decodeContentStream(any(Uri.class), any(PicassoBitmapOptions.class));
+    doAnswer(decoderAnswer).when(picasso)
+        .decodeFile(any(Uri.class), any(PicassoBitmapOptions.class));
     doAnswer(decoderAnswer).when(picasso)
         .decodeStream(any(InputStream.class), any(PicassoBitmapOptions.class));
+    doAnswer(decoderAnswer).when(picasso)
+        .decodeProgressiveStream(any(Request.class), any(Downloader.Response.class),
+            any(PicassoBitmapOptions.class));
+    doAnswer(decoderAnswer).when(picasso)
+        .decodeResponse(any(Request.class), any(Downloader.Response.class),
+            any(PicassoBitmapOptions.class));
     doAnswer(decoderAnswer).when(picasso)
         .decodeResource(any(Resources.class), anyInt(), any(PicassoBitmapOptions.class));
     return picasso;
@@ -17,6 +17,8 @@ package com.squareup.picasso;
 
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -25,9 +27,11 @@ import org.robolectric.shadows.ShadowBitmap;
 import org.robolectric.shadows.ShadowMatrix;
 
 import static android.graphics.Bitmap.Config.ARGB_8888;
+import static com.squareup.picasso.GeometricTransformation.Geometry;
 import static org.fest.assertions.api.ANDROID.assertThat;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Assertions.entry;
+import static org.fest.assertions.api.Assertions.fail;
 import static org.robolectric.Robolectric.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
@@ -284,4 +288,109 @@ public class PicassoTransformTest {
     Bitmap result = Picasso.transformResult(null, source, 0);
     assertThat(result).isSameAs(source).isNotRecycled();
   }
+
+  @Test public void onlyLeadingGeometricTransformationsAreFolded() {
+    assertThat(Picasso.leadingGeometricTransformations(null)).isNull();
+
+    List<Transformation> transformations = new ArrayList<Transformation>();
+    transformations.add(new TestTransformation("foo"));
+    transformations.add(crop(5));
+    assertThat(Picasso.leadingGeometricTransformations(transformations)).isNull();
+
+    transformations.clear();
+    GeometricTransformation first = crop(5);
+    transformations.add(first);
+    transformations.add(new TestTransformation("foo"));
+    transformations.add(crop(2));
+    assertThat(Picasso.leadingGeometricTransformations(transformations)).hasSize(1)
+        .contains(first);
+  }
+
+  @Test public void foldedTransformationsMatchSequentialTransformations() {
+    PicassoBitmapOptions options = new PicassoBitmapOptions();
+    options.targetWidth = 20;
+    options.targetHeight = 10;
+    List<Transformation> geometry = new ArrayList<Transformation>();
+    geometry.add(scale(2));
+    geometry.add(crop(5));
+
+    Bitmap folded =
+        Picasso.transformResult(options, Bitmap.createBitmap(40, 20, ARGB_8888), 0, geometry);
+    Bitmap sequential = Picasso.applyCustomTransformations(geometry,
+        Picasso.transformResult(options, Bitmap.createBitmap(40, 20, ARGB_8888), 0));
+
+    assertThat(folded.getWidth()).isEqualTo(sequential.getWidth());
+    assertThat(folded.getHeight()).isEqualTo(sequential.getHeight());
+  }
+
+  @Test public void foldedGeometryMatrixMatchesSequentialMatrices() {
+    Geometry folded = new Geometry(40, 20);
+    scale(2).apply(folded);
+    crop(5).apply(folded);
+
+    Geometry first = new Geometry(40, 20);
+    scale(2).apply(first);
+    Geometry second = new Geometry(first.width(), first.height());
+    crop(5).apply(second);
+    Matrix sequential = new Matrix(first.matrix);
+    sequential.postConcat(second.matrix);
+
+    assertThat(folded.width()).isEqualTo(second.width());
+    assertThat(folded.height()).isEqualTo(second.height());
+    float[] corners = { 0, 0, 40, 0, 0, 20, 40, 20 };
+    float[] foldedCorners = corners.clone();
+    float[] sequentialCorners = corners.clone();
+    folded.matrix.mapPoints(foldedCorners);
+    sequential.mapPoints(sequentialCorners);
+    assertThat(foldedCorners).isEqualTo(sequentialCorners);
+  }
+
+  @Test public void geometryCropChangesSize() {
+    Geometry geometry = new Geometry(10, 20);
+    geometry.crop(0, 5, 10, 10);
+    assertThat(geometry.width()).isEqualTo(10);
+    assertThat(geometry.height()).isEqualTo(10);
+
+    geometry.crop(2, 2, 4, 6);
+    assertThat(geometry.width()).isEqualTo(4);
+    assertThat(geometry.height()).isEqualTo(6);
+  }
+
+  @Test public void geometryCropOutsideImageThrows() {
+    Geometry geometry = new Geometry(10, 20);
+    try {
+      geometry.crop(5, 0, 10, 10);
+      fail("Crop outside of the image should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      geometry.crop(0, 0, 0, 10);
+      fail("Empty crop should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static GeometricTransformation scale(final float factor) {
+    return new GeometricTransformation() {
+      @Override public void apply(Geometry geometry) {
+        geometry.scale(factor, factor);
+      }
+
+      @Override public String key() {
+        return "scale:" + factor;
+      }
+    };
+  }
+
+  private static GeometricTransformation crop(final int size) {
+    return new GeometricTransformation() {
+      @Override public void apply(Geometry geometry) {
+        geometry.crop(0, 0, size, size);
+      }
+
+      @Override public String key() {
+        return "crop:" + size;
+      }
+    };
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PixelTransformationTest {
+  @Test public void blurAveragesNeighbors() {
+    int[] pixels = new int[] { 0xFF000000, 0xFF000000, 0xFFFFFFFF, 0xFF000000, 0xFF000000 };
+    int[] result = PixelTransformation.filter(new BlurTransformation(1), pixels, new int[5], 5, 1);
+    assertThat(result).isEqualTo(new int[] {
+        0xFF000000, 0xFF555555, 0xFF555555, 0xFF555555, 0xFF000000
+    });
+  }
+
+  @Test public void blurOfUniformImageIsUnchangedAcrossBands() {
+    int width = 7;
+    int height = 512;
+    int[] pixels = new int[width * height];
+    Arrays.fill(pixels, 0xFF336699);
+    int[] result = PixelTransformation.filter(new BlurTransformation(4), pixels.clone(),
+        new int[pixels.length], width, height);
+    assertThat(result).isEqualTo(pixels);
+  }
+
+  @Test public void blurDoesNotSpreadColorOfTransparentPixels() {
+    int[] pixels = new int[] { 0x00FF0000, 0xFF0000FF, 0x00FF0000 };
+    int[] result = PixelTransformation.filter(new BlurTransformation(1), pixels, new int[3], 3, 1);
+    assertThat(result).isEqualTo(new int[] { 0x550000FF, 0x550000FF, 0x550000FF });
+  }
+
+  @Test public void blurRequiresPositiveRadius() {
+    try {
+      new BlurTransformation(0);
+      fail("Zero radius should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void failingBandWaitsForOtherBands() {
+    final AtomicInteger started = new AtomicInteger();
+    final AtomicInteger finished = new AtomicInteger();
+    final CountDownLatch failed = new CountDownLatch(1);
+    int rows = 64 * PixelTransformation.BAND_COUNT;
+    // The first band run by the pool, or the only band.
+    final int failingRow = Math.min(64, rows - 64);
+    PixelTransformation transformation = new PixelTransformation() {
+      @Override protected void filter(int pass, int[] source, int[] destination, int width,
+          int height, int startRow, int endRow) {
+        started.incrementAndGet();
+        if (startRow == failingRow) {
+          failed.countDown();
+          throw new IllegalStateException();
+        }
+        if (startRow != 0) {
+          // The other bands on the pool are still writing when the failure is reported.
+          try {
+            failed.await();
+            Thread.sleep(50);
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+        finished.incrementAndGet();
+      }
+
+      @Override public String key() {
+        return "failing()";
+      }
+    };
+    try {
+      PixelTransformation.filter(transformation, new int[rows], new int[rows], 1, rows);
+      fail("Failing band should throw exception.");
+    } catch (RuntimeException expected) {
+    }
+    assertThat(finished.get()).isEqualTo(started.get() - 1);
+  }
+
+  @Test public void grayscaleUsesLuminance() {
+    int[] pixels = new int[] { 0xFFFFFFFF, 0x80FF0000 };
+    int[] result = PixelTransformation.filter(new GrayscaleTransformation(), pixels, new int[2], 2,
+        1);
+    assertThat(result).isEqualTo(new int[] { 0xFFFFFFFF, 0x80363636 });
+  }
+
+  @Test public void identityColorMatrixLeavesPixelsUnchanged() {
+    float[] identity = new float[] {
+        1, 0, 0, 0, 0, //
+        0, 1, 0, 0, 0, //
+        0, 0, 1, 0, 0, //
+        0, 0, 0, 1, 0
+    };
+    int[] pixels = new int[] { 0x12345678, 0xFFFFFFFF, 0 };
+    int[] result = PixelTransformation.filter(new ColorMatrixTransformation(identity),
+        pixels.clone(), new int[3], 3, 1);
+    assertThat(result).isEqualTo(pixels);
+  }
+
+  @Test public void colorMatrixRequiresTwentyEntries() {
+    try {
+      new ColorMatrixTransformation(new float[19]);
+      fail("Short matrix should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void keysIncludeParameters() {
+    assertThat(new BlurTransformation(3).key()).isEqualTo("blur(3)");
+    assertThat(new GrayscaleTransformation().key()).isEqualTo("grayscale()");
+  }
+}
@@ -19,12 +19,15 @@ import android.R;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.ColorDrawable;
+import android.net.Uri;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
@@ -32,14 +35,19 @@ import org.robolectric.annotation.Config;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Assertions.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
 public class RequestBuilderTest {
+  private static final Uri URI_1 = Uri.parse("http://example.com/1.png");
+
   @Test public void invalidPlaceholderImage() {
     try {
       new RequestBuilder().placeholder(0);
@@ -252,7 +260,9 @@ public class RequestBuilderTest {
 
   @Test public void noImageWithPlaceholderDoesNotSubmitAndSetsPlaceholder() {
     Context context = Robolectric.application;
-    Picasso picasso = spy(new Picasso(context, null, null, null, null, null, false));
+    Picasso picasso =
+        spy(new Picasso(context, null, null, null, null, null, null, null, null, null, null,
+            false, false));
     ImageView target = mock(ImageView.class);
 
     new RequestBuilder(picasso, null, 0).placeholder(R.drawable.ic_dialog_map).into(target);
@@ -261,6 +271,42 @@ public class RequestBuilderTest {
     verify(target).setImageDrawable(any(PicassoDrawable.class));
   }
 
+  @Test public void fitIntoUnmeasuredViewIsDeferred() {
+    Picasso picasso = mock(Picasso.class);
+    ImageView target = mock(ImageView.class);
+    ViewTreeObserver observer = mock(ViewTreeObserver.class);
+    when(target.getViewTreeObserver()).thenReturn(observer);
+
+    new RequestBuilder(picasso, URI_1, 0).fit().into(target);
+
+    verify(picasso).defer(eq(target), any(DeferredRequestCreator.class));
+    verify(observer).addOnPreDrawListener(any(DeferredRequestCreator.class));
+    verify(picasso, never()).submit(any(Request.class));
+  }
+
+  @Test public void fitIntoMeasuredViewResizesImmediately() {
+    Picasso picasso = mock(Picasso.class);
+    ImageView target = mock(ImageView.class);
+    when(target.getWidth()).thenReturn(100);
+    when(target.getHeight()).thenReturn(50);
+
+    new RequestBuilder(picasso, URI_1, 0).fit().into(target);
+
+    ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+    verify(picasso).submit(captor.capture());
+    PicassoBitmapOptions options = captor.getValue().options;
+    assertThat(options.deferredResize).isFalse();
+    assertThat(options.targetWidth).isEqualTo(100);
+    assertThat(options.targetHeight).isEqualTo(50);
+    assertThat(options.inJustDecodeBounds).isTrue();
+    verify(picasso, never()).defer(any(ImageView.class), any(DeferredRequestCreator.class));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fitIntoTargetThrows() {
+    new RequestBuilder(mock(Picasso.class), URI_1, 0).fit().into(mock(Target.class));
+  }
+
   @Test public void noImageWithNullPlaceholderDoesNotSubmitAndClears() {
     Picasso picasso = mock(Picasso.class);
     ImageView target = mock(ImageView.class);
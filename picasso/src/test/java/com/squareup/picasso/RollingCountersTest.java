@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+public class RollingCountersTest {
+  private final RollingCounters counters = new RollingCounters(2);
+
+  @Test public void sumsOnlySecondsWithinWindow() {
+    counters.add(1000, 0, 1);
+    counters.add(1500, 0, 2);
+    counters.add(5000, 0, 4);
+    counters.add(5000, 1, 8);
+
+    assertThat(counters.sum(5999, 1, 0)).isEqualTo(4);
+    assertThat(counters.sum(5999, 5, 0)).isEqualTo(7);
+    assertThat(counters.sum(5999, 5, 1)).isEqualTo(8);
+    assertThat(counters.sum(7000, 2, 0)).isEqualTo(0);
+  }
+
+  @Test public void bucketIsResetWhenRingWrapsAround() {
+    long wrapMillis = RollingCounters.MAX_SECONDS * 1000L;
+    counters.add(3000, 0, 5);
+    counters.add(3000 + wrapMillis, 0, 1);
+
+    assertThat(counters.sum(3000 + wrapMillis, 1, 0)).isEqualTo(1);
+    assertThat(counters.sum(3000 + wrapMillis, RollingCounters.MAX_SECONDS, 0)).isEqualTo(1);
+  }
+
+  @Test public void lateEventForReclaimedBucketIsDropped() {
+    long wrapMillis = RollingCounters.MAX_SECONDS * 1000L;
+    counters.add(3000 + wrapMillis, 0, 1);
+    counters.add(3000, 0, 5);
+
+    assertThat(counters.sum(3000 + wrapMillis, 1, 0)).isEqualTo(1);
+  }
+
+  @Test public void windowLongerThanRingThrows() {
+    try {
+      counters.sum(0, RollingCounters.MAX_SECONDS + 1, 0);
+      fail("Window longer than the ring should throw exception.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
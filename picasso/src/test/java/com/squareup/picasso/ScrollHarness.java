@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.widget.ImageView;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static android.os.Build.VERSION_CODES.GINGERBREAD;
+import static org.robolectric.Robolectric.pauseMainLooper;
+import static org.robolectric.Robolectric.runUiThreadTasksIncludingDelayedTasks;
+import static org.robolectric.Robolectric.unPauseMainLooper;
+
+/**
+ * Simulates flinging through a grid of images the way {@code SampleGridViewAdapter} binds them: a
+ * fixed set of recycled image views is rebound to new URLs as rows scroll into view, usually before
+ * their previous request has finished. It measures
+ * <ul>
+ * <li>the main thread time spent in {@link RequestBuilder#into(ImageView)} per bind,</li>
+ * <li>downloads which were started for requests that were then cancelled,</li>
+ * <li>the time from a bind until its image is displayed, and</li>
+ * <li>stale images, where a visible view shows the image of a URL it is no longer bound to.</li>
+ * </ul>
+ * The results are printed as a single line of JSON with flat keys, and also written to the file
+ * named by {@code picasso.scroll.output} if it is set. The harness is not part of the regular test
+ * run. Run it on its own with:
+ * <pre>
+ * mvn test -pl picasso -Dtest=ScrollHarness
+ * </pre>
+ * Like {@link LoadHarness}, decode cost is excluded since {@link HarnessPicasso} replaces responses
+ * with bitmaps without a codec, which the results state with {@code "decodeExcluded":true}. The
+ * settings can be changed with the system properties below. The network is slowed down with
+ * Picasso's own bandwidth limit.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, reportSdk = GINGERBREAD)
+public class ScrollHarness {
+  /** The number of recycled views. One more row of them than fits on screen is kept. */
+  private static final int VIEWS = Integer.getInteger("picasso.scroll.views", 15);
+  private static final int COLUMNS = Integer.getInteger("picasso.scroll.columns", 3);
+  /** The number of distinct URLs. Like the sample, the grid shows each of them three times. */
+  private static final int URLS = Integer.getInteger("picasso.scroll.urls", 200);
+  private static final int REPEATS = 3;
+  private static final int ROW_HEIGHT_PX = 240;
+  private static final int VELOCITY_PX_PER_SECOND =
+      Integer.getInteger("picasso.scroll.velocity", 6000);
+  private static final int BODY_BYTES = Integer.getInteger("picasso.scroll.bodyBytes", 48 * 1024);
+  private static final long BYTES_PER_SECOND =
+      Long.getLong("picasso.scroll.bytesPerSecond", 2 * 1024 * 1024);
+  private static final int THREADS = Integer.getInteger("picasso.scroll.threads", 3);
+  private static final int CACHE_KB = Integer.getInteger("picasso.scroll.cacheKb", 8 * 1024);
+  /** Without a placeholder a recycled view keeps showing its previous image until the next. */
+  private static final boolean PLACEHOLDER =
+      Boolean.parseBoolean(System.getProperty("picasso.scroll.placeholder", "true"));
+  private static final long SETTLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+  private final Context context = Robolectric.application;
+  /** The URL each decoded or transformed bitmap was loaded for. */
+  private final Map<Bitmap, Uri> bitmapUris =
+      Collections.synchronizedMap(new IdentityHashMap<Bitmap, Uri>());
+
+  private MockWebServer server;
+  private MockResponse response;
+  private ExecutorService service;
+
+  @Before public void setUp() throws Exception {
+    byte[] body = new byte[BODY_BYTES];
+    new Random(0).nextBytes(body);
+    response = new MockResponse().setBody(body);
+    server = new MockWebServer();
+    server.play();
+    service = Executors.newFixedThreadPool(THREADS, new Utils.PicassoThreadFactory());
+    pauseMainLooper();
+  }
+
+  @After public void tearDown() throws Exception {
+    unPauseMainLooper();
+    service.shutdownNow();
+    server.shutdown();
+  }
+
+  @Test public void run() throws Exception {
+    Uri[] items = new Uri[URLS * REPEATS];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = Uri.parse(server.getUrl("/" + i % URLS + ".jpg").toString());
+    }
+    ScrollListener listener = new ScrollListener();
+    Picasso picasso = createPicasso(new LruCache(CACHE_KB * 1024), listener);
+    Transformation cropSquare = new CropSquareTransformation();
+    Drawable placeholder = new ColorDrawable(0xFFCCCCCC);
+
+    SimulatedView[] views = new SimulatedView[VIEWS];
+    for (int i = 0; i < VIEWS; i++) {
+      views[i] = new SimulatedView(context);
+    }
+    int visibleRows = VIEWS / COLUMNS - 1;
+    int rows = (items.length + COLUMNS - 1) / COLUMNS;
+    long maxOffset = (long) (rows - visibleRows) * ROW_HEIGHT_PX;
+
+    long[] bindNanos = new long[items.length];
+    long[] displayNanos = new long[items.length];
+    int binds = 0;
+    int displayed = 0;
+    long staleViewFrames = 0;
+    int frames = 0;
+
+    long start = System.nanoTime();
+    long nextFrame = start;
+    long settleDeadline = 0;
+    while (true) {
+      long now = System.nanoTime();
+      if (now >= nextFrame) {
+        frames++;
+        nextFrame += FRAME_NANOS;
+        long offset = Math.min(maxOffset, (now - start) * VELOCITY_PX_PER_SECOND / 1000000000L);
+        int firstRow = (int) (offset / ROW_HEIGHT_PX);
+        int lastRow = Math.min(rows - 1, (int) ((offset + visibleRows * ROW_HEIGHT_PX - 1)
+            / ROW_HEIGHT_PX));
+        for (int position = firstRow * COLUMNS;
+            position < Math.min(items.length, (lastRow + 1) * COLUMNS); position++) {
+          SimulatedView view = views[position % VIEWS];
+          if (view.position != position) {
+            // The adapter's getView for a recycled view.
+            view.bind(position, items[position]);
+            long bindStart = System.nanoTime();
+            RequestBuilder builder = picasso.load(items[position]);
+            if (PLACEHOLDER) {
+              builder.placeholder(placeholder);
+            }
+            builder.transform(cropSquare).into(view);
+            bindNanos[binds++] = System.nanoTime() - bindStart;
+          }
+          Uri shown = view.displayedUri();
+          if (shown != null && !shown.equals(view.uri)) {
+            staleViewFrames++;
+            view.stale = true;
+          }
+        }
+        if (offset == maxOffset && settleDeadline == 0) {
+          settleDeadline = now + SETTLE_NANOS;
+        }
+      }
+
+      runUiThreadTasksIncludingDelayedTasks();
+      boolean settled = true;
+      for (SimulatedView view : views) {
+        if (view.position == -1 || view.displayed) {
+          continue;
+        }
+        if (view.uri.equals(view.displayedUri())) {
+          view.displayed = true;
+          displayNanos[displayed++] = System.nanoTime() - view.bindNanos;
+        } else {
+          settled = false;
+        }
+      }
+      if (settleDeadline != 0 && (settled || now > settleDeadline)) {
+        break;
+      }
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+
+    int staleBinds = 0;
+    for (SimulatedView view : views) {
+      staleBinds += view.staleBinds + (view.stale ? 1 : 0);
+    }
+    long[] bindTimes = Arrays.copyOf(bindNanos, binds);
+    long[] displayTimes = Arrays.copyOf(displayNanos, displayed);
+    Arrays.sort(bindTimes);
+    Arrays.sort(displayTimes);
+
+    Map<String, Object> results = new LinkedHashMap<String, Object>();
+    results.put("views", VIEWS);
+    results.put("columns", COLUMNS);
+    results.put("urls", URLS);
+    results.put("velocityPxPerSecond", VELOCITY_PX_PER_SECOND);
+    results.put("bytesPerSecond", BYTES_PER_SECOND);
+    results.put("placeholder", PLACEHOLDER ? 1 : 0);
+    results.put("decodeExcluded", true);
+    results.put("frames", frames);
+    results.put("binds", binds);
+    putPercentiles(results, "bindMicros", bindTimes, 1000);
+    results.put("displayed", displayed);
+    putPercentiles(results, "bindToDisplayMillis", displayTimes, 1000000);
+    synchronized (listener) {
+      results.put("downloads", listener.downloads);
+      results.put("cancelled", listener.cancelled);
+      results.put("wastedDownloads", listener.wastedDownloads);
+      results.put("wastedBytes", listener.wastedBytes);
+    }
+    results.put("staleViewFrames", staleViewFrames);
+    results.put("staleBinds", staleBinds);
+    report(toJson(results));
+  }
+
+  private Picasso createPicasso(Cache cache, EventListener listener) {
+    Downloader downloader = new UrlConnectionDownloader(context) {
+      @Override protected HttpURLConnection openConnection(Uri uri) throws IOException {
+        // The server always sends the same response so requests may take them in any order.
+        server.enqueue(response);
+        return super.openConnection(uri);
+      }
+    };
+    DownloadScheduler scheduler = new DownloadScheduler(service, 0, BYTES_PER_SECOND);
+    return HarnessPicasso.create(context, downloader, service, scheduler, cache, listener,
+        new HarnessPicasso.FakeDecoder() {
+          @Override public Bitmap decode(Request request, long bodyLength) {
+            Bitmap bitmap = Bitmap.createBitmap(640, 480, Bitmap.Config.ARGB_8888);
+            bitmapUris.put(bitmap, request.uri);
+            return bitmap;
+          }
+        });
+  }
+
+  private static void putPercentiles(Map<String, Object> results, String name, long[] sorted,
+      long divisor) {
+    if (sorted.length == 0) {
+      return;
+    }
+    for (int percentile : new int[] { 50, 90, 99 }) {
+      int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+      results.put(name + ".p" + percentile, (double) sorted[index] / divisor);
+    }
+    results.put(name + ".max", (double) sorted[sorted.length - 1] / divisor);
+  }
+
+  private static String toJson(Map<String, Object> results) {
+    StringBuilder json = new StringBuilder("{");
+    for (Map.Entry<String, Object> entry : results.entrySet()) {
+      if (json.length() > 1) {
+        json.append(',');
+      }
+      json.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+    }
+    return json.append('}').toString();
+  }
+
+  private static void report(String json) throws IOException {
+    System.out.println(json);
+    String output = System.getProperty("picasso.scroll.output");
+    if (output != null) {
+      Writer writer = new FileWriter(output);
+      try {
+        writer.write(json);
+        writer.write('\n');
+      } finally {
+        writer.close();
+      }
+    }
+  }
+
+  /** A recycled grid cell which remembers what it is bound to. */
+  private final class SimulatedView extends ImageView {
+    int position = -1;
+    Uri uri;
+    long bindNanos;
+    boolean displayed;
+    boolean stale;
+    int staleBinds;
+
+    SimulatedView(Context context) {
+      super(context);
+    }
+
+    void bind(int position, Uri uri) {
+      if (stale) {
+        staleBinds++;
+      }
+      this.position = position;
+      this.uri = uri;
+      this.bindNanos = System.nanoTime();
+      this.displayed = false;
+      this.stale = false;
+    }
+
+    /** Returns the URL of the image being shown, or {@code null} for none or the placeholder. */
+    Uri displayedUri() {
+      Drawable drawable = getDrawable();
+      if (!(drawable instanceof PicassoDrawable)) {
+        return null;
+      }
+      BitmapDrawable bitmapDrawable = ((PicassoDrawable) drawable).bitmapDrawable;
+      return bitmapDrawable != null ? bitmapUris.get(bitmapDrawable.getBitmap()) : null;
+    }
+  }
+
+  /** Crops the middle square of an image like the sample's transformation of the same name. */
+  private final class CropSquareTransformation implements Transformation {
+    @Override public Bitmap transform(Bitmap source) {
+      int size = Math.min(source.getWidth(), source.getHeight());
+      int x = (source.getWidth() - size) / 2;
+      int y = (source.getHeight() - size) / 2;
+      Bitmap result = Bitmap.createBitmap(source, x, y, size, size);
+      if (result != source) {
+        bitmapUris.put(result, bitmapUris.remove(source));
+        source.recycle();
+      }
+      return result;
+    }
+
+    @Override public String key() {
+      return "square()";
+    }
+  }
+
+  /** Counts downloads, and those which were started for requests which were then cancelled. */
+  private static final class ScrollListener extends EventListener {
+    int downloads;
+    int cancelled;
+    int wastedDownloads;
+    long wastedBytes;
+
+    /** Bytes read for each request which has started downloading, or -1 until it finishes. */
+    private final Map<Integer, Long> downloading = new HashMap<Integer, Long>();
+    /** Cancelled requests whose body was still being read. */
+    private final Set<Integer> abandoned = new HashSet<Integer>();
+
+    @Override public synchronized void downloadStarted(int requestId, long timestampNanos) {
+      downloads++;
+      downloading.put(requestId, -1L);
+    }
+
+    @Override public synchronized void downloadFinished(int requestId, long byteCount,
+        long timestampNanos) {
+      if (abandoned.remove(requestId)) {
+        wastedBytes += Math.max(0, byteCount);
+      } else {
+        downloading.put(requestId, Math.max(0, byteCount));
+      }
+    }
+
+    @Override public synchronized void requestDelivered(int requestId, long timestampNanos) {
+      downloading.remove(requestId);
+    }
+
+    @Override public synchronized void requestFailed(int requestId, long timestampNanos) {
+      downloading.remove(requestId);
+    }
+
+    @Override public synchronized void requestCancelled(int requestId, long timestampNanos) {
+      cancelled++;
+      Long bytes = downloading.remove(requestId);
+      if (bytes == null) {
+        return;
+      }
+      wastedDownloads++;
+      if (bytes == -1) {
+        // Its bytes are counted once the body has been abandoned.
+        abandoned.add(requestId);
+      } else {
+        wastedBytes += bytes;
+      }
+    }
+  }
+}
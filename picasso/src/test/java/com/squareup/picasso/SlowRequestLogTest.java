@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SlowRequestLogTest {
+  private static final long SECOND_NANOS = 1000000000L;
+
+  private final SlowRequestLog log = new SlowRequestLog(1000, 2);
+
+  @Test public void onlyRequestsOverThresholdAreSlow() {
+    assertThat(log.isSlow(SECOND_NANOS - 1)).isFalse();
+    assertThat(log.isSlow(SECOND_NANOS)).isTrue();
+  }
+
+  @Test public void keepsSlowestRequestsSlowestFirst() {
+    log.add(request("a"), 2 * SECOND_NANOS, 0);
+    log.add(request("b"), 5 * SECOND_NANOS, 0);
+    log.add(request("c"), 1 * SECOND_NANOS, 0);
+    log.add(request("d"), 3 * SECOND_NANOS, 0);
+
+    List<SlowRequest> entries = log.snapshot(0);
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).uri.getPath()).isEqualTo("/b");
+    assertThat(entries.get(0).duration).isEqualTo(5000000);
+    assertThat(entries.get(1).uri.getPath()).isEqualTo("/d");
+  }
+
+  @Test public void previousWindowIsKeptUntilItExpires() {
+    log.add(request("a"), 2 * SECOND_NANOS, 0);
+    long window = SlowRequestLog.WINDOW_MILLIS;
+    log.add(request("b"), 3 * SECOND_NANOS, window);
+    log.add(request("c"), 4 * SECOND_NANOS, window);
+
+    List<SlowRequest> entries = log.snapshot(window);
+    assertThat(entries).hasSize(3);
+    assertThat(entries.get(0).uri.getPath()).isEqualTo("/c");
+    assertThat(entries.get(2).uri.getPath()).isEqualTo("/a");
+
+    assertThat(log.snapshot(2 * window)).hasSize(2);
+    assertThat(log.snapshot(4 * window)).isEmpty();
+  }
+
+  @Test public void entryHasRequestContext() {
+    Request request = request("a");
+    request.loadedFrom = Request.LoadedFrom.NETWORK;
+    request.retryCount = Request.DEFAULT_RETRY_COUNT - 1;
+    request.stageNanos[LatencyStats.Stage.NETWORK.ordinal()] = 1500000L;
+    request.sourceWidth = 400;
+    request.sourceHeight = 300;
+    request.inSampleSize = 2;
+    log.add(request, 2 * SECOND_NANOS, 0);
+
+    SlowRequest entry = log.snapshot(0).get(0);
+    assertThat(entry.key).isEqualTo(request.key);
+    assertThat(entry.loadedFrom).isEqualTo("NETWORK");
+    assertThat(entry.retryCount).isEqualTo(1);
+    assertThat(entry.stageDurations.get(LatencyStats.Stage.NETWORK)).isEqualTo(1500L);
+    assertThat(entry.sourceWidth).isEqualTo(400);
+    assertThat(entry.sourceHeight).isEqualTo(300);
+    assertThat(entry.inSampleSize).isEqualTo(2);
+  }
+
+  private static Request request(String path) {
+    return new Request(mock(Picasso.class), Uri.parse("http://example.com/" + path), 0, null,
+        null, null, false, false, false, 0, null);
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class StatsTest {
+  private Stats stats;
+
+  @Before public void setUp() {
+    Cache cache = mock(Cache.class);
+    DownloadScheduler scheduler = new DownloadScheduler(mock(ExecutorService.class), 0, 0);
+    stats = new Stats(cache, null, scheduler);
+  }
+
+  @Test public void eventsAreVisibleToNextSnapshot() {
+    stats.cacheHit();
+    stats.cacheHit();
+    stats.cacheMiss();
+    stats.bitmapDecoded(bitmap(100));
+    stats.bitmapDecoded(bitmap(300));
+    stats.bitmapTransformed(bitmap(50));
+
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.cacheHits).isEqualTo(2);
+    assertThat(snapshot.cacheMisses).isEqualTo(1);
+    assertThat(snapshot.originalBitmapCount).isEqualTo(2);
+    assertThat(snapshot.totalOriginalBitmapSize).isEqualTo(400);
+    assertThat(snapshot.averageOriginalBitmapSize).isEqualTo(200);
+    assertThat(snapshot.transformedBitmapCount).isEqualTo(1);
+    assertThat(snapshot.averageTransformedBitmapSize).isEqualTo(50);
+  }
+
+  @Test public void emptySnapshotHasNoAverages() {
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.averageOriginalBitmapSize).isEqualTo(0);
+    assertThat(snapshot.averageTransformedBitmapSize).isEqualTo(0);
+    assertThat(snapshot.stageLatenciesByLoadedFrom).isEmpty();
+  }
+
+  @Test public void completedRequestsAreGroupedByLoadedFrom() {
+    Request request = new Request(mock(Picasso.class), Uri.parse("http://example.com/1.png"), 0,
+        null, null, null, false, false, false, 0, null);
+    request.loadedFrom = Request.LoadedFrom.NETWORK;
+    request.stageNanos[LatencyStats.Stage.NETWORK.ordinal()] = 5000000L;
+
+    stats.requestCompleted(request);
+
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.stageLatencies.get(LatencyStats.Stage.NETWORK).count).isEqualTo(1);
+    assertThat(snapshot.stageLatencies.get(LatencyStats.Stage.DECODE).count).isEqualTo(0);
+    assertThat(snapshot.stageLatenciesByLoadedFrom).containsKey("NETWORK");
+    assertThat(snapshot.stageLatenciesByLoadedFrom.get("NETWORK") //
+        .get(LatencyStats.Stage.NETWORK).max).isEqualTo(5000);
+  }
+
+  @Test public void allocationsAreChargedToRequestAndTransformationChain() {
+    List<Transformation> transformations = Arrays.<Transformation>asList( //
+        new TestTransformation("blur"), new TestTransformation("gray"));
+    Request request = new Request(mock(Picasso.class), Uri.parse("http://example.com/1.png"), 0,
+        null, null, transformations, false, false, false, 0, null);
+
+    stats.bytesAllocated(request, 1000);
+    stats.bytesAllocated(request, 400);
+    stats.bytesRecycled(request, 1000);
+
+    assertThat(request.allocatedBytes).isEqualTo(1400);
+    assertThat(request.recycledBytes).isEqualTo(1000);
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.totalAllocatedBytes).isEqualTo(1400);
+    assertThat(snapshot.totalRecycledBytes).isEqualTo(1000);
+    assertThat(snapshot.allocatedBytesByTransformation).containsKey("[blur, gray]");
+    assertThat(snapshot.allocatedBytesByTransformation.get("[blur, gray]")).isEqualTo(1400);
+  }
+
+  @Test public void transformationChainsBeyondLimitOnlyCountTowardsTotal() {
+    for (int i = 0; i <= Stats.MAX_TRANSFORMATION_KEYS; i++) {
+      List<Transformation> transformations =
+          Arrays.<Transformation>asList(new TestTransformation("t" + i));
+      Request request = new Request(mock(Picasso.class), Uri.parse("http://example.com/1.png"),
+          0, null, null, transformations, false, false, false, 0, null);
+      stats.bytesAllocated(request, 10);
+    }
+
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.totalAllocatedBytes).isEqualTo(10 * (Stats.MAX_TRANSFORMATION_KEYS + 1));
+    assertThat(snapshot.allocatedBytesByTransformation).hasSize(Stats.MAX_TRANSFORMATION_KEYS);
+  }
+
+  @Test public void originalConstructorLeavesNewStatsEmpty() {
+    StatsSnapshot snapshot = new StatsSnapshot(100, 50, 3, 1, 400, 50, 200, 50, 2, 1, 1234);
+    assertThat(snapshot.cacheHits).isEqualTo(3);
+    assertThat(snapshot.timeStamp).isEqualTo(1234);
+    assertThat(snapshot.hostStats).isEmpty();
+    assertThat(snapshot.stageLatencies).isEmpty();
+    assertThat(snapshot.totalAllocatedBytes).isZero();
+    assertThat(snapshot.allocatedBytesByTransformation).isEmpty();
+  }
+
+  @Test public void snapshotReportsRollingWindows() {
+    stats.cacheHit();
+    stats.cacheHit();
+    stats.cacheHit();
+    stats.cacheMiss();
+    stats.requestFailed();
+    stats.requestCompleted(completedRequest());
+
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.windows.keySet()).containsOnly("1m", "5m", "15m");
+    WindowStats window = snapshot.windows.get("1m");
+    assertThat(window.hitRatio).isEqualTo(0.75);
+    assertThat(window.errorRate).isEqualTo(0.5);
+    assertThat(snapshot.failedRequestCount).isEqualTo(1);
+    assertThat(snapshot.completedRequestCount).isEqualTo(1);
+  }
+
+  @Test public void diffReportsActivityBetweenSnapshots() {
+    stats.cacheHit();
+    StatsSnapshot previous = stats.createSnapshot();
+    stats.cacheMiss();
+    stats.bitmapDecoded(bitmap(100));
+    stats.requestCompleted(completedRequest());
+    StatsSnapshot current = stats.createSnapshot();
+
+    WindowStats diff = current.diff(previous);
+    assertThat(diff.cacheHits).isEqualTo(0);
+    assertThat(diff.cacheMisses).isEqualTo(1);
+    assertThat(diff.hitRatio).isEqualTo(0);
+    assertThat(diff.decodeCount).isEqualTo(1);
+    assertThat(diff.decodedBytes).isEqualTo(100);
+    assertThat(diff.completedCount).isEqualTo(1);
+    assertThat(diff.errorRate).isEqualTo(0);
+  }
+
+  @Test public void mapHasFlatKeys() {
+    stats.cacheHit();
+    stats.requestCompleted(completedRequest());
+
+    Map<String, Number> map = stats.createSnapshot().toMap();
+    assertThat(map.get("cache.hits")).isEqualTo(1L);
+    assertThat(map.get("request.completed")).isEqualTo(1L);
+    assertThat(map.get("latency.NETWORK.count")).isEqualTo(1L);
+    assertThat(map.get("latency.NETWORK.NETWORK.max")).isEqualTo(5000L);
+    assertThat(map.get("window.15m.hitRatio")).isEqualTo(1.0);
+  }
+
+  @Test public void slowRequestsAreIncludedInSnapshot() {
+    Request fast = completedRequest();
+    fast.firstSubmittedNanos = System.nanoTime();
+    Request slow = completedRequest();
+    slow.firstSubmittedNanos = System.nanoTime() - 2000000000L;
+
+    stats.requestCompleted(fast);
+    stats.requestCompleted(slow);
+
+    StatsSnapshot snapshot = stats.createSnapshot();
+    assertThat(snapshot.slowRequests).hasSize(1);
+    assertThat(snapshot.slowRequests.get(0).duration).isGreaterThanOrEqualTo(2000000);
+  }
+
+  private static Request completedRequest() {
+    Request request = new Request(mock(Picasso.class), Uri.parse("http://example.com/1.png"), 0,
+        null, null, null, false, false, false, 0, null);
+    request.loadedFrom = Request.LoadedFrom.NETWORK;
+    request.stageNanos[LatencyStats.Stage.NETWORK.ordinal()] = 5000000L;
+    return request;
+  }
+
+  private static Bitmap bitmap(int bytes) {
+    Bitmap bitmap = mock(Bitmap.class);
+    when(bitmap.getByteCount()).thenReturn(bytes);
+    when(bitmap.getRowBytes()).thenReturn(bytes);
+    when(bitmap.getHeight()).thenReturn(1);
+    return bitmap;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StripedCounterTest {
+  @Test public void sumsAdditionsFromManyThreads() throws Exception {
+    final StripedCounter counter = new StripedCounter();
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          for (int j = 0; j < 10000; j++) {
+            counter.increment();
+          }
+          counter.add(5);
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(counter.sum()).isEqualTo(8 * 10005);
+  }
+
+  @Test public void cellCountIsPowerOfTwo() {
+    assertThat(StripedCounter.cellCount(1)).isEqualTo(2);
+    assertThat(StripedCounter.cellCount(3)).isEqualTo(4);
+    assertThat(StripedCounter.cellCount(8)).isEqualTo(8);
+    assertThat(StripedCounter.cellCount(64)).isEqualTo(16);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.picasso;
+
+import android.net.Uri;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TraceEventWriterTest {
+  @Test public void writesRequestTimeline() {
+    StringWriter out = new StringWriter();
+    TraceEventWriter writer = new TraceEventWriter(out);
+    writer.requestSubmitted(1, Uri.parse("http://example.com/a.png"), 1000000);
+    writer.requestQueued(1, 2000000);
+    writer.requestStarted(1, 5000000);
+    writer.cacheMiss(1, 5500000);
+    writer.downloadStarted(1, 6000000);
+    writer.downloadFinished(1, 2048, 9000000);
+    writer.decodeFinished(1, 100, 50, 2, 9500000);
+    writer.requestDelivered(1, 12000000);
+    writer.close();
+
+    String trace = out.toString();
+    assertThat(trace.trim()).startsWith("[").endsWith("]");
+    assertThat(trace).contains("\"ph\":\"M\",\"pid\":1,\"tid\":1,"
+        + "\"args\":{\"name\":\"http://example.com/a.png\"}");
+    assertThat(trace).contains("{\"name\":\"queued\",\"cat\":\"picasso\",\"ph\":\"X\","
+        + "\"ts\":2000,\"dur\":3000,\"pid\":1,\"tid\":1}");
+    assertThat(trace).contains("{\"name\":\"cache miss\",\"cat\":\"picasso\",\"ph\":\"i\","
+        + "\"s\":\"t\",\"ts\":5500,\"pid\":1,\"tid\":1}");
+    assertThat(trace).contains("\"name\":\"download\",\"cat\":\"picasso\",\"ph\":\"X\","
+        + "\"ts\":6000,\"dur\":3000,\"pid\":1,\"tid\":1,\"args\":{\"bytes\":2048}}");
+    assertThat(trace).contains("\"args\":{\"width\":100,\"height\":50,\"inSampleSize\":2}");
+    assertThat(trace).contains("\"name\":\"request\",\"cat\":\"picasso\",\"ph\":\"X\","
+        + "\"ts\":1000,\"dur\":11000,\"pid\":1,\"tid\":1,\"args\":{\"outcome\":\"delivered\"}}");
+  }
+
+  @Test public void retriedRequestKeepsFirstSubmission() {
+    StringWriter out = new StringWriter();
+    TraceEventWriter writer = new TraceEventWriter(out);
+    writer.requestSubmitted(1, Uri.parse("http://example.com/a.png"), 1000000);
+    writer.requestSubmitted(1, Uri.parse("http://example.com/a.png"), 4000000);
+    writer.requestFailed(1, 5000000);
+    writer.close();
+
+    assertThat(out.toString()).contains("\"ts\":1000,\"dur\":4000,\"pid\":1,\"tid\":1,"
+        + "\"args\":{\"outcome\":\"failed\"}");
+  }
+
+  @Test public void quoteEscapesJson() {
+    assertThat(TraceEventWriter.quote("a\"b\\c\n")).isEqualTo("\"a\\\"b\\\\c\\u000a\"");
+  }
+}
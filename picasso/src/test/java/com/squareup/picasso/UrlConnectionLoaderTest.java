@@ -20,8 +20,11 @@ import android.net.Uri;
 import com.google.mockwebserver.MockResponse;
 import com.google.mockwebserver.MockWebServer;
 import com.google.mockwebserver.RecordedRequest;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.util.Arrays;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,6 +34,7 @@ import org.robolectric.annotation.Config;
 
 import static android.os.Build.VERSION_CODES.GINGERBREAD;
 import static android.os.Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+import static com.google.mockwebserver.SocketPolicy.DISCONNECT_AT_END;
 import static com.squareup.picasso.UrlConnectionDownloader.RESPONSE_SOURCE;
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -38,6 +42,14 @@ import static org.fest.assertions.api.Assertions.assertThat;
 @Config(manifest = Config.NONE)
 public class UrlConnectionLoaderTest {
   private static final Uri URL = Uri.parse("/bees.gif");
+  private static final Uri RESUMABLE_URL = Uri.parse("/resumable.gif");
+  private static final byte[] BODY = new byte[100];
+
+  static {
+    for (int i = 0; i < BODY.length; i++) {
+      BODY[i] = (byte) i;
+    }
+  }
 
   private MockWebServer server;
   private UrlConnectionDownloader loader;
@@ -94,6 +106,37 @@ public class UrlConnectionLoaderTest {
     assertThat(request2.getHeader("Cache-Control")).isEqualTo("only-if-cached");
   }
 
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void staleLoadAcceptsAnyAge() throws Exception {
+    server.enqueue(new MockResponse());
+    loader.load(URL, true, true);
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Cache-Control")) //
+        .isEqualTo("only-if-cached,max-stale=" + Integer.MAX_VALUE);
+  }
+
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void staleNetworkLoadAcceptsAnyAge() throws Exception {
+    server.enqueue(new MockResponse());
+    loader.load(URL, false, true);
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Cache-Control")).isEqualTo("max-stale=" + Integer.MAX_VALUE);
+  }
+
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void staleWarningMarksCachedResponseStale() throws Exception {
+    server.enqueue(new MockResponse().addHeader(RESPONSE_SOURCE, "CACHE 200"));
+    Downloader.Response fresh = loader.load(URL, false, true);
+    assertThat(fresh.cached).isTrue();
+    assertThat(fresh.stale).isFalse();
+
+    server.enqueue(new MockResponse().addHeader(RESPONSE_SOURCE, "CACHE 200")
+        .addHeader("Warning", "110 HttpURLConnection \"Response is stale\""));
+    Downloader.Response stale = loader.load(URL, false, true);
+    assertThat(stale.cached).isTrue();
+    assertThat(stale.stale).isTrue();
+  }
+
   @Config(reportSdk = GINGERBREAD)
   @Test public void responseSourceHeaderSetsResponseValue() throws Exception {
     server.enqueue(new MockResponse());
@@ -104,4 +147,91 @@ public class UrlConnectionLoaderTest {
     Downloader.Response response2 = loader.load(URL, true);
     assertThat(response2.cached).isTrue();
   }
+
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void contentLengthHeaderSetsResponseValue() throws Exception {
+    server.enqueue(new MockResponse().setBody(new byte[1234]));
+    Downloader.Response response1 = loader.load(URL, false);
+    assertThat(response1.contentLength).isEqualTo(1234);
+
+    server.enqueue(new MockResponse().setChunkedBody(new byte[1234], 100));
+    Downloader.Response response2 = loader.load(URL, false);
+    assertThat(response2.contentLength).isEqualTo(-1);
+  }
+
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void interruptedBodyIsResumedWithRange() throws Exception {
+    enqueueInterrupted(40, "\"v1\"");
+    assertThat(readUntilFailure(loader.load(RESUMABLE_URL, false).stream)).hasSize(40);
+
+    server.enqueue(new MockResponse() //
+        .setResponseCode(206) //
+        .setBody(Arrays.copyOfRange(BODY, 40, 100)) //
+        .addHeader("Content-Range", "bytes 40-99/100") //
+        .addHeader("ETag", "\"v1\""));
+    Downloader.Response response = loader.load(RESUMABLE_URL, false);
+    assertThat(response.contentLength).isEqualTo(100);
+    assertThat(readUntilFailure(response.stream)).isEqualTo(BODY);
+
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+    RecordedRequest resumed = server.takeRequest();
+    assertThat(resumed.getHeader("Range")).isEqualTo("bytes=40-");
+    assertThat(resumed.getHeader("If-Range")).isEqualTo("\"v1\"");
+
+    server.enqueue(new MockResponse().setBody(BODY));
+    loader.load(RESUMABLE_URL, false).stream.close();
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+  }
+
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void changedBodyIsDownloadedInFull() throws Exception {
+    enqueueInterrupted(40, "\"v1\"");
+    readUntilFailure(loader.load(RESUMABLE_URL, false).stream);
+
+    server.enqueue(new MockResponse().setBody(BODY).addHeader("ETag", "\"v2\""));
+    Downloader.Response response = loader.load(RESUMABLE_URL, false);
+    assertThat(response.contentLength).isEqualTo(100);
+    assertThat(readUntilFailure(response.stream)).isEqualTo(BODY);
+    server.takeRequest();
+    assertThat(server.takeRequest().getHeader("If-Range")).isEqualTo("\"v1\"");
+
+    server.enqueue(new MockResponse().setBody(BODY));
+    loader.load(RESUMABLE_URL, false).stream.close();
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+  }
+
+  @Config(reportSdk = GINGERBREAD)
+  @Test public void weakEtagIsNotResumed() throws Exception {
+    enqueueInterrupted(40, "W/\"v1\"");
+    readUntilFailure(loader.load(RESUMABLE_URL, false).stream);
+
+    server.enqueue(new MockResponse().setBody(BODY));
+    loader.load(RESUMABLE_URL, false).stream.close();
+    server.takeRequest();
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+  }
+
+  private void enqueueInterrupted(int length, String etag) {
+    server.enqueue(new MockResponse() //
+        .setBody(Arrays.copyOf(BODY, length)) //
+        .setHeader("Content-Length", BODY.length) //
+        .addHeader("ETag", etag) //
+        .setSocketPolicy(DISCONNECT_AT_END));
+  }
+
+  /** Reads and closes {@code stream}, returning the bytes read before it ended or failed. */
+  private static byte[] readUntilFailure(InputStream stream) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      byte[] buffer = new byte[16];
+      int count;
+      while ((count = stream.read(buffer)) != -1) {
+        bytes.write(buffer, 0, count);
+      }
+    } catch (IOException ignored) {
+    } finally {
+      Utils.closeQuietly(stream);
+    }
+    return bytes.toByteArray();
+  }
 }
@@ -24,6 +24,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import static com.squareup.picasso.Utils.createKey;
+import static com.squareup.picasso.Utils.createPrefixKey;
 import static com.squareup.picasso.Utils.parseResponseSourceHeader;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -36,26 +37,26 @@ public class UtilsTest {
   private Picasso picasso = mock(Picasso.class);
 
   @Test public void matchingRequestsHaveSameKey() {
-    Request r1 = new Request(picasso, URL, 0, null, null, null, false, false, 0, null);
-    Request r2 = new Request(picasso, URL, 0, null, null, null, false, false, 0, null);
+    Request r1 = new Request(picasso, URL, 0, null, null, null, false, false, false, 0, null);
+    Request r2 = new Request(picasso, URL, 0, null, null, null, false, false, false, 0, null);
     assertThat(createKey(r1)).isEqualTo(createKey(r2));
 
     List<Transformation> t1 = new ArrayList<Transformation>();
     t1.add(new TestTransformation("foo", null));
-    Request single1 = new Request(picasso, URL, 0, null, null, t1, false, false, 0, null);
+    Request single1 = new Request(picasso, URL, 0, null, null, t1, false, false, false, 0, null);
     List<Transformation> t2 = new ArrayList<Transformation>();
     t2.add(new TestTransformation("foo", null));
-    Request single2 = new Request(picasso, URL, 0, null, null, t2, false, false, 0, null);
+    Request single2 = new Request(picasso, URL, 0, null, null, t2, false, false, false, 0, null);
     assertThat(createKey(single1)).isEqualTo(createKey(single2));
 
     List<Transformation> t3 = new ArrayList<Transformation>();
     t3.add(new TestTransformation("foo", null));
     t3.add(new TestTransformation("bar", null));
-    Request double1 = new Request(picasso, URL, 0, null, null, t3, false, false, 0, null);
+    Request double1 = new Request(picasso, URL, 0, null, null, t3, false, false, false, 0, null);
     List<Transformation> t4 = new ArrayList<Transformation>();
     t4.add(new TestTransformation("foo", null));
     t4.add(new TestTransformation("bar", null));
-    Request double2 = new Request(picasso, URL, 0, null, null, t4, false, false, 0, null);
+    Request double2 = new Request(picasso, URL, 0, null, null, t4, false, false, false, 0, null);
     assertThat(createKey(double1)).isEqualTo(createKey(double2));
 
     List<Transformation> t5 = new ArrayList<Transformation>();
@@ -65,11 +66,28 @@ public class UtilsTest {
     List<Transformation> t6 = new ArrayList<Transformation>();
     t6.add(new TestTransformation("bar", null));
     t6.add(new TestTransformation("foo", null));
-    Request order1 = new Request(picasso, URL, 0, null, null, t5, false, false, 0, null);
-    Request order2 = new Request(picasso, URL, 0, null, null, t6, false, false, 0, null);
+    Request order1 = new Request(picasso, URL, 0, null, null, t5, false, false, false, 0, null);
+    Request order2 = new Request(picasso, URL, 0, null, null, t6, false, false, false, 0, null);
     assertThat(createKey(order1)).isNotEqualTo(createKey(order2));
   }
 
+  @Test public void prefixKeyMatchesKeyOfShorterChain() {
+    List<Transformation> t1 = new ArrayList<Transformation>();
+    t1.add(new TestTransformation("foo", null));
+    Request single = new Request(picasso, URL, 0, null, null, t1, false, false, false, 0, null);
+
+    List<Transformation> t2 = new ArrayList<Transformation>();
+    t2.add(new TestTransformation("foo", null));
+    t2.add(new TestTransformation("bar", null));
+    Request chain = new Request(picasso, URL, 0, null, null, t2, false, false, false, 0, null);
+
+    Request plain = new Request(picasso, URL, 0, null, null, null, false, false, false, 0, null);
+
+    assertThat(createPrefixKey(chain, 2)).isEqualTo(chain.key);
+    assertThat(createPrefixKey(chain, 1)).isEqualTo(single.key);
+    assertThat(createPrefixKey(chain, 0)).isEqualTo(plain.key);
+  }
+
   @Test public void loadedFromCache() {
     assertThat(parseResponseSourceHeader(null)).isFalse();
     assertThat(parseResponseSourceHeader("CACHE 200")).isTrue();